@@ -0,0 +1,150 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.Agent;
+import isp.integrity.AgentRuntime;
+import isp.integrity.Frame;
+import isp.integrity.FrameChannel;
+import isp.integrity.QueueFrameChannel;
+import isp.integrity.TagVerifier;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.security.Key;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Measures how the agent runtimes scale with the number of agents.
+ * <p/>
+ * Agents are started in pairs; in every pair Alice sends HMAC-protected
+ * frames to Bob, who verifies them and answers, as in AgentCommunicationHMAC.
+ * For each agent count the harness reports the heap used and the platform
+ * threads alive while all agents are blocked, and the message throughput
+ * once they start talking.
+ * <p/>
+ * Arguments: runtime ({@code platform}, {@code virtual} or {@code threads}
+ * for plain Thread.start()), number of round trips per pair and the agent
+ * counts, e.g. {@code virtual 100 1000 10000 100000}; the counts must be even.
+ */
+public class AgentScalingBenchmark {
+    private final static Logger LOG = Logger.getLogger(AgentScalingBenchmark.class.getCanonicalName());
+
+    public static void main(String[] args) throws Exception {
+        final String runtime = args.length > 0 ? args[0] : "platform";
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        if ("virtual".equals(runtime) && !AgentRuntime.isVirtualThreadSupported()) {
+            System.err.println("Virtual threads require Java 21 or later");
+            return;
+        }
+
+        System.out.printf("%-8s %8s %12s %10s %14s%n", "runtime", "agents", "heap [MB]", "threads", "messages/s");
+        for (int i = 2; i < Math.max(args.length, 3); i++) {
+            final int agents = args.length > i ? Integer.parseInt(args[i]) : 1000;
+            run(runtime, agents, rounds);
+        }
+    }
+
+    private static void run(final String runtime, final int agents, final int rounds) throws Exception {
+        if (agents < 2 || agents % 2 != 0)
+            throw new IllegalArgumentException("Agents are started in pairs, " + agents + " is not even");
+
+        final Key key = KeyGenerator.getInstance("HmacMD5").generateKey();
+        final int pairs = agents / 2;
+        final CountDownLatch ready = new CountDownLatch(2 * pairs);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2 * pairs);
+        final AtomicLong messages = new AtomicLong();
+
+        final Agent[] all = new Agent[2 * pairs];
+        for (int i = 0; i < pairs; i++) {
+            final FrameChannel alice2bob = new QueueFrameChannel();
+            final FrameChannel bob2alice = new QueueFrameChannel();
+            all[2 * i] = new Talker(alice2bob, bob2alice, key, rounds, true, ready, go, done, messages);
+            all[2 * i + 1] = new Talker(bob2alice, alice2bob, key, rounds, false, ready, go, done, messages);
+        }
+
+        final AgentRuntime agentRuntime;
+        if ("threads".equals(runtime)) {
+            agentRuntime = null;
+            for (final Agent agent : all)
+                agent.start();
+        } else {
+            agentRuntime = "virtual".equals(runtime) ? AgentRuntime.virtualThreads() : AgentRuntime.platformThreads();
+            agentRuntime.startAll(all);
+        }
+
+        ready.await();
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        final long heap = memory.getHeapMemoryUsage().getUsed();
+        final int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        final long start = System.nanoTime();
+        go.countDown();
+        done.await();
+        final long nanos = System.nanoTime() - start;
+
+        if (agentRuntime != null) {
+            agentRuntime.shutdown();
+            agentRuntime.awaitTermination(1, TimeUnit.MINUTES);
+        }
+
+        System.out.printf("%-8s %8d %12.1f %10d %14.0f%n", runtime, all.length, heap / 1e6, threads,
+                messages.get() * 1e9 / nanos);
+    }
+
+    private static class Talker extends Agent {
+        private final int rounds;
+        private final boolean initiator;
+        private final CountDownLatch ready, go, done;
+        private final AtomicLong messages;
+
+        Talker(final FrameChannel outgoing, final FrameChannel incoming, final Key key, final int rounds,
+               final boolean initiator, final CountDownLatch ready, final CountDownLatch go,
+               final CountDownLatch done, final AtomicLong messages) {
+            super(outgoing, incoming, null, null, key, "HmacMD5");
+            this.rounds = rounds;
+            this.initiator = initiator;
+            this.ready = ready;
+            this.go = go;
+            this.done = done;
+            this.messages = messages;
+        }
+
+        @Override
+        public void run() {
+            try {
+                final byte[] payload = "I love you Bob. Kisses, Alice.".getBytes("UTF-8");
+                ready.countDown();
+                go.await();
+
+                for (int i = 0; i < rounds; i++) {
+                    if (initiator)
+                        send(payload);
+
+                    final Frame frame = incoming.take();
+                    final TagVerifier verifier = TagVerifier.forMac(mac());
+                    if (!verifier.verify(frame))
+                        throw new IllegalStateException("Invalid HMAC");
+                    messages.incrementAndGet();
+
+                    if (!initiator)
+                        send(payload);
+                }
+            } catch (Exception e) {
+                LOG.severe(getName() + " failed: " + e);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void send(final byte[] payload) throws Exception {
+            final Mac mac = mac();
+            outgoing.put(new Frame(payload, mac.doFinal(payload)));
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package isp.integrity.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler enabled, so that every result
+ * is reported together with the allocation rate per operation.
+ * <p/>
+ * Build the project first ({@code mvn install} in the parent directory),
+ * then {@code mvn package} here and run
+ * {@code java -jar target/benchmarks.jar [JMH options] [benchmark regexp]}.
+ * For example, {@code -p size=32,1024 DigestBenchmark} limits the run to
+ * small payloads of the digest benchmarks.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,182 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.BroadcastChannel;
+import isp.integrity.Frame;
+import isp.integrity.SignatureScheme;
+import isp.integrity.SpscRingChannel;
+import isp.integrity.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out from one sender to many subscribers.
+ * <p/>
+ * Compares three ways of sending authenticated notifications:
+ * <ul>
+ * <li>{@code unicast}: a separate HMAC with every subscriber's key and a
+ * separate frame in every subscriber's channel, as with one queue pair per
+ * receiver,</li>
+ * <li>{@code hmac}: one HMAC with a group key and one shared frame in a
+ * {@link BroadcastChannel},</li>
+ * <li>{@code ed25519}: one signature and one shared frame.</li>
+ * </ul>
+ * Subscribers are drained by a few consumer threads that poll their rings,
+ * so the score is the sender's cost per notification, not the cost of
+ * running thousands of receiving threads; divide it by the number of
+ * subscribers for the cost per delivery. The consumers are stopped and the
+ * broadcast closed after every trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+    private static final int CAPACITY = 64;
+    private static final byte[] PAYLOAD = new byte[64];
+
+    private interface Sender {
+        void send(long sequence) throws Exception;
+    }
+
+    private interface Receiver {
+        Frame poll(int subscriber);
+    }
+
+    @Param({"unicast", "hmac", "ed25519"})
+    public String mode;
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int subscribers;
+
+    @Param("2")
+    public int consumers;
+
+    private Sender sender;
+    private BroadcastChannel channel;
+    private Thread[] threads;
+    private volatile boolean running;
+    private long sequence;
+
+    @Setup
+    public void setup() throws Exception {
+        final Receiver receiver;
+        switch (mode) {
+            case "unicast":
+                receiver = unicast();
+                break;
+            case "hmac":
+                receiver = broadcastHmac();
+                break;
+            case "ed25519":
+                receiver = broadcastSignature();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+
+        running = true;
+        threads = new Thread[consumers];
+        for (int c = 0; c < consumers; c++) {
+            final int from = c * subscribers / consumers, to = (c + 1) * subscribers / consumers;
+            threads[c] = new Thread(() -> {
+                while (running) {
+                    boolean received = false;
+                    for (int i = from; i < to; i++)
+                        while (receiver.poll(i) != null)
+                            received = true;
+                    if (!received)
+                        Thread.yield();
+                }
+            }, "broadcast-consumer-" + c);
+            threads[c].setDaemon(true);
+            threads[c].start();
+        }
+    }
+
+    private Receiver unicast() throws Exception {
+        final Mac[] macs = new Mac[subscribers];
+        final SpscRingChannel[] rings = new SpscRingChannel[subscribers];
+        final KeyGenerator generator = KeyGenerator.getInstance("HmacSHA256");
+        for (int i = 0; i < subscribers; i++) {
+            macs[i] = Mac.getInstance("HmacSHA256");
+            macs[i].init(generator.generateKey());
+            rings[i] = new SpscRingChannel(CAPACITY, WaitStrategy.YIELD);
+        }
+
+        sender = sequence -> {
+            for (int i = 0; i < subscribers; i++) {
+                macs[i].update(Frame.sequenceBytes(sequence));
+                rings[i].put(new Frame(sequence, PAYLOAD, macs[i].doFinal(PAYLOAD)));
+            }
+        };
+        return subscriber -> rings[subscriber].poll();
+    }
+
+    private Receiver broadcastHmac() throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(KeyGenerator.getInstance("HmacSHA256").generateKey());
+
+        final BroadcastChannel.Subscriber[] subscriptions = subscribe();
+        sender = sequence -> {
+            mac.update(Frame.sequenceBytes(sequence));
+            channel.put(new Frame(sequence, PAYLOAD, mac.doFinal(PAYLOAD)));
+        };
+        return subscriber -> subscriptions[subscriber].poll();
+    }
+
+    private Receiver broadcastSignature() throws Exception {
+        if (!SignatureScheme.ED25519.isAvailable())
+            throw new IllegalStateException("Ed25519 is not available on this JVM");
+
+        final Signature signer = Signature.getInstance(SignatureScheme.ED25519.getSignatureAlgorithm());
+        signer.initSign(SignatureScheme.ED25519.generateKeyPair().getPrivate());
+
+        final BroadcastChannel.Subscriber[] subscriptions = subscribe();
+        sender = sequence -> {
+            signer.update(Frame.sequenceBytes(sequence));
+            signer.update(PAYLOAD);
+            channel.put(new Frame(sequence, PAYLOAD, signer.sign()));
+        };
+        return subscriber -> subscriptions[subscriber].poll();
+    }
+
+    private BroadcastChannel.Subscriber[] subscribe() {
+        channel = new BroadcastChannel();
+        final BroadcastChannel.Subscriber[] subscriptions = new BroadcastChannel.Subscriber[subscribers];
+        for (int i = 0; i < subscribers; i++)
+            subscriptions[i] = channel.subscribe(CAPACITY, BroadcastChannel.SlowSubscriberPolicy.BLOCK,
+                    WaitStrategy.YIELD);
+        return subscriptions;
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (final Thread thread : threads)
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        if (channel != null)
+            channel.close();
+    }
+
+    @Benchmark
+    public void notification() throws Exception {
+        sender.send(++sequence);
+    }
+}
@@ -0,0 +1,197 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.Frame;
+import isp.integrity.FrameChannel;
+import isp.integrity.MpscRingChannel;
+import isp.integrity.QueueFrameChannel;
+import isp.integrity.SocketFrameChannel;
+import isp.integrity.SpscRingChannel;
+import isp.integrity.WaitStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Closeable;
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ring channels with the blocking-queue channels and with
+ * socket channels over TCP loopback and Unix domain sockets.
+ * <p/>
+ * Throughput: a peer thread sends frames as fast as possible while the
+ * benchmark thread receives them. Latency: a peer thread echoes every frame
+ * back over a second channel and the round trip is measured.
+ * <p/>
+ * The spinning strategies need at least two free cores to give meaningful
+ * numbers and may not finish on fewer; leave them out with, e.g.,
+ * {@code -p channel=SpscRing-PARK,TCP}. The peer threads are interrupted
+ * and the socket connections closed after every trial.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelBenchmark {
+    private static final int CAPACITY = 1024;
+    private static final int BATCH = 1000;
+    private static final Frame FRAME = new Frame(new byte[32], new byte[16]);
+
+    /**
+     * Work of a peer thread; it ends when interrupted or when its channels are closed.
+     */
+    private interface Peer {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * Creates the channels of one trial and the peer thread that serves them.
+     */
+    @State(Scope.Benchmark)
+    public abstract static class Endpoints {
+        @Param({"LinkedBlockingQueue", "ArrayBlockingQueue",
+                "SpscRing-SPIN", "SpscRing-YIELD", "SpscRing-PARK",
+                "MpscRing-SPIN", "MpscRing-YIELD", "MpscRing-PARK",
+                "TCP", "Unix"})
+        public String channel;
+
+        private final List<Closeable> connections = new ArrayList<>();
+        private Thread peer;
+
+        FrameChannel open() throws Exception {
+            switch (channel) {
+                case "LinkedBlockingQueue":
+                    return new QueueFrameChannel();
+                case "ArrayBlockingQueue":
+                    return new QueueFrameChannel(new ArrayBlockingQueue<Frame>(CAPACITY));
+                case "TCP":
+                    return connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                case "Unix":
+                    final File path = File.createTempFile("channel", ".sock");
+                    path.delete();
+                    path.deleteOnExit();
+                    return connect(SocketFrameChannel.unixAddress(path.getPath()));
+                default:
+                    final String[] kind = channel.split("-");
+                    final WaitStrategy strategy = WaitStrategy.valueOf(kind[1]);
+                    if (kind[0].equals("SpscRing"))
+                        return new SpscRingChannel(CAPACITY, strategy);
+                    if (kind[0].equals("MpscRing"))
+                        return new MpscRingChannel(CAPACITY, strategy);
+                    throw new IllegalArgumentException("Unknown channel " + channel);
+            }
+        }
+
+        /**
+         * @return a channel whose frames are sent through one end of a new
+         * connection and received from the other
+         */
+        private FrameChannel connect(final SocketAddress address) throws Exception {
+            try (ServerSocketChannel server = SocketFrameChannel.listen(address)) {
+                final SocketFrameChannel sender = SocketFrameChannel.connect(server.getLocalAddress());
+                connections.add(sender);
+                final SocketFrameChannel receiver = SocketFrameChannel.accept(server);
+                connections.add(receiver);
+                return new FrameChannel() {
+                    @Override
+                    public void put(final Frame frame) throws InterruptedException {
+                        sender.put(frame);
+                    }
+
+                    @Override
+                    public Frame take() throws InterruptedException {
+                        return receiver.take();
+                    }
+
+                    @Override
+                    public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+                        return receiver.poll(timeout, unit);
+                    }
+                };
+            }
+        }
+
+        void start(final Peer work) {
+            peer = new Thread(() -> {
+                try {
+                    work.run();
+                } catch (InterruptedException | RuntimeException e) {
+                    // stopped by the teardown
+                }
+            }, "channel-peer");
+            peer.setDaemon(true);
+            peer.start();
+        }
+
+        @TearDown
+        public void tearDown() throws Exception {
+            peer.interrupt();
+            // wakes up a peer blocked on a socket
+            for (final Closeable connection : connections)
+                connection.close();
+            connections.clear();
+            peer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    public static class Stream extends Endpoints {
+        FrameChannel frames;
+
+        @Setup
+        public void setup() throws Exception {
+            frames = open();
+            start(() -> {
+                while (true)
+                    frames.put(FRAME);
+            });
+        }
+    }
+
+    public static class PingPong extends Endpoints {
+        FrameChannel ping, pong;
+
+        @Setup
+        public void setup() throws Exception {
+            ping = open();
+            pong = open();
+            start(() -> {
+                while (true)
+                    pong.put(ping.take());
+            });
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void throughput(final Stream stream, final Blackhole blackhole) throws InterruptedException {
+        for (int i = 0; i < BATCH; i++)
+            blackhole.consume(stream.frames.take());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Frame roundTrip(final PingPong pingPong) throws InterruptedException {
+        pingPong.ping.put(FRAME);
+        return pingPong.pong.take();
+    }
+}
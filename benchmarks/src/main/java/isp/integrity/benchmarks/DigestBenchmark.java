@@ -0,0 +1,53 @@
+package isp.integrity.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the message digests, as used in
+ * MessageDigestExample and AgentCommunicationMessageDigest.
+ * <p/>
+ * Payload sizes range from a short agent message (32 B) to a large
+ * artifact (64 MiB).
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigestBenchmark {
+
+    @Param({"MD5", "SHA-1", "SHA-224", "SHA-256", "SHA-384", "SHA-512"})
+    public String algorithm;
+
+    @Param({"32", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private MessageDigest digest;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        digest = MessageDigest.getInstance(algorithm);
+        payload = Payloads.random(size);
+    }
+
+    @Benchmark
+    public byte[] digest() {
+        return digest.digest(payload);
+    }
+}
@@ -0,0 +1,52 @@
+package isp.integrity.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of the HMACs, as used in HMACExample and
+ * AgentCommunicationHMAC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HmacBenchmark {
+
+    @Param({"HmacMD5", "HmacSHA1", "HmacSHA224", "HmacSHA256", "HmacSHA384", "HmacSHA512"})
+    public String algorithm;
+
+    @Param({"32", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private Mac mac;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        mac = Mac.getInstance(algorithm);
+        mac.init(KeyGenerator.getInstance(algorithm).generateKey());
+        payload = Payloads.random(size);
+    }
+
+    @Benchmark
+    public byte[] mac() {
+        return mac.doFinal(payload);
+    }
+}
@@ -0,0 +1,313 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.Agent;
+import isp.integrity.Frame;
+import isp.integrity.FrameChannel;
+import isp.integrity.LatencyHistogram;
+import isp.integrity.MITMAgent;
+import isp.integrity.QueueFrameChannel;
+import isp.integrity.SignatureScheme;
+import isp.integrity.TagVerifier;
+
+import javax.crypto.KeyGenerator;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the agent scenarios with a configurable load and reports their
+ * throughput and end-to-end latency.
+ * <p/>
+ * Every pair of agents runs one of the scenarios: Alice protects each message
+ * as in the corresponding AgentCommunication* exercise, Bob verifies it. In
+ * the MITM scenario Maloy sits between them and relays every frame.
+ * <p/>
+ * The load is either open-loop, a target rate of messages per second spread
+ * over the pairs, or closed-loop, where Alice waits for Bob's acknowledgement
+ * before she sends the next message. In open-loop mode the latency is
+ * measured from the time a message was due to be sent rather than from when
+ * Alice got around to sending it, so a backlog shows up in the percentiles
+ * instead of being hidden by a slower sender (coordinated omission).
+ * Channels are bounded, so an overloaded pair holds back its sender.
+ * <p/>
+ * Arguments: scenario ({@code plain}, {@code digest}, {@code hmac},
+ * {@code signature}, {@code mitm} or {@code all}), load ({@code closed} or a
+ * rate in messages per second), message size in bytes, number of agent
+ * pairs, duration in seconds and warm-up in seconds, e.g.
+ * {@code hmac 20000 1024 2 10 1}. Messages sent during the warm-up count
+ * towards the throughput but not towards the latency percentiles.
+ */
+public class LoadGenerator {
+    private static final int CHANNEL_CAPACITY = 1024;
+    /**
+     * Larger than the number of frames that fit into the channels of a pair.
+     */
+    private static final int SEND_TIMES = 4096;
+    private static final long STOP = -1;
+
+    enum Scenario {
+        PLAIN, DIGEST, HMAC, SIGNATURE, MITM
+    }
+
+    public static void main(String[] args) throws Exception {
+        final String scenario = args.length > 0 ? args[0] : "all";
+        final String load = args.length > 1 ? args[1] : "closed";
+        final int size = args.length > 2 ? Integer.parseInt(args[2]) : 1024;
+        final int pairs = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        final int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        final int warmup = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+        final double rate = "closed".equals(load) ? 0 : Double.parseDouble(load);
+
+        System.out.printf("%-10s %10s %8s %6s %12s %12s %10s %10s %10s %12s %9s%n", "scenario", "load", "size",
+                "pairs", "sent", "messages/s", "p50 [us]", "p99 [us]", "p99.9 [us]", "max [us]", "failures");
+        for (final Scenario s : Scenario.values()) {
+            if ("all".equals(scenario) || s.name().equalsIgnoreCase(scenario))
+                run(s, rate, size, pairs, seconds, warmup);
+        }
+    }
+
+    private static void run(final Scenario scenario, final double rate, final int size, final int pairs,
+                            final int seconds, final int warmup) throws Exception {
+        final Key hmacKey = KeyGenerator.getInstance("HmacSHA256").generateKey();
+        final SignatureScheme scheme = SignatureScheme.ED25519.isAvailable()
+                ? SignatureScheme.ED25519 : SignatureScheme.RSA;
+        final KeyPair keyPair = scheme.generateKeyPair();
+
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong sent = new AtomicLong(), received = new AtomicLong(), failures = new AtomicLong();
+        final long intervalNanos = rate > 0 ? (long) (1e9 * pairs / rate) : 0;
+        final long start = System.nanoTime() + 100000000L;
+        final long measured = start + warmup * 1000000000L;
+        final long end = measured + seconds * 1000000000L;
+
+        final List<Thread> agents = new ArrayList<>();
+        for (int i = 0; i < pairs; i++) {
+            final long[] sendTimes = new long[SEND_TIMES];
+            final FrameChannel alice2bob = channel(), bob2alice = channel();
+            final FrameChannel alice2maloy, maloy2alice;
+            if (scenario == Scenario.MITM) {
+                alice2maloy = channel();
+                maloy2alice = channel();
+                agents.add(new Relay(alice2maloy, maloy2alice, alice2bob, bob2alice, intervalNanos == 0));
+            } else {
+                alice2maloy = alice2bob;
+                maloy2alice = bob2alice;
+            }
+
+            agents.add(new Sender(alice2maloy, maloy2alice, scenario, scheme, keyPair, hmacKey, size,
+                    intervalNanos, start + i * intervalNanos / pairs, end, sendTimes, sent));
+            agents.add(new Receiver(bob2alice, alice2bob, scenario, scheme, keyPair, hmacKey,
+                    intervalNanos == 0, sendTimes, measured, latency, received, failures));
+        }
+
+        // watched over JMX while the load runs
+        for (final Thread agent : agents) {
+            if (agent instanceof Agent)
+                ((Agent) agent).getMetrics().register(agent.getName());
+            else
+                ((MITMAgent) agent).getMetrics().register(agent.getName());
+        }
+        for (final Thread agent : agents)
+            agent.start();
+        for (final Thread agent : agents)
+            agent.join();
+        final double elapsed = (System.nanoTime() - start) / 1e9;
+
+        for (final Thread agent : agents) {
+            if (agent instanceof Agent)
+                ((Agent) agent).getMetrics().unregister();
+            else
+                ((MITMAgent) agent).getMetrics().unregister();
+        }
+
+        final LatencyHistogram.Snapshot snapshot = latency.snapshot();
+        System.out.printf("%-10s %10s %8d %6d %12d %12.0f %10.1f %10.1f %10.1f %12.1f %9d%n",
+                scenario.name().toLowerCase(Locale.ENGLISH), rate > 0 ? String.format("%.0f/s", rate) : "closed",
+                size, pairs, sent.get(), received.get() / elapsed, snapshot.getP50() / 1e3,
+                snapshot.getP99() / 1e3, snapshot.getP999() / 1e3, snapshot.getMax() / 1e3, failures.get());
+    }
+
+    private static FrameChannel channel() {
+        return new QueueFrameChannel(new ArrayBlockingQueue<Frame>(CHANNEL_CAPACITY));
+    }
+
+    private static String algorithm(final Scenario scenario, final SignatureScheme scheme) {
+        switch (scenario) {
+            case DIGEST:
+                return "SHA-256";
+            case SIGNATURE:
+                return scheme.getSignatureAlgorithm();
+            default:
+                return "HmacSHA256";
+        }
+    }
+
+    private static Key key(final Scenario scenario, final Key hmacKey, final Key signatureKey) {
+        return scenario == Scenario.SIGNATURE ? signatureKey : hmacKey;
+    }
+
+    /**
+     * Alice: sends messages on schedule, or one after the other in closed-loop mode.
+     */
+    private static class Sender extends Agent {
+        private final Scenario scenario;
+        private final int size;
+        private final long intervalNanos, start, end;
+        private final long[] sendTimes;
+        private final AtomicLong sent;
+
+        Sender(final FrameChannel outgoing, final FrameChannel incoming, final Scenario scenario,
+               final SignatureScheme scheme, final KeyPair keyPair, final Key hmacKey, final int size,
+               final long intervalNanos, final long start, final long end, final long[] sendTimes,
+               final AtomicLong sent) {
+            super(outgoing, incoming, null, null, key(scenario, hmacKey, keyPair.getPrivate()),
+                    algorithm(scenario, scheme));
+            this.scenario = scenario;
+            this.size = size;
+            this.intervalNanos = intervalNanos;
+            this.start = start;
+            this.end = end;
+            this.sendTimes = sendTimes;
+            this.sent = sent;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (long sequence = 0; ; sequence++) {
+                    final long due = intervalNanos > 0 ? start + sequence * intervalNanos
+                            : Math.max(start, System.nanoTime());
+                    if (due >= end)
+                        break;
+                    long now;
+                    while ((now = System.nanoTime()) < due)
+                        LockSupport.parkNanos(due - now);
+
+                    final byte[] payload = new byte[size];
+                    sendTimes[(int) sequence & (SEND_TIMES - 1)] = intervalNanos > 0 ? due : now;
+                    outgoing.put(new Frame(sequence, payload, tag(payload)));
+                    sent.incrementAndGet();
+                    if (intervalNanos == 0)
+                        incoming.take();
+                }
+                outgoing.put(new Frame(STOP, new byte[0], new byte[0]));
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private byte[] tag(final byte[] payload) throws Exception {
+            switch (scenario) {
+                case PLAIN:
+                    return new byte[0];
+                case DIGEST:
+                    return digest().digest(payload);
+                case SIGNATURE:
+                    final Signature signer = signer();
+                    signer.update(payload);
+                    return signer.sign();
+                default:
+                    return mac().doFinal(payload);
+            }
+        }
+    }
+
+    /**
+     * Bob: verifies every message, records its latency and, in closed-loop
+     * mode, acknowledges it.
+     */
+    private static class Receiver extends Agent {
+        private static final Frame ACK = new Frame(new byte[0]);
+
+        private final Scenario scenario;
+        private final boolean closedLoop;
+        private final long[] sendTimes;
+        private final long measured;
+        private final LatencyHistogram latency;
+        private final AtomicLong received, failures;
+
+        Receiver(final FrameChannel outgoing, final FrameChannel incoming, final Scenario scenario,
+                 final SignatureScheme scheme, final KeyPair keyPair, final Key hmacKey, final boolean closedLoop,
+                 final long[] sendTimes, final long measured, final LatencyHistogram latency,
+                 final AtomicLong received, final AtomicLong failures) {
+            super(outgoing, incoming, null, null, key(scenario, hmacKey, keyPair.getPublic()),
+                    algorithm(scenario, scheme));
+            this.scenario = scenario;
+            this.closedLoop = closedLoop;
+            this.sendTimes = sendTimes;
+            this.measured = measured;
+            this.latency = latency;
+            this.received = received;
+            this.failures = failures;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                while ((frame = incoming.take()).getSequence() != STOP) {
+                    if (!verify(frame))
+                        failures.incrementAndGet();
+                    final long sendTime = sendTimes[(int) frame.getSequence() & (SEND_TIMES - 1)];
+                    if (sendTime >= measured)
+                        latency.record(System.nanoTime() - sendTime);
+                    received.incrementAndGet();
+                    if (closedLoop)
+                        outgoing.put(ACK);
+                }
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        private boolean verify(final Frame frame) throws Exception {
+            switch (scenario) {
+                case PLAIN:
+                    return true;
+                case DIGEST:
+                    return TagVerifier.forDigest(digest()).verify(frame);
+                case SIGNATURE:
+                    final Signature verifier = verifier();
+                    verifier.update(frame.getPayload());
+                    return verifier.verify(frame.getTag());
+                default:
+                    return TagVerifier.forMac(mac()).verify(frame);
+            }
+        }
+    }
+
+    /**
+     * Maloy: relays Alice's frames to Bob and, in closed-loop mode, Bob's
+     * acknowledgements back to Alice.
+     */
+    private static class Relay extends MITMAgent {
+        private final boolean closedLoop;
+
+        Relay(final FrameChannel fromAlice, final FrameChannel toAlice, final FrameChannel toBob,
+              final FrameChannel fromBob, final boolean closedLoop) {
+            super(toAlice, fromAlice, toBob, fromBob, null, null, null, null);
+            this.closedLoop = closedLoop;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Frame frame;
+                do {
+                    frame = incomingA.take();
+                    outgoingB.put(frame);
+                    if (closedLoop && frame.getSequence() != STOP)
+                        outgoingA.put(incomingB.take());
+                } while (frame.getSequence() != STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.Manifest;
+import isp.integrity.ManifestLookup;
+import isp.integrity.MappedManifest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text {@link Manifest} versus binary {@link MappedManifest}: the time until
+ * the first lookup can be served, the latency of a lookup and the time to
+ * compare a fresh scan against the stored manifest.
+ * <p/>
+ * The manifest has synthetic SHA-256 entries with paths like those of a
+ * deployed artifact tree. Lookups go to random paths in the manifest; the
+ * fresh scan is the same manifest held on the heap, so every entry is
+ * looked up once. The file sizes are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"text", "binary"})
+    public String format;
+
+    @Param("2000000")
+    public int entries;
+
+    private Manifest scan;
+    private Path file;
+    private ManifestLookup stored;
+    private String[] lookups;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        final String[] paths = new String[entries];
+        final Map<String, Manifest.Entry> map = new HashMap<>();
+        for (int i = 0; i < entries; i++) {
+            paths[i] = String.format("app/lib/module-%d/package-%d/Class%d.class", i / 10000, i / 100, i);
+            map.put(paths[i], new Manifest.Entry(ByteBuffer.allocate(32).putLong(i * 0x9E3779B97F4A7C15L).array(),
+                    i, 1500000000000000000L + i, "(dev=803,ino=" + i + ")"));
+        }
+        scan = new Manifest("SHA-256", System.currentTimeMillis(), map);
+
+        final Random random = new Random(42);
+        lookups = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++)
+            lookups[i] = paths[random.nextInt(entries)];
+
+        if ("text".equals(format)) {
+            file = Files.createTempFile("manifest", ".txt");
+            scan.write(file);
+        } else {
+            file = Files.createTempFile("manifest", ".bin");
+            MappedManifest.write(scan, file);
+        }
+        System.out.printf("%n%s manifest: %.1f MB%n", format, Files.size(file) / 1e6);
+        stored = open();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (stored instanceof MappedManifest)
+            ((MappedManifest) stored).close();
+        stored = null;
+        Files.delete(file);
+    }
+
+    /**
+     * Time until the first lookup can be served: parsing the text manifest,
+     * or mapping the binary one.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ManifestLookup open() throws IOException {
+        return "text".equals(format) ? Manifest.read(file) : MappedManifest.open(file);
+    }
+
+    @Benchmark
+    public Manifest.Entry lookup() {
+        final Manifest.Entry entry = stored.get(lookups[next++ & LOOKUPS - 1]);
+        if (entry == null)
+            throw new IllegalStateException("Lookup failed");
+        return entry;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Manifest.Changes compare() {
+        return scan.compare(stored);
+    }
+}
@@ -0,0 +1,94 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.MultiDigest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MD5, SHA-1 and SHA-256 of the same payload: one pass per algorithm versus
+ * a single pass with {@link MultiDigest}, sequential and with a thread per
+ * additional digest.
+ * <p/>
+ * The payload is fed in 1 MiB chunks, as {@link isp.integrity.StreamingDigest}
+ * does. The separate passes are what the rest of this module measures, the
+ * payload being in memory; reading it from disk or converting it from a
+ * String would add that cost once per pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiDigestBenchmark {
+    private static final String[] ALGORITHMS = {"MD5", "SHA-1", "SHA-256"};
+    private static final int CHUNK = 1024 * 1024;
+
+    @Param({"65536", "16777216"})
+    public int size;
+
+    private byte[] payload;
+    private MessageDigest[] digests;
+    private MultiDigest sequential, parallel;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        payload = Payloads.random(size);
+        digests = new MessageDigest[ALGORITHMS.length];
+        for (int i = 0; i < ALGORITHMS.length; i++)
+            digests[i] = MessageDigest.getInstance(ALGORITHMS[i]);
+        executor = Executors.newFixedThreadPool(ALGORITHMS.length - 1);
+        sequential = new MultiDigest(ALGORITHMS);
+        parallel = new MultiDigest(executor, ALGORITHMS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public byte[][] separatePasses() {
+        final byte[][] results = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++) {
+            for (int offset = 0; offset < size; offset += CHUNK)
+                digests[i].update(payload, offset, Math.min(CHUNK, size - offset));
+            results[i] = digests[i].digest();
+        }
+        return results;
+    }
+
+    @Benchmark
+    public Map<String, byte[]> singlePass() {
+        return onePass(sequential);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> singlePassParallel() {
+        return onePass(parallel);
+    }
+
+    private Map<String, byte[]> onePass(final MultiDigest multiDigest) {
+        for (int offset = 0; offset < size; offset += CHUNK)
+            multiDigest.update(payload, offset, Math.min(CHUNK, size - offset));
+        return multiDigest.digest();
+    }
+}
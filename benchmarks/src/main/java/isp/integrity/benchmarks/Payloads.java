@@ -0,0 +1,21 @@
+package isp.integrity.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Payload content shared by the benchmarks.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * @return a deterministic pseudo-random payload of the given size
+     */
+    static byte[] random(final int size) {
+        final byte[] payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        return payload;
+    }
+}
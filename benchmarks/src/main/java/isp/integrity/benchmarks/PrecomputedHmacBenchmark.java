@@ -0,0 +1,67 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.PrecomputedHmac;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message cost of a Mac compared to {@link PrecomputedHmac} for the
+ * short messages of AgentCommunicationHMAC.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrecomputedHmacBenchmark {
+
+    @Param({"HmacMD5", "HmacSHA256", "HmacSHA512"})
+    public String algorithm;
+
+    @Param({"16", "30", "64", "256", "1024"})
+    public int size;
+
+    private Mac mac;
+    private PrecomputedHmac hmac;
+    private byte[] payload, tag;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        final Key key = KeyGenerator.getInstance(algorithm).generateKey();
+        mac = Mac.getInstance(algorithm);
+        mac.init(key);
+        hmac = new PrecomputedHmac(algorithm, key);
+        payload = Payloads.random(size);
+        tag = new byte[mac.getMacLength()];
+    }
+
+    @Benchmark
+    public byte[] mac() throws ShortBufferException {
+        mac.update(payload);
+        mac.doFinal(tag, 0);
+        return tag;
+    }
+
+    @Benchmark
+    public byte[] precomputed() {
+        hmac.doFinal(payload, 0, payload.length, tag, 0);
+        return tag;
+    }
+}
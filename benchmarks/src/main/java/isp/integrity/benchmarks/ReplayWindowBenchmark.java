@@ -0,0 +1,59 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.ReplayWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks per second of a {@link ReplayWindow}: in-order sequence numbers,
+ * and numbers reordered by up to half of the window.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayWindowBenchmark {
+    private static final int JITTER = 4096;
+
+    @Param({"64", "1024", "65536"})
+    public int size;
+
+    private ReplayWindow window;
+    private long next;
+    private long[] jitter;
+    private int position;
+
+    @Setup
+    public void setup() {
+        window = new ReplayWindow(size);
+        jitter = new long[JITTER];
+        final Random random = new Random(17);
+        for (int i = 0; i < JITTER; i++)
+            jitter[i] = random.nextInt(Math.max(size / 2, 1));
+    }
+
+    @Benchmark
+    public boolean inOrder() {
+        return window.accept(next++);
+    }
+
+    @Benchmark
+    public boolean reordered() {
+        final long sequence = next++ + jitter[position++ & (JITTER - 1)];
+        return window.accept(sequence);
+    }
+}
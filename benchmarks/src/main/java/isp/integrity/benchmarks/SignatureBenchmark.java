@@ -0,0 +1,68 @@
+package isp.integrity.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of RSA signing and verification, as used in
+ * SignatureExample and AgentCommunicationSignature.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    @Param({"SHA1withRSA", "SHA224withRSA", "SHA256withRSA", "SHA384withRSA", "SHA512withRSA"})
+    public String algorithm;
+
+    @Param({"32", "1024", "65536", "1048576", "67108864"})
+    public int size;
+
+    private Signature signer, verifier;
+    private byte[] payload, signature;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        final KeyPair keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        payload = Payloads.random(size);
+
+        signer = Signature.getInstance(algorithm);
+        signer.initSign(keyPair.getPrivate());
+
+        verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(keyPair.getPublic());
+
+        signature = sign();
+    }
+
+    @Benchmark
+    public byte[] sign() throws SignatureException {
+        signer.update(payload);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws SignatureException {
+        verifier.update(payload);
+        return verifier.verify(signature);
+    }
+}
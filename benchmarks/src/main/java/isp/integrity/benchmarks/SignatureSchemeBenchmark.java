@@ -0,0 +1,112 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.SignatureScheme;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link SignatureScheme}s: mean cost of key generation,
+ * signing and verification of a short message.
+ * <p/>
+ * Run it with its own main method, {@code java -cp target/benchmarks.jar
+ * isp.integrity.benchmarks.SignatureSchemeBenchmark [JMH options]}, which
+ * prints the signature size of every scheme and leaves out the schemes the
+ * JVM does not provide. Run through {@link BenchmarkRunner}, an unavailable
+ * scheme fails its setup and only its results are missing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureSchemeBenchmark {
+
+    @Param
+    public SignatureScheme scheme;
+
+    private Signature signer, verifier;
+    private byte[] payload, signature;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        if (!scheme.isAvailable())
+            throw new IllegalStateException(scheme + " is not available on this JVM");
+
+        final KeyPair keyPair = scheme.generateKeyPair();
+        payload = Payloads.random(32);
+
+        signer = Signature.getInstance(scheme.getSignatureAlgorithm());
+        signer.initSign(keyPair.getPrivate());
+
+        verifier = Signature.getInstance(scheme.getSignatureAlgorithm());
+        verifier.initVerify(keyPair.getPublic());
+
+        signature = sign();
+    }
+
+    @Benchmark
+    public KeyPair keyGeneration() throws GeneralSecurityException {
+        return scheme.generateKeyPair();
+    }
+
+    @Benchmark
+    public byte[] sign() throws SignatureException {
+        signer.update(payload);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws SignatureException {
+        verifier.update(payload);
+        return verifier.verify(signature);
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<String> available = new ArrayList<>();
+        for (final SignatureScheme scheme : SignatureScheme.values()) {
+            if (!scheme.isAvailable()) {
+                System.out.printf("%-10s not available on this JVM%n", scheme);
+                continue;
+            }
+
+            final Signature signer = Signature.getInstance(scheme.getSignatureAlgorithm());
+            signer.initSign(scheme.generateKeyPair().getPrivate());
+            signer.update(Payloads.random(32));
+            System.out.printf("%-10s %-18s %4d B signatures%n", scheme, scheme.getSignatureAlgorithm(),
+                    signer.sign().length);
+            available.add(scheme.name());
+        }
+
+        final Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(SignatureSchemeBenchmark.class.getSimpleName())
+                .param("scheme", available.toArray(new String[available.size()]))
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,76 @@
+package isp.integrity.benchmarks;
+
+import isp.integrity.VerificationCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verification of duplicated RSA-signed messages: every message verified in
+ * full, against a {@link VerificationCache} that already holds them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationCacheBenchmark {
+    private static final int MESSAGES = 256;
+
+    @Param({"32", "1024"})
+    public int size;
+
+    private KeyPair keyPair;
+    private Signature verifier;
+    private VerificationCache cache;
+    private byte[][] payloads, signatures;
+    private int position;
+
+    @Setup
+    public void setup() throws GeneralSecurityException {
+        keyPair = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final Signature signer = Signature.getInstance("SHA1withRSA");
+        signer.initSign(keyPair.getPrivate());
+        verifier = Signature.getInstance("SHA1withRSA");
+        verifier.initVerify(keyPair.getPublic());
+        cache = new VerificationCache(MESSAGES, 1, TimeUnit.HOURS);
+
+        payloads = new byte[MESSAGES][];
+        signatures = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            payloads[i] = Payloads.random(size);
+            signer.update(payloads[i]);
+            signatures[i] = signer.sign();
+            cache.verify(verifier, keyPair.getPublic(), signatures[i], payloads[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean verify() throws SignatureException {
+        final int i = position++ & (MESSAGES - 1);
+        verifier.update(payloads[i]);
+        return verifier.verify(signatures[i]);
+    }
+
+    @Benchmark
+    public boolean cached() throws SignatureException {
+        final int i = position++ & (MESSAGES - 1);
+        return cache.verify(verifier, keyPair.getPublic(), signatures[i], payloads[i]);
+    }
+}
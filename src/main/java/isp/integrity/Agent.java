@@ -9,32 +9,129 @@ package isp.integrity; /**
  */
 
 import javax.crypto.Mac;
-import javax.xml.bind.DatatypeConverter;
+import java.security.GeneralSecurityException;
 import java.security.Key;
-import java.util.concurrent.BlockingQueue;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Represents an agent that can communicate with other agents using
- * ideal communication channel.
+ * ideal communication channel. Messages are exchanged as {@link Frame}s
+ * over {@link FrameChannel}s, or over just the end of a channel that it needs.
  * <p/>
  * Agent's behavior is implemented by extending Agents class and
  * overriding run(...) method.
  */
 public abstract class Agent extends Thread {
-    protected final BlockingQueue<String> outgoing, incoming;
+    protected final FrameSender outgoing;
+    protected final FrameReceiver incoming;
 
     protected final Key macKey, cryptoKey;
     protected final String cryptoAlgorithm, macAlgorithm;
 
-    public Agent(final BlockingQueue<String> outgoing, final BlockingQueue<String> incoming, final Key cryptoKey,
+    /**
+     * Metrics of this agent; the channels above already report to them. They
+     * are published over JMX only on request, see {@link AgentMetrics#register(String)}.
+     */
+    protected final AgentMetrics metrics;
+
+    public Agent(final FrameSender outgoing, final FrameReceiver incoming, final Key cryptoKey,
             final String cryptoAlgorithm, final Key macKey, final String macAlgorithm) {
-        this.outgoing = outgoing;
-        this.incoming = incoming;
+        this.metrics = new AgentMetrics();
+        this.outgoing = metrics.meter(outgoing);
+        this.incoming = metrics.meter(incoming);
         this.cryptoKey = cryptoKey;
         this.cryptoAlgorithm = cryptoAlgorithm;
         this.macKey = macKey;
         this.macAlgorithm = macAlgorithm;
     }
 
+    public AgentMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return a Mac for macAlgorithm initialized with macKey; the instance
+     * is cached and reused by subsequent calls from the same thread
+     */
+    protected Mac mac() throws GeneralSecurityException {
+        return AgentEngines.mac(macAlgorithm, macKey);
+    }
+
+    /**
+     * @return a MessageDigest for macAlgorithm, cached per thread
+     */
+    protected MessageDigest digest() throws GeneralSecurityException {
+        return AgentEngines.digest(macAlgorithm);
+    }
+
+    /**
+     * @return a Signature for macAlgorithm initialized for signing with
+     * macKey, cached per thread
+     */
+    protected Signature signer() throws GeneralSecurityException {
+        return AgentEngines.signer(macAlgorithm, macKey);
+    }
+
+    /**
+     * @return a Signature for macAlgorithm initialized for verification with
+     * macKey, cached per thread
+     */
+    protected Signature verifier() throws GeneralSecurityException {
+        return AgentEngines.verifier(macAlgorithm, macKey);
+    }
+
+    /**
+     * Computes the HMAC of the concatenated data on the {@link IntegrityService},
+     * so that the agent can go on receiving and sending in the meantime.
+     */
+    protected CompletableFuture<byte[]> macAsync(final byte[]... data) {
+        return IntegrityService.getDefault().mac(macAlgorithm, macKey, data);
+    }
 
+    /**
+     * Digests the concatenated data with macAlgorithm on the {@link IntegrityService}.
+     */
+    protected CompletableFuture<byte[]> digestAsync(final byte[]... data) {
+        return IntegrityService.getDefault().digest(macAlgorithm, data);
+    }
+
+    /**
+     * Signs the concatenated data with macKey on the {@link IntegrityService}.
+     */
+    protected CompletableFuture<byte[]> signAsync(final byte[]... data) {
+        return IntegrityService.getDefault().sign(macAlgorithm, (PrivateKey) macKey, data);
+    }
+
+    /**
+     * Verifies a signature of the concatenated data with macKey on the {@link IntegrityService}.
+     */
+    protected CompletableFuture<Boolean> verifyAsync(final byte[] signature, final byte[]... data) {
+        return IntegrityService.getDefault().verify(macAlgorithm, (PublicKey) macKey, signature, data);
+    }
+
+    /**
+     * @return a stream that sends its bytes as HMAC-protected chunks of at most
+     * chunkSize bytes over the outgoing channel, see {@link HmacOutputStream}
+     */
+    protected HmacOutputStream hmacOutputStream(final int chunkSize) throws GeneralSecurityException {
+        return new HmacOutputStream(outgoing, newMac(), chunkSize);
+    }
+
+    /**
+     * @return a stream that verifies the chunks arriving on the incoming channel
+     */
+    protected HmacInputStream hmacInputStream() throws GeneralSecurityException {
+        return new HmacInputStream(incoming, newMac());
+    }
+
+    private Mac newMac() throws GeneralSecurityException {
+        // a stream keeps its Mac, so it must not be one of the cached engines
+        final Mac mac = Mac.getInstance(macAlgorithm);
+        mac.init(macKey);
+        return mac;
+    }
 }
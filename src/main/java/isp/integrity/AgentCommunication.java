@@ -1,7 +1,5 @@
 package isp.integrity;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -9,7 +7,8 @@ import java.util.logging.Logger;
  * I0->[I1]->A1->B1->A2->B2->A3->B3
  * <p/>
  * EXERCISE I1:
- * A communication channel is implemented with thread-safe blocking queue.
+ * A communication channel is implemented with thread-safe blocking queue
+ * that transfers frames of bytes.
  * <p/>
  * Both agents are implemented by extending the Agents class,
  * creating anonymous class and overriding run(...) method.
@@ -32,8 +31,8 @@ public class AgentCommunication {
          * STEP 1.
          * Setup a insecure communication channel.
          */
-        final BlockingQueue<String> alice2bob = new LinkedBlockingQueue<String>();
-        final BlockingQueue<String> bob2alice = new LinkedBlockingQueue<String>();
+        final FrameChannel alice2bob = new QueueFrameChannel();
+        final FrameChannel bob2alice = new QueueFrameChannel();
 
         /**
          * STEP 2.
@@ -53,9 +52,9 @@ public class AgentCommunication {
                     final String message = "I love you Bob. Kisses, Alice.";
 
 
-                    outgoing.put(message);
+                    outgoing.put(new Frame(message.getBytes("UTF-8")));
                     LOG.info("Alice: Sending to Bob: " + message);
-                } catch (InterruptedException e) {
+                } catch (Exception e) {
                 }
             }
         };
@@ -79,7 +78,7 @@ public class AgentCommunication {
                      * Bob receives the message from Alice.
                      * This action is recorded in Bob's log.
                      */
-                    final String message = incoming.take();
+                    final String message = incoming.take().getText();
                     LOG.log(Level.INFO, "Bob: I have received: " + message);
                 } catch (Exception ex) {
                 }
@@ -0,0 +1,139 @@
+package isp.integrity;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Logger;
+
+/**
+ * A variant of EXERCISE B3 in which the agents do not wait for their
+ * signature operations.
+ * <p/>
+ * Alice hands every message to the {@link IntegrityService} to be signed and
+ * sends the signed messages as the signatures complete, in order. Bob keeps
+ * receiving while up to a window of verifications runs on the service's
+ * workers, and checks the results in order. On a machine with several cores
+ * the signature work of both agents is spread over all of them; the service's
+ * admission control stops an agent that gets too far ahead.
+ * <p/>
+ * Optional arguments: signature scheme (rsa, ecdsa or ed25519; rsa by
+ * default), number of messages (default 2000) and the number of operations
+ * an agent keeps outstanding (default 64).
+ */
+public class AgentCommunicationAsyncSignature {
+    private final static Logger LOG = Logger.getLogger(AgentCommunicationAsyncSignature.class.getCanonicalName());
+
+    public static void main(String[] args) throws GeneralSecurityException {
+        final SignatureScheme scheme = args.length > 0 ? SignatureScheme.fromName(args[0]) : SignatureScheme.RSA;
+        final int messages = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final int outstanding = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+
+        /**
+         * STEP 1.
+         * Alice creates her key pair; Bob receives her public key.
+         */
+        final KeyPair keyPairAlice = scheme.generateKeyPair();
+
+        /**
+         * STEP 2.
+         * Setup an insecure communication channel.
+         */
+        final FrameChannel alice2bob = new QueueFrameChannel();
+        final FrameChannel bob2alice = new QueueFrameChannel();
+
+        /**
+         * STEP 3.
+         * Alice submits the messages for signing and sends every message as
+         * soon as its signature and those of the messages before it are done.
+         */
+        final Agent alice = new Agent(bob2alice, alice2bob, null, null, keyPairAlice.getPrivate(),
+                scheme.getSignatureAlgorithm()) {
+            @Override
+            public void run() {
+                try {
+                    final Queue<byte[]> payloads = new ArrayDeque<>();
+                    final Queue<CompletableFuture<byte[]>> signatures = new ArrayDeque<>();
+                    long sent = 0;
+                    for (long sequence = 1; sequence <= messages; sequence++) {
+                        final byte[] payload = ("Message " + sequence + " from Alice.").getBytes("UTF-8");
+                        payloads.add(payload);
+                        signatures.add(signAsync(Frame.sequenceBytes(sequence), payload));
+                        if (signatures.size() >= outstanding)
+                            outgoing.put(new Frame(++sent, payloads.remove(), signatures.remove().join()));
+                    }
+                    while (!signatures.isEmpty())
+                        outgoing.put(new Frame(++sent, payloads.remove(), signatures.remove().join()));
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+
+        /**
+         * STEP 4.
+         * Bob submits every received message for verification and checks
+         * the results in the order in which the messages arrived.
+         */
+        final Agent bob = new Agent(alice2bob, bob2alice, null, null, keyPairAlice.getPublic(),
+                scheme.getSignatureAlgorithm()) {
+            @Override
+            public void run() {
+                try {
+                    final ReplayWindow window = new ReplayWindow();
+                    final Queue<Frame> received = new ArrayDeque<>();
+                    final Queue<CompletableFuture<Boolean>> results = new ArrayDeque<>();
+                    final long start = System.nanoTime();
+                    for (int i = 0; i < messages; i++) {
+                        final Frame frame = incoming.take();
+                        received.add(frame);
+                        results.add(verifyAsync(frame.tagArray(), Frame.sequenceBytes(frame.getSequence()),
+                                frame.payloadArray()));
+                        if (results.size() >= outstanding)
+                            check(window, received.remove(), results.remove());
+                    }
+                    while (!results.isEmpty())
+                        check(window, received.remove(), results.remove());
+
+                    final double seconds = (System.nanoTime() - start) / 1e9;
+                    LOG.info(String.format("[Bob]: Verified %d of %d messages, %.0f messages/s",
+                            messages - metrics.getVerificationFailures(), messages, messages / seconds));
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+
+            private void check(final ReplayWindow window, final Frame frame, final CompletableFuture<Boolean> result) {
+                if (window.isFresh(frame.getSequence()) && isValid(frame, result)) {
+                    window.mark(frame.getSequence());
+                } else {
+                    metrics.verificationFailed();
+                    LOG.severe("[Bob]: Invalid message " + frame.getSequence());
+                }
+            }
+
+            /**
+             * A malformed signature fails the verification with a
+             * SignatureException instead of yielding false; the message is
+             * just as invalid.
+             */
+            private boolean isValid(final Frame frame, final CompletableFuture<Boolean> result) {
+                try {
+                    return result.join();
+                } catch (CompletionException e) {
+                    LOG.warning("[Bob]: Cannot verify message " + frame.getSequence() + ": " + e.getCause());
+                    return false;
+                }
+            }
+        };
+
+        /**
+         * STEP 5.
+         * Two commands below "fire" both agents and the fun begins ... :-)
+         */
+        bob.start();
+        alice.start();
+    }
+}
@@ -0,0 +1,111 @@
+package isp.integrity;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A variant of EXERCISE B3 in which Alice signs her messages in batches.
+ * <p/>
+ * Alice's messages pass through a {@link MerkleBatchSigner}, which signs the
+ * Merkle root of up to batchSize messages with a single RSA operation. Each
+ * message reaches Bob with the batch signature and its inclusion proof; Bob
+ * verifies the signature once per batch and the proof of every message.
+ * <p/>
+ * Optional arguments: number of messages (default 1000), batch size
+ * (default 64) and maximal wait of a batch in milliseconds (default 5).
+ * <p/>
+ * EXERCISE:
+ * - Compare the number of signatures Bob verifies with the number of messages.
+ * - Observe how the batch size and maximal wait change the number of batches.
+ */
+public class AgentCommunicationBatchSignature {
+    private final static Logger LOG = Logger.getLogger(AgentCommunicationBatchSignature.class.getCanonicalName());
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        final int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        final long maxWait = args.length > 2 ? Long.parseLong(args[2]) : 5;
+
+        /**
+         * STEP 1.
+         * Alice creates public and private key. Bob receives her public key.
+         */
+        final KeyPair keyPairAlice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+
+        /**
+         * STEP 2.
+         * Setup an insecure communication channel. Alice's messages go
+         * through the signing stage before they are sent to Bob.
+         */
+        final FrameChannel alice2signer = new QueueFrameChannel();
+        final FrameChannel alice2bob = new QueueFrameChannel();
+        final FrameChannel bob2alice = new QueueFrameChannel();
+
+        final MerkleBatchSigner signer = new MerkleBatchSigner(alice2signer, alice2bob, "SHA-256", "SHA1withRSA",
+                keyPairAlice.getPrivate(), batchSize, maxWait, TimeUnit.MILLISECONDS);
+        final Thread signingStage = new Thread(signer, "signer");
+        signingStage.setDaemon(true);
+
+        /**
+         * STEP 3.
+         * Agent Alice writes the messages; the signing stage signs them.
+         */
+        final Agent alice = new Agent(alice2signer, bob2alice, null, null, keyPairAlice.getPrivate(), "SHA1withRSA") {
+
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < messages; i++) {
+                        final String text = "I love you Bob. Kisses, Alice. #" + i;
+                        outgoing.put(new Frame(i, text.getBytes("UTF-8"), new byte[0]));
+                    }
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+
+        /**
+         * STEP 4.
+         * Agent Bob verifies every message with the batch verifier.
+         */
+        final Agent bob = new Agent(bob2alice, alice2bob, null, null, keyPairAlice.getPublic(), "SHA1withRSA") {
+
+            @Override
+            public void run() {
+                try {
+                    final MerkleBatchVerifier verifier = new MerkleBatchVerifier("SHA-256", macAlgorithm,
+                            (PublicKey) macKey);
+                    int valid = 0;
+                    final long start = System.nanoTime();
+                    for (int i = 0; i < messages; i++) {
+                        final Frame frame = incoming.take();
+                        if (verifier.verify(frame))
+                            valid++;
+                        else
+                            LOG.severe("[Bob]: Invalid signature of '" + frame.getText() + "'");
+                    }
+                    final long nanos = System.nanoTime() - start;
+
+                    LOG.info(String.format("[Bob]: %d of %d messages valid, %d signature verifications, "
+                                    + "%d batches signed, %.0f messages/s", valid, messages,
+                            verifier.getSignatureVerifications(), signer.getBatches(), messages * 1e9 / nanos));
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+
+        /**
+         * STEP 5.
+         * Start the signing stage and both agents.
+         */
+        signingStage.start();
+        bob.start();
+        alice.start();
+    }
+}
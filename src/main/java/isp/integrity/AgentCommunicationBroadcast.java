@@ -0,0 +1,130 @@
+package isp.integrity;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A variant of EXERCISE B3 in which Alice notifies many Bobs at once.
+ * <p/>
+ * Alice signs each notification once and puts it into a
+ * {@link BroadcastChannel}; all Bobs receive the same frame. Since they share
+ * a {@link VerificationCache}, a Bob who receives a notification that another
+ * Bob has already verified finds it in the cache. Bobs who receive it at the
+ * same time still verify it each.
+ * <p/>
+ * Optional arguments: signature scheme (rsa, ecdsa or ed25519; rsa by
+ * default), number of Bobs (default 3) and number of notifications
+ * (default 5).
+ * <p/>
+ * EXERCISE:
+ * - Compare the cost of a broadcast with sending a separately signed or
+ *   MACed message to every Bob.
+ * - Make one Bob slow and try the slow-subscriber policies.
+ */
+public class AgentCommunicationBroadcast {
+    private final static Logger LOG = Logger.getLogger(AgentCommunicationBroadcast.class.getCanonicalName());
+
+    public static void main(String[] args) throws GeneralSecurityException, InterruptedException {
+        final SignatureScheme scheme = args.length > 0 ? SignatureScheme.fromName(args[0]) : SignatureScheme.RSA;
+        final int bobs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        final int notifications = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        /**
+         * STEP 1.
+         * Alice creates her key pair; all Bobs receive her public key.
+         */
+        final KeyPair keyPairAlice = scheme.generateKeyPair();
+        final PublicKey pkAlice = keyPairAlice.getPublic();
+
+        /**
+         * STEP 2.
+         * Setup the broadcast channel; every Bob subscribes to it.
+         */
+        final BroadcastChannel broadcast = new BroadcastChannel();
+        final VerificationCache verifiedSignatures = new VerificationCache(1024, 10, TimeUnit.MINUTES);
+
+        /**
+         * STEP 3.
+         * Agent Alice signs every notification once and broadcasts it.
+         */
+        final Agent alice = new Agent(broadcast, null, null, null, keyPairAlice.getPrivate(),
+                scheme.getSignatureAlgorithm()) {
+            @Override
+            public void run() {
+                try {
+                    for (long sequence = 1; sequence <= notifications; sequence++) {
+                        final byte[] payload = ("Notification " + sequence + " from Alice.").getBytes("UTF-8");
+
+                        final long start = System.nanoTime();
+                        final Signature signer = signer();
+                        signer.update(Frame.sequenceBytes(sequence));
+                        signer.update(payload);
+                        final byte[] signature = signer.sign();
+                        metrics.record(AgentMetrics.Operation.SIGN, System.nanoTime() - start);
+
+                        outgoing.put(new Frame(sequence, payload, signature));
+                    }
+                    LOG.info("[Alice]: Signed " + notifications + " notifications for "
+                            + broadcast.getSubscriberCount() + " subscribers");
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+
+        /**
+         * STEP 4.
+         * Every Bob verifies the notifications with Alice's public key,
+         * unless another Bob has verified them already.
+         */
+        final Agent[] receivers = new Agent[bobs];
+        for (int i = 0; i < bobs; i++) {
+            final String name = "Bob" + (i + 1);
+            final FrameReceiver subscription = broadcast.subscribe(notifications,
+                    BroadcastChannel.SlowSubscriberPolicy.BLOCK);
+            receivers[i] = new Agent(null, subscription, null, null, pkAlice, scheme.getSignatureAlgorithm()) {
+                @Override
+                public void run() {
+                    try {
+                        final ReplayWindow window = new ReplayWindow();
+                        for (int n = 0; n < notifications; n++) {
+                            final Frame frame = incoming.take();
+                            final long start = System.nanoTime();
+                            final boolean verified = window.isFresh(frame.getSequence())
+                                    && verifiedSignatures.verify(verifier(), pkAlice, frame.getTag(),
+                                    Frame.sequenceBytes(frame.getSequence()), frame.getPayload());
+                            metrics.record(AgentMetrics.Operation.VERIFY, System.nanoTime() - start);
+
+                            if (verified) {
+                                window.mark(frame.getSequence());
+                            } else {
+                                metrics.verificationFailed();
+                                LOG.severe("[" + name + "]: Invalid notification " + frame.getSequence());
+                            }
+                        }
+                        LOG.info("[" + name + "]: Received " + notifications + " notifications, "
+                                + metrics.getVerificationFailures() + " invalid, verify time {"
+                                + metrics.getVerifyTime() + "}");
+                    } catch (Exception ex) {
+                        LOG.severe("Exception: " + ex.getMessage());
+                    }
+                }
+            };
+        }
+
+        /**
+         * STEP 5.
+         * Start all agents and report how many signatures were really verified.
+         */
+        for (final Agent receiver : receivers)
+            receiver.start();
+        alice.start();
+        for (final Agent receiver : receivers)
+            receiver.join();
+        LOG.info("Verification cache: " + verifiedSignatures);
+    }
+}
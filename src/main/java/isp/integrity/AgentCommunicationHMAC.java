@@ -5,8 +5,8 @@ package isp.integrity; /**
  * An agent communication example. Message Authenticity and Integrity
  * is provided using Hash algorithm and Shared Secret Key.
  * <p/>
- * Special care has to be taken when transferring binary stream over the communication
- * channel, thus, string HEX encoding/decoding is used to transfer checksums.
+ * The message and its checksum are transferred together as a single binary
+ * frame, thus, no string encoding of the checksum is needed on the channel.
  * <p/>
  * A communication channel is implemented by thread-safe blocking queue using
  * linked-list data structure.
@@ -31,12 +31,8 @@ package isp.integrity; /**
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
-import javax.xml.bind.DatatypeConverter;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
 /**
@@ -58,15 +54,15 @@ public class AgentCommunicationHMAC {
          * STEP 2.
          * Setup an insecure communication channel.
          */
-        final BlockingQueue<String> alice2bob = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> bob2alice = new LinkedBlockingQueue<>();
+        final FrameChannel alice2bob = new QueueFrameChannel();
+        final FrameChannel bob2alice = new QueueFrameChannel();
 
         /**
          * STEP 3.
          * Agent Alice definition:
          * - uses the communication channel,
          * - uses shared secret session key to create HMAC.
-         * - sends a message that is comprised of:
+         * - sends a frame that is comprised of:
          *   o message
          *   o HMAC.
          */
@@ -76,30 +72,37 @@ public class AgentCommunicationHMAC {
                 try {
                     /**
                      * STEP 3.1
-                     * Alice writes a message and sends to Bob.
+                     * Alice writes a message to Bob.
                      */
                     final String text = "I love you Bob. Kisses, Alice.";
-                    outgoing.put(text);
+                    final byte[] payload = text.getBytes("UTF-8");
 
                     /**
                      * TODO: STEP 3.2
                      * In addition, Alice creates HMAC using selected
                      * hash algorithm and shared secret session key.
+                     * The HMAC covers the sequence number of the message,
+                     * so that Bob can recognize replays.
                      */
-                    final Mac hmacAlgorithm = Mac.getInstance("HmacMD5");
-                    hmacAlgorithm.init(hmacKey);
-                    final byte[] messageHmac = hmacAlgorithm.doFinal(text.getBytes("UTF-8"));
-
+                    final long sequence = 1;
+                    final long start = System.nanoTime();
+                    final Mac hmacAlgorithm = mac();
+                    hmacAlgorithm.update(Frame.sequenceBytes(sequence));
+                    final byte[] messageHmac = hmacAlgorithm.doFinal(payload);
+                    metrics.record(AgentMetrics.Operation.MAC, System.nanoTime() - start);
 
                     /**
                      * TODO STEP 3.3
-                     * Special care has to be taken when transferring binary stream 
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.printHexBinary(byte[])
+                     * Alice sends the message and its HMAC to Bob in a single frame.
+                     */
+                    final Frame frame = new Frame(sequence, payload, messageHmac);
+                    outgoing.put(frame);
 
+                    /**
+                     * STEP 3.4
+                     * Someone who captured the frame on the channel sends it again.
                      */
-                    final String messageHmacAsString = DatatypeConverter.printHexBinary(messageHmac);
-                    outgoing.put(messageHmacAsString);
+                    outgoing.put(frame);
                 } catch (Exception ex) {
                     LOG.severe("Exception: " + ex.getMessage());
                 }
@@ -110,7 +113,7 @@ public class AgentCommunicationHMAC {
          * STEP 4.
          * Agent Bob:
          * - uses the communication channel,
-         * - receives the message that is comprised of:
+         * - receives the frame that is comprised of:
          *   o message
          *   o HMAC
          * - uses shared secret session key to
@@ -121,40 +124,60 @@ public class AgentCommunicationHMAC {
             @Override
             public void run() {
                 try {
-                    /**
-                     * STEP 4.1
-                     * Bob receives the message from Alice.
-                     * This action is recorded in Bob's log.
-                     */
-                    final String receivedText = incoming.take();
-                    final String receivedHMACHex = incoming.take();
-                    LOG.info("[Bob]: Received message '" + receivedText + "' with HMAC '" + receivedHMACHex + "'");
+                    final TagVerifier verifier = TagVerifier.forHmac(new PrecomputedHmac("HmacMD5", hmacKey));
+                    final ReplayWindow window = new ReplayWindow();
+                    for (int i = 0; i < 2; i++)
+                        receive(verifier, window);
+                    LOG.info("[Bob]: " + metrics);
+                } catch (Exception ex) {
+                }
+            }
 
-                    /**
-                     * TODO: STEP 4.2
-                     * Special care has to be taken when transferring binary stream
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.parseHexBinary(String)
-                     */
-                    final byte[] receivedHmac = DatatypeConverter.parseHexBinary(receivedHMACHex);
-                    /**
-                     * TODO: STEP 4.3
-                     * Bob calculates new HMAC using selected hash algorithm,
-                     * shared secret session key and received text.
-                     */
-                    final Mac hmacAlgorithm = Mac.getInstance("HmacMD5");
-                    hmacAlgorithm.init(hmacKey);
-                    final byte[] recomputedHmac = hmacAlgorithm.doFinal(receivedText.getBytes("UTF-8"));
-                    /**
-                     * TODO: STEP 4.4
-                     * Verify if received and calculated HMAC match.
-                     */
-                    if (Arrays.equals(recomputedHmac, receivedHmac))
-                        LOG.info("[Bob]: Authenticity and integrity verified.");
-                    else
-                        LOG.severe("[Bob]: Failed to verify authenticity and integrity.");
+            private void receive(final TagVerifier verifier, final ReplayWindow window) throws Exception {
+                /**
+                 * STEP 4.1
+                 * Bob receives the message from Alice.
+                 * This action is recorded in Bob's log.
+                 */
+                final Frame frame = incoming.take();
+                final String receivedText = frame.getText();
 
-                } catch (Exception ex) {
+                /**
+                 * TODO: STEP 4.2
+                 * The HMAC arrives as raw bytes in the same frame as the text.
+                 * It is converted to HEX only for logging.
+                 */
+                final byte[] receivedHmac = frame.getTag();
+                LOG.info("[Bob]: Received message '" + receivedText + "' with HMAC '"
+                        + HexCodec.toHex(receivedHmac) + "'");
+                /**
+                 * STEP 4.3
+                 * A message whose sequence number Bob has already seen is a replay.
+                 */
+                if (!window.isFresh(frame.getSequence())) {
+                    LOG.severe("[Bob]: Rejected replayed message " + frame.getSequence() + ".");
+                    return;
+                }
+
+                /**
+                 * TODO: STEP 4.4
+                 * Bob calculates new HMAC using selected hash algorithm,
+                 * shared secret session key, sequence number and received text,
+                 * and verifies if received and calculated HMAC match. The comparison
+                 * takes the same time regardless of where the HMACs differ. The key
+                 * pads are hashed only once, when the verifier is created; every
+                 * message still clones the primed digests, so the check allocates.
+                 */
+                final long start = System.nanoTime();
+                final boolean verified = verifier.verifySequenced(frame);
+                metrics.record(AgentMetrics.Operation.MAC, System.nanoTime() - start);
+
+                if (verified) {
+                    window.mark(frame.getSequence());
+                    LOG.info("[Bob]: Authenticity and integrity verified.");
+                } else {
+                    metrics.verificationFailed();
+                    LOG.severe("[Bob]: Failed to verify authenticity and integrity.");
                 }
             }
         };
@@ -5,8 +5,8 @@ package isp.integrity; /**
  * An agent communication example. Message Authenticity and Integrity
  * is provided using Hash algorithm and Shared Secret Key.
  * <p/>
- * Special care has to be taken when transferring binary stream over the communication
- * channel, thus, string HEX encoding/decoding is used to transfer checksums.
+ * The message and its checksum are transferred together as a single binary
+ * frame, thus, no string encoding of the checksum is needed on the channel.
  * <p/>
  * A communication channel is implemented by thread-safe blocking queue using
  * linked-list data structure.
@@ -29,15 +29,11 @@ package isp.integrity; /**
  * @version 1
  */
 
-import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
-import javax.xml.bind.DatatypeConverter;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.UnsupportedEncodingException;
 import java.security.Key;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
 /**
@@ -46,24 +42,31 @@ import java.util.logging.Logger;
 public class AgentCommunicationHMACMITM {
     private final static Logger LOG = Logger.getLogger(AgentCommunicationHMACMITM.class.getCanonicalName());
 
-    public static void main(String[] args) throws NoSuchAlgorithmException {
+    /**
+     * Characters and lengths of the keys that Maloy tries.
+     */
+    private static final String KEY_CHARSET = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final int KEY_MIN_LENGTH = 1, KEY_MAX_LENGTH = 5;
+
+    public static void main(String[] args) throws UnsupportedEncodingException {
 
         /**
          * STEP 1.
          * Alice and Bob agree upon a shared secret session key that will be 
-         * used for hash based message authentication code.
+         * used for hash based message authentication code. Instead of generating
+         * a random key, they pick a short one that is easy to remember.
          */
-        final Key hmacKey = KeyGenerator.getInstance("HmacMD5").generateKey();
+        final Key hmacKey = new SecretKeySpec("b0b4".getBytes("UTF-8"), "HmacMD5");
 
         /**
          * STEP 2.
          * Setup an insecure communication channel.
          */
 
-        final BlockingQueue<String> alice2maloy = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> maloy2alice = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> maloy2bob = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> bob2maloy = new LinkedBlockingQueue<>();
+        final FrameChannel alice2maloy = new QueueFrameChannel();
+        final FrameChannel maloy2alice = new QueueFrameChannel();
+        final FrameChannel maloy2bob = new QueueFrameChannel();
+        final FrameChannel bob2maloy = new QueueFrameChannel();
 
 
         /**
@@ -71,40 +74,34 @@ public class AgentCommunicationHMACMITM {
          * Agent Alice definition:
          * - uses the communication channel,
          * - uses shared secret session key to create HMAC.
-         * - sends a message that is comprised of:
+         * - sends a frame that is comprised of:
          *   o message
          *   o HMAC.
          */
-        final Agent alice = new Agent(maloy2alice, alice2maloy, null, null, hmacKey, "HmacMD5") {
+        final Agent alice = new Agent(alice2maloy, maloy2alice, null, null, hmacKey, "HmacMD5") {
             @Override
             public void run() {
                 try {
                     /**
                      * STEP 3.1
-                     * Alice writes a message and sends to Bob.
+                     * Alice writes a message to Bob.
                      */
                     final String text = "I love you Bob. Kisses, Alice.";
-                    outgoing.put(text);
+                    final byte[] payload = text.getBytes("UTF-8");
 
                     /**
                      * TODO: STEP 3.2
                      * In addition, Alice creates HMAC using selected
                      * hash algorithm and shared secret session key.
                      */
-                    final Mac hmacAlgorithm = Mac.getInstance("HmacMD5");
-                    hmacAlgorithm.init(hmacKey);
-                    final byte[] messageHmac = hmacAlgorithm.doFinal(text.getBytes("UTF-8"));
-
+                    final Mac hmacAlgorithm = mac();
+                    final byte[] messageHmac = hmacAlgorithm.doFinal(payload);
 
                     /**
                      * TODO STEP 3.3
-                     * Special care has to be taken when transferring binary stream 
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.printHexBinary(byte[])
-
+                     * Alice sends the message and its HMAC to Bob in a single frame.
                      */
-                    final String messageHmacAsString = DatatypeConverter.printHexBinary(messageHmac);
-                    outgoing.put(messageHmacAsString);
+                    outgoing.put(new Frame(payload, messageHmac));
                 } catch (Exception ex) {
                     LOG.severe("Exception: " + ex.getMessage());
                 }
@@ -115,13 +112,13 @@ public class AgentCommunicationHMACMITM {
          * STEP 4.
          * Agent Bob:
          * - uses the communication channel,
-         * - receives the message that is comprised of:
+         * - receives the frame that is comprised of:
          *   o message
          *   o HMAC
          * - uses shared secret session key to
          *   verify message authenticity and integrity.
          */
-        final Agent bob = new Agent(maloy2bob, bob2maloy, null, null, hmacKey, "HmacMD5") {
+        final Agent bob = new Agent(bob2maloy, maloy2bob, null, null, hmacKey, "HmacMD5") {
 
             @Override
             public void run() {
@@ -131,27 +128,20 @@ public class AgentCommunicationHMACMITM {
                      * Bob receives the message from Alice.
                      * This action is recorded in Bob's log.
                      */
-                    final String receivedText = incoming.take();
-                    final String receivedHMACHex = incoming.take();
-                    LOG.info("[Bob]: Received message '" + receivedText + "' with HMAC '" + receivedHMACHex + "'");
+                    final Frame frame = incoming.take();
+                    final byte[] receivedHmac = frame.getTag();
+                    LOG.info("[Bob]: Received message '" + frame.getText() + "' with HMAC '"
+                            + HexCodec.toHex(receivedHmac) + "'");
 
                     /**
                      * TODO: STEP 4.2
-                     * Special care has to be taken when transferring binary stream
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.parseHexBinary(String)
-                     */
-                    final byte[] receivedHmac = DatatypeConverter.parseHexBinary(receivedHMACHex);
-                    /**
-                     * TODO: STEP 4.3
                      * Bob calculates new HMAC using selected hash algorithm,
                      * shared secret session key and received text.
                      */
-                    final Mac hmacAlgorithm = Mac.getInstance("HmacMD5");
-                    hmacAlgorithm.init(hmacKey);
-                    final byte[] recomputedHmac = hmacAlgorithm.doFinal(receivedText.getBytes("UTF-8"));
+                    final Mac hmacAlgorithm = mac();
+                    final byte[] recomputedHmac = hmacAlgorithm.doFinal(frame.getPayload());
                     /**
-                     * TODO: STEP 4.4
+                     * TODO: STEP 4.3
                      * Verify if received and calculated HMAC match.
                      */
                     if (Arrays.equals(recomputedHmac, receivedHmac))
@@ -167,51 +157,47 @@ public class AgentCommunicationHMACMITM {
         /**
          * MALOY
          */
-        final MITMAgent maloy = new MITMAgent(maloy2alice,alice2maloy,maloy2bob,bob2maloy, null, null, null, "HmacMD5") {
+        final MITMAgent maloy = new MITMAgent(maloy2alice, alice2maloy, maloy2bob, bob2maloy, null, null, null, "HmacMD5") {
 
             @Override
             public void run() {
                 try {
 
-                    final String receivedText = incomingA.take();
-                    final String receivedHMACHex = incomingA.take();
-                    LOG.info("[Evil Maloy]: Received message '" + receivedText + "' with HMAC '" + receivedHMACHex + "'");
-
-                    final Mac hmacAlgorithm = Mac.getInstance(this.macAlgorithm);
-
-                    String possibleKey="";
-                    for(char c='0';c<'z';c++){
-                        hmacAlgorithm.init());
-
-                    }
-
-
-                    final byte[] receivedDigest = DatatypeConverter.parseHexBinary(receivedDigestString);
-
+                    final Frame frame = incomingA.take();
+                    final byte[] receivedHmac = frame.getTag();
+                    LOG.info("[Evil Maloy]: Received message '" + frame.getText() + "' with HMAC '"
+                            + HexCodec.toHex(receivedHmac) + "'");
 
-                    final MessageDigest digestAlgorithm = MessageDigest.getInstance(this.macAlgorithm);
-                    final byte[] digestRecomputed = digestAlgorithm.digest(message.getBytes("UTF-8"));
-
-
-                    if (Arrays.equals(receivedDigest, digestRecomputed)) {
-                        LOG.info("Integrity checked");
-                    } else {
-                        LOG.warning("Integrity check failed.");
-                    }
+                    /**
+                     * Maloy guesses the shared key by trying every short
+                     * key until one produces the received HMAC.
+                     */
+                    final KeySearch search = new KeySearch(macAlgorithm, KEY_CHARSET, KEY_MIN_LENGTH, KEY_MAX_LENGTH);
+                    final byte[] guessedKey = search.search(frame.getPayload(), receivedHmac);
+                    LOG.info(String.format("[Evil Maloy]: Tested %d of %d keys at %.0f keys/s",
+                            search.getTested(), search.getTotal(), search.getKeysPerSecond()));
 
-                    //TODO: Modify message and send it to bob wit new MAC
                     LOG.info("Evil maloy will modify message..");
                     final String messageModified = "I hate you Bob. Alice.";
-                    LOG.info("Sending modified msg: "+messageModified);
-                    outgoingB.put(messageModified);
-
-                    final byte[] hashedModified = digestAlgorithm.digest(messageModified.getBytes("UTF-8"));
-
-
-                    final String hashAsHexModified = DatatypeConverter.printHexBinary(hashedModified);
+                    final byte[] payload = messageModified.getBytes("UTF-8");
 
+                    /**
+                     * With the key, the modified message gets a valid HMAC.
+                     * Without it, Maloy can only reuse Alice's HMAC.
+                     */
+                    final byte[] hmac;
+                    if (guessedKey != null) {
+                        LOG.info("[Evil Maloy]: Found the key '" + new String(guessedKey, "UTF-8") + "'");
+                        final Mac hmacAlgorithm = Mac.getInstance(macAlgorithm);
+                        hmacAlgorithm.init(new SecretKeySpec(guessedKey, macAlgorithm));
+                        hmac = hmacAlgorithm.doFinal(payload);
+                    } else {
+                        LOG.info("[Evil Maloy]: The key is not in the keyspace");
+                        hmac = receivedHmac;
+                    }
 
-                    outgoingB.put(hashAsHexModified);
+                    LOG.info("Sending modified msg: " + messageModified);
+                    outgoingB.put(new Frame(payload, hmac));
 
                 } catch (Exception e) {
                     LOG.severe("Exception: " + e.getMessage());
@@ -223,6 +209,7 @@ public class AgentCommunicationHMACMITM {
          * STEP 5.
          * Two commands below "fire" both agents and the fun begins ... :-)
          */
+        maloy.start();
         bob.start();
         alice.start();
     }
@@ -1,10 +1,6 @@
 package isp.integrity;
 
-import javax.xml.bind.DatatypeConverter;
 import java.security.MessageDigest;
-import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
 /**
@@ -12,8 +8,8 @@ import java.util.logging.Logger;
  * <p/>
  * EXERCISE B1: Providing integrity to agent communications
  * <p/>
- * Special care has to be taken when transferring binary stream over the communication
- * channel, thus, HEX is used to transfer checksums.
+ * The message and its checksum are transferred together as a single binary
+ * frame, thus, no string encoding of the checksum is needed on the channel.
  * <p/>
  * A communication channel is implemented by thread-safe blocking queue using
  * linked-list data structure.
@@ -44,14 +40,14 @@ public class AgentCommunicationMessageDigest {
          * STEP 1.
          * Setup an insecure communication channel.
          */
-        final BlockingQueue<String> alice2bob = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> bob2alice = new LinkedBlockingQueue<>();
+        final FrameChannel alice2bob = new QueueFrameChannel();
+        final FrameChannel bob2alice = new QueueFrameChannel();
 
         /**
          * STEP 2.
          * Agent Alice definition:
          * - uses the communication channel,
-         * - sends a message that is comprised of:
+         * - sends a frame that is comprised of:
          *   o message
          *   o Message Digest
          * - checks if received and calculated message digest checksum match.
@@ -63,33 +59,28 @@ public class AgentCommunicationMessageDigest {
                 try {
                     /**
                      * STEP 2.1
-                     * Alice writes a message and sends to Bob.
-                     * This action is recorded in Alice's log.
+                     * Alice writes a message to Bob.
                      */
                     final String message = "I love you Bob. Kisses, Alice.";
-                    outgoing.put(message);
+                    final byte[] payload = message.getBytes("UTF-8");
 
                     /**
                      * TODO: STEP 2.2
                      * In addition, Alice creates message digest using selected
                      * hash algorithm.
                      */
-                    final MessageDigest digestAlgorithm = MessageDigest.getInstance(this.macAlgorithm);
-                    final byte[] hashed = digestAlgorithm.digest(message.getBytes("UTF-8"));
-
+                    final long start = System.nanoTime();
+                    final MessageDigest digestAlgorithm = digest();
+                    final byte[] hashed = digestAlgorithm.digest(payload);
+                    metrics.record(AgentMetrics.Operation.DIGEST, System.nanoTime() - start);
 
                     /**
                      * TODO STEP 2.3
-                     * Special care has to be taken when transferring binary stream 
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.printHexBinary(byte[])
+                     * Alice sends the message and its digest to Bob in a single frame.
+                     * This action is recorded in Alice's log.
                      */
-
-                    final String hashAsHex = DatatypeConverter.printHexBinary(hashed);
-                    System.out.println(hashAsHex);
-
-
-                    outgoing.put(hashAsHex);
+                    System.out.println(HexCodec.toHex(hashed));
+                    outgoing.put(new Frame(payload, hashed));
 
                 } catch (Exception e) {
                     LOG.severe("Exception: " + e.getMessage());
@@ -100,7 +91,7 @@ public class AgentCommunicationMessageDigest {
         /**
          * STEP 3. Agent Bob
          * - uses the communication channel,
-         * - receives the message that is comprised of:
+         * - receives the frame that is comprised of:
          *   - message
          *   - message digest
          * - checks if received and calculated message digest checksum match.
@@ -115,33 +106,30 @@ public class AgentCommunicationMessageDigest {
                      * Bob receives the message from Alice.
                      * This action is recorded in Bob's log.
                      */
-                    final String message = incoming.take();
-                    LOG.info("Bob: I have received: " + message);
+                    final Frame frame = incoming.take();
+                    LOG.info("Bob: I have received: " + frame.getText());
 
                     /**
-                     * TODO STEP 3.2
-                     * Special care has to be taken when transferring binary stream 
-                     * over the communication channel: convert received string into
-                     * byte array with DatatypeConverter.parseHexBinary(String)
-                     */
-                    final String receivedDigestString = incoming.take();
-                    final byte[] receivedDigest = DatatypeConverter.parseHexBinary(receivedDigestString);
-
-                    /**
-                     * TODO: STEP 3.3
+                     * TODO: STEP 3.2
                      * Bob calculates new message digest using selected hash algorithm and
-                     * received text.
+                     * received text. The received digest arrives as raw bytes in the same
+                     * frame as the message.
                      */
-                    final MessageDigest digestAlgorithm = MessageDigest.getInstance(this.macAlgorithm);
-                    final byte[] digestRecomputed = digestAlgorithm.digest(message.getBytes("UTF-8"));
+                    final TagVerifier verifier = TagVerifier.forDigest(digest());
 
                     /**
-                     * TODO STEP 3.4
+                     * TODO STEP 3.3
                      * Verify if received and calculated message digest checksum match.
+                     * The comparison takes the same time regardless of where they differ.
                      */
-                    if (Arrays.equals(receivedDigest, digestRecomputed)) {
+                    final long start = System.nanoTime();
+                    final boolean verified = verifier.verify(frame);
+                    metrics.record(AgentMetrics.Operation.DIGEST, System.nanoTime() - start);
+
+                    if (verified) {
                         LOG.info("Integrity checked");
                     } else {
+                        metrics.verificationFailed();
                         LOG.warning("Integrity check failed.");
                     }
                 } catch (Exception e) {
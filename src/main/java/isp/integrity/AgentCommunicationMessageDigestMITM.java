@@ -1,10 +1,7 @@
 package isp.integrity;
 
-import javax.xml.bind.DatatypeConverter;
 import java.security.MessageDigest;
 import java.util.Arrays;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Logger;
 
 /**
@@ -12,8 +9,8 @@ import java.util.logging.Logger;
  * <p/>
  * EXERCISE B1: Providing integrity to agent communications
  * <p/>
- * Special care has to be taken when transferring binary stream over the communication
- * channel, thus, HEX is used to transfer checksums.
+ * The message and its checksum are transferred together as a single binary
+ * frame, thus, no string encoding of the checksum is needed on the channel.
  * <p/>
  * A communication channel is implemented by thread-safe blocking queue using
  * linked-list data structure.
@@ -44,10 +41,10 @@ public class AgentCommunicationMessageDigestMITM {
          * STEP 1.
          * Setup an insecure communication channel.
          */
-        final BlockingQueue<String> alice2maloy = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> maloy2alice = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> maloy2bob = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> bob2maloy = new LinkedBlockingQueue<>();
+        final FrameChannel alice2maloy = new QueueFrameChannel();
+        final FrameChannel maloy2alice = new QueueFrameChannel();
+        final FrameChannel maloy2bob = new QueueFrameChannel();
+        final FrameChannel bob2maloy = new QueueFrameChannel();
 
         /**
          * ALICE -> MALOY
@@ -58,17 +55,14 @@ public class AgentCommunicationMessageDigestMITM {
             public void run() {
                 try {
                     final String message = "I love you Bob. Kisses, Alice.";
-                    outgoing.put(message);
+                    final byte[] payload = message.getBytes("UTF-8");
 
-                    final MessageDigest digestAlgorithm = MessageDigest.getInstance(this.macAlgorithm);
-                    final byte[] hashed = digestAlgorithm.digest(message.getBytes("UTF-8"));
+                    final MessageDigest digestAlgorithm = digest();
+                    final byte[] hashed = digestAlgorithm.digest(payload);
 
+                    System.out.println(HexCodec.toHex(hashed));
 
-                    final String hashAsHex = DatatypeConverter.printHexBinary(hashed);
-                    System.out.println(hashAsHex);
-
-
-                    outgoing.put(hashAsHex);
+                    outgoing.put(new Frame(payload, hashed));
 
                 } catch (Exception e) {
                     LOG.severe("Exception: " + e.getMessage());
@@ -85,16 +79,13 @@ public class AgentCommunicationMessageDigestMITM {
             public void run() {
                 try {
 
-                    final String message = incomingA.take();
-                    LOG.info("Evil Maloy : I have received: " + message);
-
+                    final Frame frame = incomingA.take();
+                    LOG.info("Evil Maloy : I have received: " + frame.getText());
 
-                    final String receivedDigestString = incomingA.take();
-                    final byte[] receivedDigest = DatatypeConverter.parseHexBinary(receivedDigestString);
+                    final byte[] receivedDigest = frame.getTag();
 
-
-                    final MessageDigest digestAlgorithm = MessageDigest.getInstance(this.macAlgorithm);
-                    final byte[] digestRecomputed = digestAlgorithm.digest(message.getBytes("UTF-8"));
+                    final MessageDigest digestAlgorithm = digest();
+                    final byte[] digestRecomputed = digestAlgorithm.digest(frame.getPayload());
 
 
                     if (Arrays.equals(receivedDigest, digestRecomputed)) {
@@ -107,15 +98,11 @@ public class AgentCommunicationMessageDigestMITM {
                     LOG.info("Evil maloy will modify message..");
                     final String messageModified = "I hate you Bob. Alice.";
                     LOG.info("Sending modified msg: "+messageModified);
-                    outgoingB.put(messageModified);
-
-                    final byte[] hashedModified = digestAlgorithm.digest(messageModified.getBytes("UTF-8"));
+                    final byte[] payloadModified = messageModified.getBytes("UTF-8");
 
+                    final byte[] hashedModified = digestAlgorithm.digest(payloadModified);
 
-                    final String hashAsHexModified = DatatypeConverter.printHexBinary(hashedModified);
-
-
-                    outgoingB.put(hashAsHexModified);
+                    outgoingB.put(new Frame(payloadModified, hashedModified));
 
                 } catch (Exception e) {
                     LOG.severe("Exception: " + e.getMessage());
@@ -133,16 +120,13 @@ public class AgentCommunicationMessageDigestMITM {
             public void run() {
                 try {
 
-                    final String message = incoming.take();
-                    LOG.info("Bob: I have received: " + message);
-
-
-                    final String receivedDigestString = incoming.take();
-                    final byte[] receivedDigest = DatatypeConverter.parseHexBinary(receivedDigestString);
+                    final Frame frame = incoming.take();
+                    LOG.info("Bob: I have received: " + frame.getText());
 
+                    final byte[] receivedDigest = frame.getTag();
 
-                    final MessageDigest digestAlgorithm = MessageDigest.getInstance(this.macAlgorithm);
-                    final byte[] digestRecomputed = digestAlgorithm.digest(message.getBytes("UTF-8"));
+                    final MessageDigest digestAlgorithm = digest();
+                    final byte[] digestRecomputed = digestAlgorithm.digest(frame.getPayload());
 
 
                     if (Arrays.equals(receivedDigest, digestRecomputed)) {
@@ -1,9 +1,9 @@
 package isp.integrity;
 
-import javax.xml.bind.DatatypeConverter;
 import java.security.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -17,8 +17,8 @@ import java.util.logging.Logger;
  * we can be certain that valid signature can only be provided by that party. This
  * provides an additional property called non-repudiation.
  * <p/>
- * Special care has to be taken when transferring binary stream over the communication
- * channel, thus, HEX encoding as strings is used to transfer checksums.
+ * The message and its signature are transferred together as a single binary
+ * frame, thus, no string encoding of the signature is needed on the channel.
  * <p/>
  * A communication channel is implemented by thread-safe blocking queue.
  * <p/>
@@ -41,13 +41,16 @@ import java.util.logging.Logger;
 public class AgentCommunicationSignature {
     private final static Logger LOG = Logger.getLogger(AgentCommunicationHMAC.class.getCanonicalName());
 
-    public static void main(String[] args) throws NoSuchAlgorithmException {
+    public static void main(String[] args) throws GeneralSecurityException {
 
         /**
          * STEP 1.
-         * Alice creates public and private key. Bob receives her public key.
+         * Alice creates public and private key of the signature scheme given
+         * as the first argument (rsa, ecdsa or ed25519; rsa by default).
+         * Bob receives her public key.
          */
-        final KeyPair keyPairAlice = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final SignatureScheme scheme = args.length > 0 ? SignatureScheme.fromName(args[0]) : SignatureScheme.RSA;
+        final KeyPair keyPairAlice = scheme.generateKeyPair();
         final PublicKey pkAlice = keyPairAlice.getPublic();
         final PrivateKey skAlice = keyPairAlice.getPrivate();
 
@@ -55,55 +58,64 @@ public class AgentCommunicationSignature {
          * STEP 2.
          * Setup an insecure communication channel.
          */
-        final BlockingQueue<String> alice2bob = new LinkedBlockingQueue<>();
-        final BlockingQueue<String> bob2alice = new LinkedBlockingQueue<>();
+        final FrameChannel alice2bob = new QueueFrameChannel();
+        final FrameChannel bob2alice = new QueueFrameChannel();
+
+        /**
+         * Bob remembers the signatures he has verified for ten minutes, so that
+         * copies of a message do not cost him another verification.
+         */
+        final VerificationCache verifiedSignatures = new VerificationCache(1024, 10, TimeUnit.MINUTES);
 
         /**
          * STEP 3.
          * Agent Alice definition:
          * - uses the communication channel,
-         * - sends a message that is comprised of:
+         * - sends a frame that is comprised of:
          *   o message
          *   o Signature
          * - uses private key to sign message.
          */
-        final Agent alice = new Agent(bob2alice, alice2bob, null, null, skAlice, "SHA1withRSA") {
+        final Agent alice = new Agent(bob2alice, alice2bob, null, null, skAlice, scheme.getSignatureAlgorithm()) {
 
             @Override
             public void run() {
                 try {
                     /**
                      * STEP 3.1
-                     * Alice writes a message and sends to Bob.
-                     * This action is recorded in Alice's log.
+                     * Alice writes a message to Bob.
                      */
                     final String text = "I love you Bob. Kisses, Alice.";
-                    outgoing.put(text);
-
-
+                    final byte[] payload = text.getBytes("UTF-8");
 
                     /**
                      * TODO STEP 3.2
                      * In addition, Alice signs message using selected
-                     * algorithm and her private key.
+                     * algorithm and her private key. The signature covers the
+                     * sequence number of the message, so that Bob can recognize replays.
                      */
-                    final Signature signatureAlg = Signature.getInstance(this.macAlgorithm);
-
-                    signatureAlg.initSign((PrivateKey) this.cryptoKey);
+                    final long sequence = 1;
+                    final long start = System.nanoTime();
+                    final Signature signatureAlg = signer();
 
                     // Finally, we load the message into the signature object and sign it
-                    signatureAlg.update(text.getBytes("UTF-8"));
+                    signatureAlg.update(Frame.sequenceBytes(sequence));
+                    signatureAlg.update(payload);
                     final byte[] signedText = signatureAlg.sign();
+                    metrics.record(AgentMetrics.Operation.SIGN, System.nanoTime() - start);
 
                     /**
                      * TODO: STEP 3.3
-                     * Special care has to be taken when transferring binary stream 
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.printHexBinary(byte[])
+                     * Alice sends the message and its signature to Bob in a single frame.
                      */
+                    final Frame frame = new Frame(sequence, payload, signedText);
+                    outgoing.put(frame);
 
-                    final String signatureText = DatatypeConverter.printHexBinary(signedText);
-                    outgoing.put(signatureText);
+                    /**
+                     * STEP 3.4
+                     * Someone who captured the frame on the channel sends it again.
+                     */
+                    outgoing.put(frame);
 
                 } catch (Exception ex) {
                     LOG.severe("Exception: " + ex.getMessage());
@@ -115,57 +127,77 @@ public class AgentCommunicationSignature {
          * STEP 4.
          * Agent Bob definition:
          * - uses the communication channel,
-         * - receives the message that is comprised of:
+         * - receives the frame that is comprised of:
          *   o message
          *   o Signature
          * - uses Alice's public key to
          *   verify message authenticity and integrity. In addition,
          *   Alice cannot repudiate that she did not send the message.
          */
-        final Agent bob = new Agent(alice2bob, bob2alice, null, null, pkAlice, "SHA1withRSA") {
+        final Agent bob = new Agent(alice2bob, bob2alice, null, null, pkAlice, scheme.getSignatureAlgorithm()) {
 
             @Override
             public void run() {
+                /**
+                 * STEP 4.1
+                 * Bob verifies signatures on a pool of workers, one per core, so
+                 * that he keeps up with more messages than a single core can check.
+                 */
+                final int cores = Runtime.getRuntime().availableProcessors();
+                final ExecutorService workers = Executors.newFixedThreadPool(cores);
                 try {
-                    /**
-                     * STEP 4.1
-                     * Bob receives the message from Alice.
-                     * This action is recorded in Bob's log.
-                     */
-                    final String receivedText = incoming.take();
-                    final String receivedSignatureHex = incoming.take();
-                    LOG.info("[Bob] Received: " + receivedText + " with signature: " + receivedSignatureHex);
+                    final ReplayWindow window = new ReplayWindow();
 
                     /**
                      * TODO STEP 4.2
-                     * Special care has to be taken when transferring binary stream
-                     * over the communication channel: convert byte array into string
-                     * of HEX values with DatatypeConverter.parseHexBinary(String)
-                     */
-                    final Signature alg = Signature.getInstance(this.macAlgorithm);
-                    alg.initVerify((PublicKey) this.cryptoKey);
-
-                    /**
-                     * TODO STEP 4.3
-                     * Bob setups signature verification. He has to provide
-                     * received text and Alice's public key.
+                     * The verification stage drains the messages that have arrived
+                     * into a batch and verifies Alice's signatures over their sequence
+                     * numbers and texts, unless he has already verified the same
+                     * signature over the same message. Results come back in the
+                     * order in which the messages arrived.
                      */
-                    final byte[] receivedSignature = DatatypeConverter.parseHexBinary(receivedSignatureHex);
-
-                    alg.update(receivedText.getBytes("UTF-8"));
-
+                    final BatchSignatureVerifier stage = new BatchSignatureVerifier(incoming,
+                            scheme.getSignatureAlgorithm(), pkAlice, workers, cores, 64,
+                            new BatchSignatureVerifier.Listener() {
+                                @Override
+                                public void verified(final Frame frame) {
+                                    /**
+                                     * STEP 4.3
+                                     * A message whose sequence number Bob has
+                                     * already seen is a replay.
+                                     */
+                                    if (!window.isFresh(frame.getSequence())) {
+                                        LOG.severe("[Bob]: Rejected replayed message " + frame.getSequence());
+                                        return;
+                                    }
+                                    window.mark(frame.getSequence());
+                                    LOG.info("[Bob] Received: " + frame.getText() + " with signature: "
+                                            + HexCodec.toHex(frame.getTag()) + ", signature OK");
+                                }
+
+                                @Override
+                                public void rejected(final Frame frame) {
+                                    metrics.verificationFailed();
+                                    LOG.severe("[Bob]: Invalid signature on message " + frame.getSequence());
+                                }
+                            }, verifiedSignatures);
 
                     /**
-                     * TODO: STEP 4.4
-                     * Bob verifies Alice's signature.
+                     * STEP 4.4
+                     * Bob processes batches until both frames have arrived.
                      */
-                    if (alg.verify(receivedSignature))
-                        LOG.info("[Bob]: Signature OK");
-                    else
-                        LOG.severe("[Bob]: Invalid signature");
-
+                    for (int received = 0; received < 2; ) {
+                        final long start = System.nanoTime();
+                        received += stage.processBatch();
+                        metrics.record(AgentMetrics.Operation.VERIFY, System.nanoTime() - start);
+                    }
+                    LOG.info(String.format("[Bob]: %d signatures verified, %d rejected", stage.getVerified(),
+                            stage.getRejected()));
+                    LOG.info("[Bob]: Verification cache: " + verifiedSignatures);
                 } catch (Exception ex) {
                     LOG.severe("Exception: " + ex.getMessage());
+                } finally {
+                    workers.shutdown();
                 }
             }
         };
@@ -0,0 +1,174 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.security.Key;
+import java.util.logging.Logger;
+
+/**
+ * A variant of EXERCISE B2 in which Alice and Bob talk over a socket instead
+ * of an in-process queue, so that they can run in separate processes.
+ * <p/>
+ * Alice sends messages with an HMAC over a {@link SocketFrameChannel}; Bob
+ * verifies them and reports the time per message, which now includes the
+ * real cost of the I/O.
+ * <p/>
+ * Arguments:
+ * <ul>
+ * <li>none or {@code tcp}: both agents in this process, over TCP loopback,</li>
+ * <li>{@code unix}: both agents in this process, over a Unix domain socket,</li>
+ * <li>{@code bob <address>}: only Bob, listening on the address,</li>
+ * <li>{@code alice <address>}: only Alice, connecting to Bob,</li>
+ * </ul>
+ * where an address is {@code host:port} or {@code unix:<path>}. An optional
+ * last argument is the number of messages (default 100000).
+ * <p/>
+ * EXERCISE:
+ * - Compare the time per message over TCP, a Unix domain socket and the
+ *   in-process channels.
+ * - Put a MITM process between Alice and Bob.
+ */
+public class AgentCommunicationSocket {
+    private final static Logger LOG = Logger.getLogger(AgentCommunicationSocket.class.getCanonicalName());
+
+    /**
+     * The processes cannot exchange a generated key, so they share a fixed one.
+     */
+    private static final String SHARED_SECRET = "I0->I1->A1->B1->A2->B2->A3->B3";
+    private static final String ALGORITHM = "HmacSHA256";
+
+    public static void main(String[] args) throws Exception {
+        final String mode = args.length > 0 ? args[0] : "tcp";
+        final int countIndex = mode.equals("bob") || mode.equals("alice") ? 2 : 1;
+        final int messages = args.length > countIndex ? Integer.parseInt(args[countIndex]) : 100000;
+
+        /**
+         * STEP 1.
+         * Alice and Bob share a secret key.
+         */
+        final Key hmacKey = new SecretKeySpec(SHARED_SECRET.getBytes("UTF-8"), ALGORITHM);
+
+        /**
+         * STEP 2.
+         * Bob listens on a socket, Alice connects to it.
+         */
+        switch (mode) {
+            case "bob":
+                try (ServerSocketChannel server = SocketFrameChannel.listen(address(args[1]))) {
+                    LOG.info("[Bob]: Listening on " + server.getLocalAddress());
+                    final SocketFrameChannel channel = SocketFrameChannel.accept(server);
+                    runAndClose(bob(channel, hmacKey, messages), channel);
+                }
+                break;
+            case "alice":
+                final SocketFrameChannel channel = SocketFrameChannel.connect(address(args[1]));
+                runAndClose(alice(channel, hmacKey, messages), channel);
+                break;
+            case "tcp":
+                inProcess(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), hmacKey, messages);
+                break;
+            case "unix":
+                final File path = File.createTempFile("alice2bob", ".sock");
+                path.delete();
+                try {
+                    inProcess(SocketFrameChannel.unixAddress(path.getPath()), hmacKey, messages);
+                } finally {
+                    path.delete();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown mode " + mode);
+        }
+    }
+
+    private static SocketAddress address(final String address) {
+        if (address.startsWith("unix:"))
+            return SocketFrameChannel.unixAddress(address.substring("unix:".length()));
+
+        final int colon = address.lastIndexOf(':');
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    private static void inProcess(final SocketAddress address, final Key hmacKey, final int messages)
+            throws Exception {
+        try (ServerSocketChannel server = SocketFrameChannel.listen(address)) {
+            final SocketFrameChannel aliceEnd = SocketFrameChannel.connect(server.getLocalAddress());
+            final SocketFrameChannel bobEnd = SocketFrameChannel.accept(server);
+            final Agent bob = bob(bobEnd, hmacKey, messages);
+            bob.start();
+            runAndClose(alice(aliceEnd, hmacKey, messages), aliceEnd);
+            bob.join();
+            bobEnd.close();
+        }
+    }
+
+    private static void runAndClose(final Agent agent, final SocketFrameChannel channel)
+            throws InterruptedException, IOException {
+        agent.start();
+        agent.join();
+        channel.close();
+    }
+
+    /**
+     * STEP 3.
+     * Alice sends the messages, each with its sequence number and HMAC.
+     */
+    private static Agent alice(final SocketFrameChannel channel, final Key hmacKey, final int messages) {
+        return new Agent(channel, channel, null, null, hmacKey, ALGORITHM) {
+            @Override
+            public void run() {
+                try {
+                    final byte[] payload = "I love you Bob. Kisses, Alice.".getBytes("UTF-8");
+                    for (long sequence = 1; sequence <= messages; sequence++) {
+                        final Mac mac = mac();
+                        mac.update(Frame.sequenceBytes(sequence));
+                        outgoing.put(new Frame(sequence, payload, mac.doFinal(payload)));
+                    }
+
+                    // Bob's acknowledgement keeps the connection open until he is done
+                    incoming.take();
+                    LOG.info("[Alice]: " + metrics);
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+    }
+
+    /**
+     * STEP 4.
+     * Bob verifies every message and acknowledges the last one.
+     */
+    private static Agent bob(final SocketFrameChannel channel, final Key hmacKey, final int messages) {
+        return new Agent(channel, channel, null, null, hmacKey, ALGORITHM) {
+            @Override
+            public void run() {
+                try {
+                    final TagVerifier verifier = TagVerifier.forMac(mac());
+                    final ReplayWindow window = new ReplayWindow();
+                    final long start = System.nanoTime();
+                    for (int i = 0; i < messages; i++) {
+                        final Frame frame = incoming.take();
+                        if (!window.isFresh(frame.getSequence()) || !verifier.verifySequenced(frame))
+                            metrics.verificationFailed();
+                        else
+                            window.mark(frame.getSequence());
+                    }
+                    final long nanos = System.nanoTime() - start;
+                    outgoing.put(new Frame(Frame.sequenceBytes(messages)));
+
+                    LOG.info(String.format("[Bob]: Verified %d of %d messages, %.0f ns per message",
+                            messages - metrics.getVerificationFailures(), messages, (double) nanos / messages));
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,96 @@
+package isp.integrity;
+
+import javax.crypto.KeyGenerator;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Logger;
+
+/**
+ * A variant of EXERCISE B2 in which Alice streams a message that is larger
+ * than either agent wants to keep in memory.
+ * <p/>
+ * Alice writes the message to an {@link HmacOutputStream}, which sends it as
+ * chunks with chained HMACs. Bob reads it from an {@link HmacInputStream},
+ * which verifies every chunk before releasing its bytes. The channel holds at
+ * most a few chunks, so memory use does not depend on the message size.
+ * <p/>
+ * Optional arguments: message size in MiB (default 256) and chunk size in
+ * bytes (default 65536).
+ * <p/>
+ * EXERCISE:
+ * - Observe how the chunk size changes the throughput.
+ * - Corrupt a chunk on the channel and observe where Bob stops reading.
+ */
+public class AgentCommunicationStreamingHMAC {
+    private final static Logger LOG = Logger.getLogger(AgentCommunicationStreamingHMAC.class.getCanonicalName());
+
+    private static final int CHANNEL_CAPACITY = 16;
+
+    public static void main(String[] args) throws NoSuchAlgorithmException {
+        final long size = (args.length > 0 ? Long.parseLong(args[0]) : 256) * 1024 * 1024;
+        final int chunkSize = args.length > 1 ? Integer.parseInt(args[1]) : HmacOutputStream.DEFAULT_CHUNK_SIZE;
+
+        /**
+         * STEP 1.
+         * Alice and Bob agree upon a shared secret session key.
+         */
+        final Key hmacKey = KeyGenerator.getInstance("HmacSHA256").generateKey();
+
+        /**
+         * STEP 2.
+         * Setup a bounded communication channel.
+         */
+        final FrameChannel alice2bob = new SpscRingChannel(CHANNEL_CAPACITY);
+        final FrameChannel bob2alice = new SpscRingChannel(CHANNEL_CAPACITY);
+
+        /**
+         * STEP 3.
+         * Alice writes the message into the authenticated stream.
+         */
+        final Agent alice = new Agent(alice2bob, bob2alice, null, null, hmacKey, "HmacSHA256") {
+            @Override
+            public void run() {
+                try (final OutputStream out = hmacOutputStream(chunkSize)) {
+                    final byte[] line = "I love you Bob. Kisses, Alice.\n".getBytes("UTF-8");
+                    for (long written = 0; written < size; written += line.length)
+                        out.write(line, 0, (int) Math.min(line.length, size - written));
+                } catch (Exception ex) {
+                    LOG.severe("Exception: " + ex.getMessage());
+                }
+            }
+        };
+
+        /**
+         * STEP 4.
+         * Bob reads verified bytes as they arrive.
+         */
+        final Agent bob = new Agent(bob2alice, alice2bob, null, null, hmacKey, "HmacSHA256") {
+            @Override
+            public void run() {
+                final byte[] buffer = new byte[8192];
+                long received = 0;
+                final long start = System.nanoTime();
+                try (final InputStream in = hmacInputStream()) {
+                    int n;
+                    while ((n = in.read(buffer)) != -1)
+                        received += n;
+
+                    final double seconds = (System.nanoTime() - start) / 1e9;
+                    LOG.info(String.format("[Bob]: Received and verified %d bytes in %.2f s (%.1f MB/s)",
+                            received, seconds, received / seconds / 1e6));
+                } catch (Exception ex) {
+                    LOG.severe("[Bob]: Stopped after " + received + " verified bytes: " + ex.getMessage());
+                }
+            }
+        };
+
+        /**
+         * STEP 5.
+         * Two commands below "fire" both agents and the fun begins ... :-)
+         */
+        bob.start();
+        alice.start();
+    }
+}
@@ -0,0 +1,45 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+
+/**
+ * The crypto engines of {@link Agent} and {@link MITMAgent}, taken from the
+ * default {@link CryptoEngineCache}, so they are cached per thread and reused
+ * by subsequent calls from the same thread.
+ */
+final class AgentEngines {
+
+    private AgentEngines() {
+    }
+
+    /**
+     * @return a Mac for the algorithm initialized with the key
+     */
+    static Mac mac(final String algorithm, final Key key) throws GeneralSecurityException {
+        return CryptoEngineCache.getDefault().mac(algorithm, key);
+    }
+
+    static MessageDigest digest(final String algorithm) throws GeneralSecurityException {
+        return CryptoEngineCache.getDefault().digest(algorithm);
+    }
+
+    /**
+     * @return a Signature for the algorithm initialized for signing with the key
+     */
+    static Signature signer(final String algorithm, final Key key) throws GeneralSecurityException {
+        return CryptoEngineCache.getDefault().signer(algorithm, (PrivateKey) key);
+    }
+
+    /**
+     * @return a Signature for the algorithm initialized for verification with the key
+     */
+    static Signature verifier(final String algorithm, final Key key) throws GeneralSecurityException {
+        return CryptoEngineCache.getDefault().verifier(algorithm, (PublicKey) key);
+    }
+}
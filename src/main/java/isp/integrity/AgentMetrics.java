@@ -0,0 +1,182 @@
+package isp.integrity;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Counters and latency histograms of a single agent, which can be published
+ * as an MXBean named {@code isp.integrity:type=AgentMetrics,name=<agent name>}.
+ * <p/>
+ * Messages and the time spent blocked on the channels are recorded by the
+ * channels of {@link Agent} and {@link MITMAgent}, see {@link #meter(FrameChannel)}.
+ * The crypto operations are timed by the agent's code, which passes the
+ * elapsed time to {@link #record(Operation, long)}.
+ */
+public class AgentMetrics implements AgentMetricsMXBean {
+    private final static Logger LOG = Logger.getLogger(AgentMetrics.class.getCanonicalName());
+
+    public enum Operation {
+        DIGEST, MAC, SIGN, VERIFY
+    }
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram[] operations = new LatencyHistogram[Operation.values().length];
+
+    private volatile ObjectName name;
+
+    public AgentMetrics() {
+        for (int i = 0; i < operations.length; i++)
+            operations[i] = new LatencyHistogram();
+    }
+
+    /**
+     * Publishes the metrics with the platform MBean server. Registration is
+     * opt-in: the caller has to {@link #unregister()} the metrics when the
+     * agent is done, otherwise the MBean server keeps them, and the agent,
+     * alive. A failed registration is logged; the metrics still work.
+     *
+     * @return these metrics
+     */
+    public synchronized AgentMetrics register(final String agentName) {
+        if (name != null)
+            return this;
+
+        try {
+            final ObjectName name = new ObjectName("isp.integrity:type=AgentMetrics,name="
+                    + ObjectName.quote(agentName));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            this.name = name;
+        } catch (JMException e) {
+            LOG.warning("Cannot register metrics of " + agentName + ": " + e);
+        }
+        return this;
+    }
+
+    /**
+     * Removes the metrics from the MBean server, e.g. when the agent is done.
+     */
+    public synchronized void unregister() {
+        if (name == null)
+            return;
+
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+        } catch (JMException e) {
+            LOG.warning("Cannot unregister " + name + ": " + e);
+        }
+        name = null;
+    }
+
+    /**
+     * @return a channel that counts the frames sent and received through the given
+     * one and records the time blocked in it; null if the channel is null
+     */
+    public FrameChannel meter(final FrameChannel channel) {
+        return channel == null ? null : new MeteredFrameChannel(channel, this);
+    }
+
+    /**
+     * @return a sender that counts the frames sent through the given one and
+     * records the time blocked in it; null if the sender is null
+     */
+    public FrameSender meter(final FrameSender sender) {
+        return sender == null ? null : new MeteredFrameChannel.Sender(sender, this);
+    }
+
+    /**
+     * @return a receiver that counts the frames received through the given one
+     * and records the time blocked in it; null if the receiver is null
+     */
+    public FrameReceiver meter(final FrameReceiver receiver) {
+        return receiver == null ? null : new MeteredFrameChannel.Receiver(receiver, this);
+    }
+
+    void sent(final long waitNanos) {
+        sent.incrementAndGet();
+        queueWait.record(waitNanos);
+    }
+
+    void received(final long waitNanos) {
+        received.incrementAndGet();
+        queueWait.record(waitNanos);
+    }
+
+    /**
+     * Records the duration of a crypto operation.
+     */
+    public void record(final Operation operation, final long nanos) {
+        operations[operation.ordinal()].record(nanos);
+    }
+
+    /**
+     * Counts a message whose digest, HMAC or signature did not verify.
+     */
+    public void verificationFailed() {
+        failures.incrementAndGet();
+    }
+
+    @Override
+    public long getMessagesSent() {
+        return sent.get();
+    }
+
+    @Override
+    public long getMessagesReceived() {
+        return received.get();
+    }
+
+    @Override
+    public long getVerificationFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getQueueWait() {
+        return queueWait.snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getDigestTime() {
+        return operations[Operation.DIGEST.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getMacTime() {
+        return operations[Operation.MAC.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getSignTime() {
+        return operations[Operation.SIGN.ordinal()].snapshot();
+    }
+
+    @Override
+    public LatencyHistogram.Snapshot getVerifyTime() {
+        return operations[Operation.VERIFY.ordinal()].snapshot();
+    }
+
+    @Override
+    public void reset() {
+        sent.set(0);
+        received.set(0);
+        failures.set(0);
+        queueWait.reset();
+        for (final LatencyHistogram histogram : operations)
+            histogram.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "sent=" + getMessagesSent() + " received=" + getMessagesReceived()
+                + " failures=" + getVerificationFailures() + " queueWait={" + getQueueWait() + "}";
+    }
+}
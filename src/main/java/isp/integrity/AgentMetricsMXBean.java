@@ -0,0 +1,31 @@
+package isp.integrity;
+
+/**
+ * Management interface of {@link AgentMetrics}. Every getter returns the
+ * current value; histograms are returned as snapshots.
+ */
+public interface AgentMetricsMXBean {
+    long getMessagesSent();
+
+    long getMessagesReceived();
+
+    long getVerificationFailures();
+
+    /**
+     * @return time the agent was blocked sending to or receiving from its channels
+     */
+    LatencyHistogram.Snapshot getQueueWait();
+
+    LatencyHistogram.Snapshot getDigestTime();
+
+    LatencyHistogram.Snapshot getMacTime();
+
+    LatencyHistogram.Snapshot getSignTime();
+
+    LatencyHistogram.Snapshot getVerifyTime();
+
+    /**
+     * Clears all counters and histograms.
+     */
+    void reset();
+}
@@ -0,0 +1,157 @@
+package isp.integrity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs agents on an executor instead of starting each of them as its own
+ * platform thread.
+ * <p/>
+ * {@link Agent} and {@link MITMAgent} extend Thread, so they are Runnable:
+ * the runtime simply executes their run() method on one of its threads,
+ * and agents are written exactly as before. An agent that is run by the
+ * runtime must not be started with start() as well.
+ * <p/>
+ * With {@link #virtualThreads()} every agent gets its own virtual thread,
+ * which makes it possible to simulate many thousands of parties. Virtual
+ * threads require Java 21; they are looked up reflectively, so the project
+ * still builds for older runtimes. {@link #preferVirtualThreads()} falls back
+ * to platform threads on those.
+ */
+public class AgentRuntime {
+    private final static Logger LOG = Logger.getLogger(AgentRuntime.class.getCanonicalName());
+
+    private static final String VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+
+    /**
+     * @param executor executor that runs the agents; it needs a thread
+     *                 for every agent that is blocked at the same time
+     */
+    public AgentRuntime(final ExecutorService executor) {
+        this(executor, false);
+    }
+
+    private AgentRuntime(final ExecutorService executor, final boolean virtual) {
+        this.executor = executor;
+        this.virtual = virtual;
+    }
+
+    /**
+     * @return a runtime that runs every agent on a pooled platform thread
+     */
+    public static AgentRuntime platformThreads() {
+        return new AgentRuntime(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * @return a runtime that runs every agent on its own virtual thread
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static AgentRuntime virtualThreads() {
+        return virtualThreads(Executors.class, VIRTUAL_THREAD_EXECUTOR);
+    }
+
+    /**
+     * @return a runtime with virtual threads if the JVM has them, otherwise
+     * one with platform threads
+     */
+    public static AgentRuntime preferVirtualThreads() {
+        return preferVirtualThreads(Executors.class, VIRTUAL_THREAD_EXECUTOR);
+    }
+
+    /**
+     * @return whether {@link #virtualThreads()} is available on this JVM
+     */
+    public static boolean isVirtualThreadSupported() {
+        try {
+            Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a runtime with the executor returned by the static factory
+     * method of the given class.
+     */
+    static AgentRuntime virtualThreads(final Class<?> factory, final String method) {
+        try {
+            return new AgentRuntime((ExecutorService) factory.getMethod(method).invoke(null), true);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        }
+    }
+
+    static AgentRuntime preferVirtualThreads(final Class<?> factory, final String method) {
+        try {
+            return virtualThreads(factory, method);
+        } catch (UnsupportedOperationException e) {
+            LOG.info("No virtual threads on this JVM, running agents on platform threads");
+            return platformThreads();
+        }
+    }
+
+    /**
+     * @return whether the agents run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return virtual;
+    }
+
+    /**
+     * Starts the agent.
+     *
+     * @param agent an Agent, a MITMAgent or any other agent behavior
+     * @return a future that completes when the agent's run() returns
+     */
+    public Future<?> start(final Runnable agent) {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    agent.run();
+                } catch (RuntimeException e) {
+                    LOG.severe("Agent failed: " + e);
+                    throw e;
+                }
+            }
+        });
+    }
+
+    /**
+     * Starts all agents.
+     */
+    public List<Future<?>> startAll(final Runnable... agents) {
+        final List<Future<?>> futures = new ArrayList<>(agents.length);
+        for (final Runnable agent : agents)
+            futures.add(start(agent));
+        return futures;
+    }
+
+    /**
+     * Lets running agents finish and stops accepting new ones.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Interrupts all running agents.
+     */
+    public void shutdownNow() {
+        executor.shutdownNow();
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,232 @@
+package isp.integrity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base64 encoding and decoding of binary data with the standard alphabet
+ * and padding of RFC 4648.
+ * <p/>
+ * Like {@link HexCodec}, the encode and decode methods work on caller-supplied
+ * arrays and buffers and do not allocate; {@link #toBase64(byte[])} and
+ * {@link #fromBase64(CharSequence)} are allocating conveniences.
+ */
+public final class Base64Codec {
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+    private static final int PAD = '=';
+
+    static {
+        for (int i = 0; i < VALUES.length; i++)
+            VALUES[i] = -1;
+        for (int i = 0; i < ALPHABET.length; i++)
+            VALUES[ALPHABET[i]] = (byte) i;
+    }
+
+    private Base64Codec() {
+    }
+
+    public static int encodedLength(final int length) {
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * @return number of bytes represented by the last len characters of
+     * Base64 text ending at off + len, taking padding into account
+     */
+    public static int decodedLength(final CharSequence src, final int off, final int len) {
+        return decodedLength(len, len > 0 ? src.charAt(off + len - 1) : 0, len > 1 ? src.charAt(off + len - 2) : 0);
+    }
+
+    public static int decodedLength(final char[] src, final int off, final int len) {
+        return decodedLength(len, len > 0 ? src[off + len - 1] : 0, len > 1 ? src[off + len - 2] : 0);
+    }
+
+    public static int decodedLength(final byte[] src, final int off, final int len) {
+        return decodedLength(len, len > 0 ? src[off + len - 1] : 0, len > 1 ? src[off + len - 2] : 0);
+    }
+
+    private static int decodedLength(final int len, final int last, final int beforeLast) {
+        if (len % 4 != 0)
+            throw new IllegalArgumentException("Base64 text must have a length divisible by 4: " + len);
+        return len / 4 * 3 - (last == PAD ? beforeLast == PAD ? 2 : 1 : 0);
+    }
+
+    /**
+     * Encodes len bytes of src into dst as Base64 characters.
+     *
+     * @return number of characters written
+     */
+    public static int encode(final byte[] src, final int off, final int len, final char[] dst, final int dstOff) {
+        int p = dstOff;
+        for (int i = 0; i < len; i += 3) {
+            final int n = Math.min(3, len - i);
+            final int bits = group(src[off + i], n > 1 ? src[off + i + 1] : 0, n > 2 ? src[off + i + 2] : 0);
+            for (int j = 0; j < 4; j++)
+                dst[p++] = symbol(bits, j, n);
+        }
+        return p - dstOff;
+    }
+
+    /**
+     * Encodes len bytes of src into dst as ASCII Base64 characters.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        int p = dstOff;
+        for (int i = 0; i < len; i += 3) {
+            final int n = Math.min(3, len - i);
+            final int bits = group(src[off + i], n > 1 ? src[off + i + 1] : 0, n > 2 ? src[off + i + 2] : 0);
+            for (int j = 0; j < 4; j++)
+                dst[p++] = (byte) symbol(bits, j, n);
+        }
+        return p - dstOff;
+    }
+
+    /**
+     * Encodes the remaining bytes of src into dst as ASCII Base64 characters,
+     * advancing the positions of both buffers.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(final ByteBuffer src, final ByteBuffer dst) {
+        final int len = src.remaining();
+        for (int i = 0; i < len; i += 3) {
+            final int n = Math.min(3, len - i);
+            final int bits = group(src.get(), n > 1 ? src.get() : 0, n > 2 ? src.get() : 0);
+            for (int j = 0; j < 4; j++)
+                dst.put((byte) symbol(bits, j, n));
+        }
+        return encodedLength(len);
+    }
+
+    /**
+     * Decodes len Base64 characters of src into dst.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(final CharSequence src, final int off, final int len, final byte[] dst,
+                             final int dstOff) {
+        final int n = decodedLength(src, off, len);
+        for (int i = 0, p = dstOff; i < len; i += 4) {
+            final int quantum = quantum(src.charAt(off + i), src.charAt(off + i + 1), src.charAt(off + i + 2),
+                    src.charAt(off + i + 3), i + 4 == len);
+            p = write(quantum, dst, p);
+        }
+        return n;
+    }
+
+    /**
+     * Decodes len Base64 characters of src into dst.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(final char[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        final int n = decodedLength(src, off, len);
+        for (int i = 0, p = dstOff; i < len; i += 4) {
+            final int quantum = quantum(src[off + i], src[off + i + 1], src[off + i + 2], src[off + i + 3],
+                    i + 4 == len);
+            p = write(quantum, dst, p);
+        }
+        return n;
+    }
+
+    /**
+     * Decodes len ASCII Base64 characters of src into dst.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        final int n = decodedLength(src, off, len);
+        for (int i = 0, p = dstOff; i < len; i += 4) {
+            final int quantum = quantum(src[off + i], src[off + i + 1], src[off + i + 2], src[off + i + 3],
+                    i + 4 == len);
+            p = write(quantum, dst, p);
+        }
+        return n;
+    }
+
+    /**
+     * Decodes the remaining ASCII Base64 characters of src into dst,
+     * advancing the positions of both buffers.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static int decode(final ByteBuffer src, final ByteBuffer dst) {
+        final int len = src.remaining();
+        if (len % 4 != 0)
+            throw new IllegalArgumentException("Base64 text must have a length divisible by 4: " + len);
+
+        int written = 0;
+        for (int i = 0; i < len; i += 4) {
+            final int quantum = quantum(src.get(), src.get(), src.get(), src.get(), i + 4 == len);
+            final int n = quantum >>> 24;
+            for (int j = 0; j < n; j++)
+                dst.put((byte) (quantum >> (16 - 8 * j)));
+            written += n;
+        }
+        return written;
+    }
+
+    /**
+     * @return the data as Base64 text
+     */
+    public static String toBase64(final byte[] data) {
+        final char[] chars = new char[encodedLength(data.length)];
+        encode(data, 0, data.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * @return the bytes represented by the Base64 text
+     * @throws IllegalArgumentException if the input is not valid Base64
+     */
+    public static byte[] fromBase64(final CharSequence text) {
+        final byte[] data = new byte[decodedLength(text, 0, text.length())];
+        decode(text, 0, text.length(), data, 0);
+        return data;
+    }
+
+    private static int group(final int b0, final int b1, final int b2) {
+        return (b0 & 0xFF) << 16 | (b1 & 0xFF) << 8 | (b2 & 0xFF);
+    }
+
+    /**
+     * @return j-th character encoding a group of n input bytes
+     */
+    private static char symbol(final int bits, final int j, final int n) {
+        return j > n ? (char) PAD : ALPHABET[(bits >> (18 - 6 * j)) & 0x3F];
+    }
+
+    /**
+     * Decodes four characters into a 24-bit group. The number of decoded bytes
+     * is returned in the top byte; padding is allowed in the last quantum only.
+     */
+    private static int quantum(final int c0, final int c1, final int c2, final int c3, final boolean last) {
+        final int n = c3 != PAD ? 3 : c2 != PAD ? 2 : 1;
+        if (n < 3 && !last)
+            throw new IllegalArgumentException("Base64 padding before the end of input");
+
+        final int bits = value(c0) << 18 | value(c1) << 12 | (n > 1 ? value(c2) << 6 : 0) | (n > 2 ? value(c3) : 0);
+        return n << 24 | bits;
+    }
+
+    private static int write(final int quantum, final byte[] dst, int p) {
+        final int n = quantum >>> 24;
+        for (int j = 0; j < n; j++)
+            dst[p++] = (byte) (quantum >> (16 - 8 * j));
+        return p;
+    }
+
+    private static int value(final int c) {
+        final int v = c >= 0 && c < VALUES.length ? VALUES[c] : -1;
+        if (v < 0)
+            throw new IllegalArgumentException("Not a Base64 character: '" + (char) (c & 0xFFFF) + "'");
+        return v;
+    }
+}
@@ -0,0 +1,199 @@
+package isp.integrity;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A verification stage for a receiving agent: drains signed frames from the
+ * incoming channel in batches and verifies each batch on a pool of workers.
+ * <p/>
+ * The signature of a frame covers its sequence number and its payload, as
+ * in AgentCommunicationSignature; the frames themselves are not checked for
+ * replays, which is left to the listener.
+ * <p/>
+ * A batch is split into one slice per worker. Every worker verifies its slice
+ * with a Signature from the {@link CryptoEngineCache}, so the engines are reused
+ * across batches. Results are delivered to the {@link Listener} on the thread
+ * that calls {@link #processBatch()}, in the order in which the frames arrived.
+ * <p/>
+ * With a {@link VerificationCache}, copies of frames whose signature has
+ * already been verified are accepted without a public-key operation.
+ */
+public class BatchSignatureVerifier implements Runnable {
+
+    /**
+     * Receives the outcome of every verified frame.
+     */
+    public interface Listener {
+        void verified(Frame frame);
+
+        void rejected(Frame frame);
+    }
+
+    private final FrameReceiver incoming;
+    private final String algorithm;
+    private final PublicKey key;
+    private final ExecutorService workers;
+    private final int workerCount, maxBatchSize;
+    private final Listener listener;
+    private final VerificationCache cache;
+
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long startNanos;
+
+    /**
+     * @param incoming     channel with frames whose tag is a signature of sequence number and payload
+     * @param algorithm    signature algorithm, e.g. SHA1withRSA
+     * @param key          public key of the signee
+     * @param workers      pool that verifies the slices of a batch
+     * @param workerCount  number of slices a batch is split into
+     * @param maxBatchSize maximal number of frames drained into one batch
+     * @param listener     receives the results in arrival order
+     * @param cache        cache of verified signatures or null
+     */
+    public BatchSignatureVerifier(final FrameReceiver incoming, final String algorithm, final PublicKey key,
+                                  final ExecutorService workers, final int workerCount, final int maxBatchSize,
+                                  final Listener listener, final VerificationCache cache) {
+        if (workerCount < 1 || maxBatchSize < 1)
+            throw new IllegalArgumentException("workerCount and maxBatchSize must be positive");
+
+        this.incoming = incoming;
+        this.algorithm = algorithm;
+        this.key = key;
+        this.workers = workers;
+        this.workerCount = workerCount;
+        this.maxBatchSize = maxBatchSize;
+        this.listener = listener;
+        this.cache = cache;
+    }
+
+    public BatchSignatureVerifier(final FrameReceiver incoming, final String algorithm, final PublicKey key,
+                                  final ExecutorService workers, final int workerCount, final int maxBatchSize,
+                                  final Listener listener) {
+        this(incoming, algorithm, key, workers, workerCount, maxBatchSize, listener, null);
+    }
+
+    /**
+     * Processes batches until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted())
+                processBatch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for at least one frame, drains the frames that are already available
+     * up to the batch size, verifies them and reports the results.
+     *
+     * @return number of processed frames
+     */
+    public int processBatch() throws InterruptedException {
+        final List<Frame> batch = new ArrayList<>(maxBatchSize);
+        batch.add(incoming.take());
+        if (startNanos == 0)
+            startNanos = System.nanoTime();
+
+        Frame frame;
+        while (batch.size() < maxBatchSize && (frame = incoming.poll(0, TimeUnit.NANOSECONDS)) != null)
+            batch.add(frame);
+
+        final boolean[] results = verify(batch);
+        for (int i = 0; i < results.length; i++) {
+            if (results[i]) {
+                verified.incrementAndGet();
+                listener.verified(batch.get(i));
+            } else {
+                rejected.incrementAndGet();
+                listener.rejected(batch.get(i));
+            }
+        }
+        return results.length;
+    }
+
+    private boolean[] verify(final List<Frame> batch) throws InterruptedException {
+        final boolean[] results = new boolean[batch.size()];
+        final int slices = Math.min(workerCount, batch.size());
+        final List<Future<?>> futures = new ArrayList<>(slices);
+
+        for (int i = 0; i < slices; i++) {
+            final int from = i * batch.size() / slices;
+            final int to = (i + 1) * batch.size() / slices;
+            futures.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws GeneralSecurityException {
+                    final Signature signature = CryptoEngineCache.getDefault().verifier(algorithm, key);
+                    for (int j = from; j < to; j++)
+                        results[j] = verify(signature, batch.get(j));
+                    return null;
+                }
+            }));
+        }
+
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Cannot verify " + algorithm + " signatures", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private boolean verify(final Signature signature, final Frame frame) {
+        try {
+            final byte[] sequence = Frame.sequenceBytes(frame.getSequence());
+            if (cache != null)
+                return cache.verify(signature, key, frame.tagArray(), sequence, frame.payloadArray());
+
+            signature.update(sequence);
+            signature.update(frame.payloadArray());
+            return signature.verify(frame.tagArray());
+        } catch (GeneralSecurityException e) {
+            // a malformed signature; verify(...) has reset the engine
+            return false;
+        }
+    }
+
+    public long getVerified() {
+        return verified.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return verified frames per second since the first batch
+     */
+    public double getVerifiedThroughput() {
+        return perSecond(verified.get());
+    }
+
+    /**
+     * @return rejected frames per second since the first batch
+     */
+    public double getRejectedThroughput() {
+        return perSecond(rejected.get());
+    }
+
+    private double perSecond(final long count) {
+        final long start = startNanos;
+        final long elapsed = System.nanoTime() - start;
+        return start == 0 || elapsed == 0 ? 0 : count * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,236 @@
+package isp.integrity;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A channel from one sender to many subscribers: every frame put into the
+ * channel is delivered to all current subscribers.
+ * <p/>
+ * Frames are immutable, so the sender digests, MACs or signs a message once
+ * and all subscribers share the same frame; sending costs one ring insertion
+ * per subscriber and no copies. Every subscriber has its own bounded
+ * {@link SpscRingChannel}, so a subscriber that falls behind does not delay
+ * the others unless its {@link SlowSubscriberPolicy} says so.
+ * <p/>
+ * The channel is a {@link FrameSender} for a single sending thread;
+ * subscribers may join and leave at any time. Each {@link Subscriber} is a
+ * {@link FrameReceiver} for a single receiving thread. Once the channel is
+ * closed, subscribers receive the frames already in their ring and are then
+ * told that the broadcast ended.
+ */
+public class BroadcastChannel implements FrameSender {
+
+    /**
+     * What the sender does when a subscriber's ring is full.
+     */
+    public enum SlowSubscriberPolicy {
+        /**
+         * Wait until the subscriber makes room, leaves or the channel is
+         * closed; a stalled subscriber stalls the whole broadcast.
+         */
+        BLOCK,
+        /**
+         * Skip the frame for this subscriber and count it as dropped.
+         */
+        DROP,
+        /**
+         * Remove the subscriber; it receives the frames already in its ring
+         * and is then told that it was disconnected.
+         */
+        DISCONNECT
+    }
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final AtomicLong sent = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Adds a subscriber that receives the frames sent from now on.
+     *
+     * @param capacity     number of frames the subscriber may fall behind
+     * @param policy       what to do when it falls further behind
+     * @param waitStrategy how the subscriber, and a blocked sender, wait
+     */
+    public Subscriber subscribe(final int capacity, final SlowSubscriberPolicy policy,
+                                final WaitStrategy waitStrategy) {
+        final Subscriber subscriber = new Subscriber(this, capacity, policy, waitStrategy);
+        subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public Subscriber subscribe(final int capacity, final SlowSubscriberPolicy policy) {
+        return subscribe(capacity, policy, WaitStrategy.PARK);
+    }
+
+    /**
+     * Delivers the frame to every subscriber, applying the policy of those
+     * whose ring is full.
+     *
+     * @throws InterruptedException  if interrupted while waiting for a
+     *                               subscriber with the BLOCK policy
+     * @throws IllegalStateException if the channel is closed, also while
+     *                               waiting for a subscriber
+     */
+    @Override
+    public void put(final Frame frame) throws InterruptedException {
+        if (frame == null)
+            throw new NullPointerException();
+        ensureOpen();
+
+        for (final Subscriber subscriber : subscribers) {
+            if (subscriber.ring.offer(frame))
+                continue;
+
+            switch (subscriber.policy) {
+                case BLOCK:
+                    await(subscriber, frame);
+                    break;
+                case DROP:
+                    subscriber.dropped.incrementAndGet();
+                    break;
+                case DISCONNECT:
+                    subscriber.disconnected = true;
+                    subscribers.remove(subscriber);
+                    break;
+            }
+        }
+        sent.incrementAndGet();
+    }
+
+    /**
+     * Waits for room in the ring of a BLOCK subscriber, but not for one that
+     * has left in the meantime.
+     */
+    private void await(final Subscriber subscriber, final Frame frame) throws InterruptedException {
+        while (!subscriber.ring.offer(frame)) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            ensureOpen();
+            if (!subscriber.subscribed)
+                return;
+            subscriber.waitStrategy.idle();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("Broadcast closed");
+    }
+
+    /**
+     * Ends the broadcast: no more frames are sent, and a sender waiting for a
+     * slow subscriber gives up.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return number of frames broadcast
+     */
+    public long getFramesSent() {
+        return sent.get();
+    }
+
+    /**
+     * The receiving end of one subscriber.
+     */
+    public static final class Subscriber implements FrameReceiver {
+        private final BroadcastChannel channel;
+        private final Ring ring;
+        private final SlowSubscriberPolicy policy;
+        private final WaitStrategy waitStrategy;
+        private final AtomicLong dropped = new AtomicLong();
+
+        private volatile boolean subscribed = true, disconnected;
+
+        private Subscriber(final BroadcastChannel channel, final int capacity, final SlowSubscriberPolicy policy,
+                           final WaitStrategy waitStrategy) {
+            this.channel = channel;
+            this.ring = new Ring(capacity, waitStrategy);
+            this.policy = policy;
+            this.waitStrategy = waitStrategy;
+        }
+
+        @Override
+        public Frame take() throws InterruptedException {
+            return ring.take();
+        }
+
+        @Override
+        public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return ring.poll(timeout, unit);
+        }
+
+        /**
+         * Receives the next frame if there is one. The receiving methods throw an
+         * IllegalStateException once a disconnected subscriber, or any subscriber
+         * of a closed channel, has received all frames sent to it before.
+         *
+         * @return the frame or null if none is waiting
+         */
+        public Frame poll() {
+            return ring.poll();
+        }
+
+        /**
+         * Leaves the broadcast; frames already in the ring can still be received.
+         */
+        public void unsubscribe() {
+            subscribed = false;
+            channel.subscribers.remove(this);
+        }
+
+        public SlowSubscriberPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * @return number of frames skipped under the DROP policy
+         */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        public boolean isDisconnected() {
+            return disconnected;
+        }
+
+        /**
+         * The subscriber's ring, which reports the end of the broadcast once
+         * it is empty, so the blocking receive methods of RingChannel apply.
+         */
+        private final class Ring extends SpscRingChannel {
+
+            Ring(final int capacity, final WaitStrategy waitStrategy) {
+                super(capacity, waitStrategy);
+            }
+
+            @Override
+            public Frame poll() {
+                final Frame frame = super.poll();
+                if (frame != null || !disconnected && !channel.closed)
+                    return frame;
+
+                // the sender filled the ring before it set the flag
+                final Frame last = super.poll();
+                if (last == null)
+                    throw new IllegalStateException(disconnected
+                            ? "Disconnected from the broadcast for being too slow" : "Broadcast closed");
+                return last;
+            }
+        }
+    }
+}
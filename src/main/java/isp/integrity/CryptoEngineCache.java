@@ -0,0 +1,278 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of initialized {@link Mac}, {@link MessageDigest} and {@link Signature}
+ * objects keyed by (algorithm, provider, key).
+ * <p/>
+ * Looking up a provider and initializing a key often costs more than
+ * processing a short message. The cache keeps the engines of each thread
+ * separately, since they are not thread-safe, and evicts entries that were
+ * not used for a while or that exceed the per-thread capacity. Idle entries
+ * are evicted during the lookups of the thread that owns them; the engines
+ * of a thread that stops using the cache are released only when the thread
+ * ends or calls {@link #clear()}.
+ * <p/>
+ * An engine returned by the cache is ready for a new operation, even if the
+ * previous caller abandoned one halfway: Macs and MessageDigests are reset and
+ * Signatures initialized again with their key. It must be used by the calling
+ * thread only.
+ */
+public class CryptoEngineCache {
+    private static final CryptoEngineCache DEFAULT = new CryptoEngineCache(64, 10, TimeUnit.MINUTES);
+
+    private enum Kind {
+        MAC, DIGEST, SIGN, VERIFY
+    }
+
+    private final int maxEntriesPerThread;
+    private final long idleTimeoutNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final ThreadLocal<Map<EngineKey, Entry>> engines = new ThreadLocal<Map<EngineKey, Entry>>() {
+        @Override
+        protected Map<EngineKey, Entry> initialValue() {
+            return new LinkedHashMap<EngineKey, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<EngineKey, Entry> eldest) {
+                    if (size() > maxEntriesPerThread) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+    };
+
+    /**
+     * @param maxEntriesPerThread maximal number of engines kept by a single thread
+     * @param idleTimeout         time after which an unused engine is evicted
+     * @param unit                unit of the idle timeout
+     */
+    public CryptoEngineCache(final int maxEntriesPerThread, final long idleTimeout, final TimeUnit unit) {
+        if (maxEntriesPerThread < 1)
+            throw new IllegalArgumentException("maxEntriesPerThread must be positive");
+
+        this.maxEntriesPerThread = maxEntriesPerThread;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    /**
+     * @return the cache shared by the agents
+     */
+    public static CryptoEngineCache getDefault() {
+        return DEFAULT;
+    }
+
+    public Mac mac(final String algorithm, final Key key) throws GeneralSecurityException {
+        return mac(algorithm, null, key);
+    }
+
+    /**
+     * Returns a Mac initialized with the given key.
+     *
+     * @param algorithm MAC algorithm, e.g. HmacMD5
+     * @param provider  provider name or null for the default provider
+     * @param key       MAC key
+     */
+    public Mac mac(final String algorithm, final String provider, final Key key) throws GeneralSecurityException {
+        final EngineKey id = new EngineKey(Kind.MAC, algorithm, provider, key);
+        Mac mac = (Mac) lookup(id);
+        if (mac == null) {
+            mac = provider == null ? Mac.getInstance(algorithm) : Mac.getInstance(algorithm, provider);
+            mac.init(key);
+            store(id, mac);
+        } else {
+            mac.reset();
+        }
+        return mac;
+    }
+
+    public MessageDigest digest(final String algorithm) throws GeneralSecurityException {
+        return digest(algorithm, null);
+    }
+
+    /**
+     * Returns a reset MessageDigest.
+     *
+     * @param algorithm digest algorithm, e.g. MD5
+     * @param provider  provider name or null for the default provider
+     */
+    public MessageDigest digest(final String algorithm, final String provider) throws GeneralSecurityException {
+        final EngineKey id = new EngineKey(Kind.DIGEST, algorithm, provider, null);
+        MessageDigest digest = (MessageDigest) lookup(id);
+        if (digest == null) {
+            digest = provider == null ? MessageDigest.getInstance(algorithm)
+                    : MessageDigest.getInstance(algorithm, provider);
+            store(id, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    public Signature signer(final String algorithm, final PrivateKey key) throws GeneralSecurityException {
+        return signer(algorithm, null, key);
+    }
+
+    /**
+     * Returns a Signature initialized for signing with the given private key.
+     *
+     * @param algorithm signature algorithm, e.g. SHA1withRSA
+     * @param provider  provider name or null for the default provider
+     * @param key       signing key
+     */
+    public Signature signer(final String algorithm, final String provider, final PrivateKey key)
+            throws GeneralSecurityException {
+        final EngineKey id = new EngineKey(Kind.SIGN, algorithm, provider, key);
+        Signature signature = (Signature) lookup(id);
+        if (signature == null) {
+            signature = newSignature(algorithm, provider);
+            store(id, signature);
+        }
+        signature.initSign(key);
+        return signature;
+    }
+
+    public Signature verifier(final String algorithm, final PublicKey key) throws GeneralSecurityException {
+        return verifier(algorithm, null, key);
+    }
+
+    /**
+     * Returns a Signature initialized for verification with the given public key.
+     *
+     * @param algorithm signature algorithm, e.g. SHA1withRSA
+     * @param provider  provider name or null for the default provider
+     * @param key       verification key
+     */
+    public Signature verifier(final String algorithm, final String provider, final PublicKey key)
+            throws GeneralSecurityException {
+        final EngineKey id = new EngineKey(Kind.VERIFY, algorithm, provider, key);
+        Signature signature = (Signature) lookup(id);
+        if (signature == null) {
+            signature = newSignature(algorithm, provider);
+            store(id, signature);
+        }
+        signature.initVerify(key);
+        return signature;
+    }
+
+    /**
+     * Drops all engines cached by the calling thread.
+     */
+    public void clear() {
+        engines.remove();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    private static Signature newSignature(final String algorithm, final String provider)
+            throws GeneralSecurityException {
+        return provider == null ? Signature.getInstance(algorithm) : Signature.getInstance(algorithm, provider);
+    }
+
+    private Object lookup(final EngineKey id) {
+        final Map<EngineKey, Entry> map = engines.get();
+        final long now = System.nanoTime();
+        expire(map, now);
+
+        final Entry entry = map.get(id);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        entry.lastUsed = now;
+        return entry.engine;
+    }
+
+    private void store(final EngineKey id, final Object engine) {
+        engines.get().put(id, new Entry(engine, System.nanoTime()));
+    }
+
+    /**
+     * Entries are kept in access order, so the idle ones are at the head.
+     */
+    private void expire(final Map<EngineKey, Entry> map, final long now) {
+        final Iterator<Entry> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().lastUsed < idleTimeoutNanos)
+                return;
+
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private static final class Entry {
+        final Object engine;
+        long lastUsed;
+
+        Entry(final Object engine, final long lastUsed) {
+            this.engine = engine;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private static final class EngineKey {
+        final Kind kind;
+        final String algorithm, provider;
+        final Key key;
+
+        EngineKey(final Kind kind, final String algorithm, final String provider, final Key key) {
+            this.kind = kind;
+            this.algorithm = algorithm;
+            this.provider = provider;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof EngineKey))
+                return false;
+
+            final EngineKey other = (EngineKey) o;
+            return kind == other.kind && algorithm.equals(other.algorithm)
+                    && (provider == null ? other.provider == null : provider.equals(other.provider))
+                    && (key == null ? other.key == null : key.equals(other.key));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = kind.hashCode();
+            result = 31 * result + algorithm.hashCode();
+            result = 31 * result + (provider == null ? 0 : provider.hashCode());
+            result = 31 * result + (key == null ? 0 : key.hashCode());
+            return result;
+        }
+    }
+}
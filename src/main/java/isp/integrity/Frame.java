@@ -0,0 +1,118 @@
+package isp.integrity;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An immutable unit of communication between agents: the payload bytes
+ * and their authentication tag (message digest, HMAC or signature)
+ * travel together as a single object over a {@link FrameChannel}.
+ * <p/>
+ * A frame that is part of a stream also carries its sequence number;
+ * the number is not authenticated by itself, protocols that rely on it
+ * must cover it with the tag.
+ * <p/>
+ * A frame takes ownership of the arrays it is created with; callers
+ * must not modify them afterwards. Public accessors return copies,
+ * package-private ones expose the backing arrays so that the crypto
+ * code in this package can process them without copying.
+ */
+public final class Frame {
+    private static final byte[] EMPTY = new byte[0];
+
+    private final long sequence;
+    private final byte[] payload, tag;
+
+    /**
+     * Creates a frame of a stream.
+     *
+     * @param sequence position of the frame in its stream
+     * @param payload  message bytes
+     * @param tag      authentication tag of the payload
+     */
+    public Frame(final long sequence, final byte[] payload, final byte[] tag) {
+        if (payload == null || tag == null)
+            throw new NullPointerException("payload and tag must not be null");
+
+        this.sequence = sequence;
+        this.payload = payload;
+        this.tag = tag;
+    }
+
+    /**
+     * Creates a frame that carries the payload and its tag.
+     *
+     * @param payload message bytes
+     * @param tag     authentication tag of the payload
+     */
+    public Frame(final byte[] payload, final byte[] tag) {
+        this(0, payload, tag);
+    }
+
+    /**
+     * Creates a frame without an authentication tag.
+     *
+     * @param payload message bytes
+     */
+    public Frame(final byte[] payload) {
+        this(payload, EMPTY);
+    }
+
+    /**
+     * @return position of the frame in its stream; 0 for a single frame
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the sequence number as 8 bytes, big-endian, the form in which
+     * authenticators cover it
+     */
+    public static byte[] sequenceBytes(final long sequence) {
+        final byte[] bytes = new byte[8];
+        encodeSequence(sequence, bytes, 0);
+        return bytes;
+    }
+
+    static void encodeSequence(final long sequence, final byte[] out, final int offset) {
+        for (int i = 0; i < 8; i++)
+            out[offset + i] = (byte) (sequence >>> (56 - 8 * i));
+    }
+
+    public int payloadLength() {
+        return payload.length;
+    }
+
+    public int tagLength() {
+        return tag.length;
+    }
+
+    /**
+     * @return a copy of the payload
+     */
+    public byte[] getPayload() {
+        return payload.clone();
+    }
+
+    /**
+     * @return a copy of the tag
+     */
+    public byte[] getTag() {
+        return tag.clone();
+    }
+
+    /**
+     * @return the payload decoded as an UTF-8 string
+     */
+    public String getText() {
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    byte[] payloadArray() {
+        return payload;
+    }
+
+    byte[] tagArray() {
+        return tag;
+    }
+}
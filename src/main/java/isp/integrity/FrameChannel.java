@@ -0,0 +1,13 @@
+package isp.integrity;
+
+/**
+ * A one-way communication channel that transfers {@link Frame}s
+ * between agents: what is put in at one end is taken out at the other.
+ * <p/>
+ * Implementations must be safe for use by one sending and one receiving
+ * thread at the same time. Channels that only have one of the two ends,
+ * such as a {@link BroadcastChannel} and its subscribers, implement just
+ * {@link FrameSender} or {@link FrameReceiver}.
+ */
+public interface FrameChannel extends FrameSender, FrameReceiver {
+}
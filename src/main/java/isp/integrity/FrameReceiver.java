@@ -0,0 +1,27 @@
+package isp.integrity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The receiving end of a channel that transfers {@link Frame}s between agents.
+ */
+public interface FrameReceiver {
+
+    /**
+     * Receives the next frame, waiting if necessary until one arrives.
+     *
+     * @return the received frame
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Frame take() throws InterruptedException;
+
+    /**
+     * Receives the next frame, waiting up to the given time for one to arrive.
+     *
+     * @param timeout how long to wait, zero to return immediately
+     * @param unit    unit of the timeout
+     * @return the received frame or null if none arrived in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Frame poll(long timeout, TimeUnit unit) throws InterruptedException;
+}
@@ -0,0 +1,15 @@
+package isp.integrity;
+
+/**
+ * The sending end of a channel that transfers {@link Frame}s between agents.
+ */
+public interface FrameSender {
+
+    /**
+     * Sends the frame, waiting if necessary for space to become available.
+     *
+     * @param frame frame to send
+     * @throws InterruptedException if interrupted while waiting
+     */
+    void put(Frame frame) throws InterruptedException;
+}
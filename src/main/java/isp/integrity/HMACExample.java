@@ -2,7 +2,6 @@ package isp.integrity;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.Mac;
-import javax.xml.bind.DatatypeConverter;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.Key;
@@ -52,7 +51,7 @@ public class HMACExample {
          * STEP 4.
          * Print out HMAC.
          */
-        final String messageHmacAsString = DatatypeConverter.printHexBinary(messageHmac);
+        final String messageHmacAsString = HexCodec.toHex(messageHmac);
         System.out.println("HMAC: " + messageHmacAsString);
     }
 
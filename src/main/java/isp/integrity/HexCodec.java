@@ -0,0 +1,163 @@
+package isp.integrity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hexadecimal encoding and decoding of binary data.
+ * <p/>
+ * Encoded output uses upper-case digits, as DatatypeConverter.printHexBinary
+ * did; both cases are accepted when decoding. The encode and decode methods
+ * work on caller-supplied arrays and buffers and do not allocate. Only
+ * {@link #toHex(byte[])} and {@link #fromHex(CharSequence)} create new objects,
+ * for convenience where a String is needed anyway, e.g. in log messages.
+ */
+public final class HexCodec {
+    private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++)
+            VALUES[i] = -1;
+        for (int i = 0; i < 16; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private HexCodec() {
+    }
+
+    public static int encodedLength(final int length) {
+        return 2 * length;
+    }
+
+    public static int decodedLength(final int length) {
+        if ((length & 1) != 0)
+            throw new IllegalArgumentException("Hex string must have an even length: " + length);
+        return length / 2;
+    }
+
+    /**
+     * Encodes len bytes of src into dst as hex characters.
+     *
+     * @return number of characters written
+     */
+    public static int encode(final byte[] src, final int off, final int len, final char[] dst, final int dstOff) {
+        for (int i = 0, p = dstOff; i < len; i++) {
+            final int b = src[off + i];
+            dst[p++] = DIGITS[(b >> 4) & 0x0F];
+            dst[p++] = DIGITS[b & 0x0F];
+        }
+        return encodedLength(len);
+    }
+
+    /**
+     * Encodes len bytes of src into dst as ASCII hex digits.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        for (int i = 0, p = dstOff; i < len; i++) {
+            final int b = src[off + i];
+            dst[p++] = (byte) DIGITS[(b >> 4) & 0x0F];
+            dst[p++] = (byte) DIGITS[b & 0x0F];
+        }
+        return encodedLength(len);
+    }
+
+    /**
+     * Encodes the remaining bytes of src into dst as ASCII hex digits,
+     * advancing the positions of both buffers.
+     *
+     * @return number of bytes written
+     */
+    public static int encode(final ByteBuffer src, final ByteBuffer dst) {
+        final int len = src.remaining();
+        for (int i = 0; i < len; i++) {
+            final int b = src.get();
+            dst.put((byte) DIGITS[(b >> 4) & 0x0F]);
+            dst.put((byte) DIGITS[b & 0x0F]);
+        }
+        return encodedLength(len);
+    }
+
+    /**
+     * Decodes len hex characters of src into dst.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static int decode(final CharSequence src, final int off, final int len, final byte[] dst,
+                             final int dstOff) {
+        final int n = decodedLength(len);
+        for (int i = 0, p = off; i < n; i++, p += 2)
+            dst[dstOff + i] = (byte) (value(src.charAt(p)) << 4 | value(src.charAt(p + 1)));
+        return n;
+    }
+
+    /**
+     * Decodes len hex characters of src into dst.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static int decode(final char[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        final int n = decodedLength(len);
+        for (int i = 0, p = off; i < n; i++, p += 2)
+            dst[dstOff + i] = (byte) (value(src[p]) << 4 | value(src[p + 1]));
+        return n;
+    }
+
+    /**
+     * Decodes len ASCII hex digits of src into dst.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static int decode(final byte[] src, final int off, final int len, final byte[] dst, final int dstOff) {
+        final int n = decodedLength(len);
+        for (int i = 0, p = off; i < n; i++, p += 2)
+            dst[dstOff + i] = (byte) (value(src[p]) << 4 | value(src[p + 1]));
+        return n;
+    }
+
+    /**
+     * Decodes the remaining ASCII hex digits of src into dst,
+     * advancing the positions of both buffers.
+     *
+     * @return number of bytes written
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static int decode(final ByteBuffer src, final ByteBuffer dst) {
+        final int n = decodedLength(src.remaining());
+        for (int i = 0; i < n; i++)
+            dst.put((byte) (value(src.get()) << 4 | value(src.get())));
+        return n;
+    }
+
+    /**
+     * @return the data as a string of upper-case hex digits
+     */
+    public static String toHex(final byte[] data) {
+        final char[] chars = new char[encodedLength(data.length)];
+        encode(data, 0, data.length, chars, 0);
+        return new String(chars);
+    }
+
+    /**
+     * @return the bytes represented by the hex string
+     * @throws IllegalArgumentException if the input is not valid hex
+     */
+    public static byte[] fromHex(final CharSequence hex) {
+        final byte[] data = new byte[decodedLength(hex.length())];
+        decode(hex, 0, hex.length(), data, 0);
+        return data;
+    }
+
+    private static int value(final int c) {
+        final int v = c >= 0 && c < VALUES.length ? VALUES[c] : -1;
+        if (v < 0)
+            throw new IllegalArgumentException("Not a hex digit: '" + (char) (c & 0xFFFF) + "'");
+        return v;
+    }
+}
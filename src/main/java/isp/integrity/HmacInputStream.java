@@ -0,0 +1,126 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Receives a stream of HMAC-protected chunks sent by an {@link HmacOutputStream}.
+ * <p/>
+ * Every chunk is verified as soon as it arrives and only then its bytes are
+ * released to the reader, so at most one chunk is held in memory. A chunk
+ * that arrives out of order or fails verification ends the stream with an
+ * IOException; bytes of earlier chunks have already been verified. Chunk 0
+ * carries the stream ID and is not part of the bytes read.
+ * <p/>
+ * The stream uses the Mac exclusively and is not thread-safe.
+ */
+public class HmacInputStream extends InputStream {
+    private final FrameReceiver channel;
+    private final Mac mac;
+    private final byte[] expected;
+    private final byte[] sequenceBytes = new byte[8];
+
+    private byte[] chunk = new byte[0];
+    private int position;
+    private long sequence;
+    private byte[] previousTag = new byte[0];
+    private byte[] streamId;
+    private boolean end;
+
+    /**
+     * @param channel channel with the chunks
+     * @param mac     Mac initialized with the shared key
+     */
+    public HmacInputStream(final FrameReceiver channel, final Mac mac) {
+        this.channel = channel;
+        this.mac = mac;
+        this.expected = new byte[mac.getMacLength()];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill())
+            return -1;
+        return chunk[position++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+
+        final int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * @return number of verified bytes that can be read without blocking
+     */
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    /**
+     * @return number of verified chunks, including the stream ID and the end-of-stream chunk
+     */
+    public long getChunks() {
+        return sequence;
+    }
+
+    /**
+     * @return ID of the stream, or null before anything was read
+     */
+    public byte[] getStreamId() {
+        return streamId == null ? null : streamId.clone();
+    }
+
+    /**
+     * Receives and verifies chunks until there are bytes to read.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        while (position == chunk.length) {
+            if (end)
+                return false;
+
+            final Frame frame;
+            try {
+                frame = channel.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while receiving chunk " + sequence);
+            }
+
+            if (frame.getSequence() != sequence)
+                throw new IOException("Expected chunk " + sequence + ", received " + frame.getSequence());
+
+            HmacOutputStream.tag(mac, previousTag, sequence, sequenceBytes, frame.payloadArray(), expected);
+            if (frame.tagLength() != expected.length
+                    || !TagVerifier.isEqual(expected, 0, frame.tagArray(), 0, expected.length))
+                throw new IOException("Chunk " + sequence + " failed verification");
+
+            previousTag = frame.tagArray();
+            if (sequence++ == 0) {
+                if (frame.payloadLength() != HmacOutputStream.STREAM_ID_LENGTH)
+                    throw new IOException("Chunk 0 is not a stream ID");
+                streamId = frame.payloadArray();
+                continue;
+            }
+
+            chunk = frame.payloadArray();
+            position = 0;
+            end = chunk.length == 0;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,176 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+
+/**
+ * Sends a stream of bytes over a {@link FrameSender} as a sequence of
+ * HMAC-protected chunks, so that a message of any size can be sent and
+ * verified with memory for a single chunk.
+ * <p/>
+ * Chunk i is sent in a frame with sequence number i and the tag
+ * <pre>
+ *   tag(i) = HMAC(tag(i - 1) || i || chunk(i)),   tag(-1) = empty
+ * </pre>
+ * where i is encoded as 8 bytes, big-endian. Chunk 0 is a random stream ID,
+ * so tag(0) and with it every later tag differs between streams, even
+ * between streams with the same key and content. Chaining the tags binds
+ * every chunk to all chunks before it, so chunks cannot be reordered,
+ * dropped or spliced in from another stream. Data chunks are never empty;
+ * closing the stream sends an empty chunk that marks the end, so a truncated
+ * stream is detected as well. {@link HmacInputStream} is the receiving side.
+ * <p/>
+ * A complete stream can still be replayed; a receiver that must reject that
+ * has to remember the stream IDs it has seen.
+ * <p/>
+ * The stream uses the Mac exclusively and is not thread-safe.
+ */
+public class HmacOutputStream extends OutputStream {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    static final int STREAM_ID_LENGTH = 16;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final FrameSender channel;
+    private final Mac mac;
+    private final byte[] buffer;
+    private final byte[] streamId = new byte[STREAM_ID_LENGTH];
+    private final byte[] sequenceBytes = new byte[8];
+
+    private int count;
+    private long sequence;
+    private byte[] previousTag = new byte[0];
+    private boolean closed;
+
+    /**
+     * @param channel   channel that receives the chunks
+     * @param mac       Mac initialized with the shared key
+     * @param chunkSize maximal number of bytes in a chunk
+     */
+    public HmacOutputStream(final FrameSender channel, final Mac mac, final int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        this.channel = channel;
+        this.mac = mac;
+        this.buffer = new byte[chunkSize];
+        RANDOM.nextBytes(streamId);
+    }
+
+    public HmacOutputStream(final FrameSender channel, final Mac mac) {
+        this(channel, mac, DEFAULT_CHUNK_SIZE);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+        if (count == buffer.length)
+            sendChunk();
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+
+        while (len > 0) {
+            if (count == buffer.length)
+                sendChunk();
+            final int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Sends the buffered bytes as a chunk, unless the buffer is empty.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0)
+            sendChunk();
+    }
+
+    /**
+     * Sends the buffered bytes and the end-of-stream chunk.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        flush();
+        sendChunk();
+        closed = true;
+    }
+
+    /**
+     * @return number of chunks sent, including the stream ID and the end-of-stream chunk
+     */
+    public long getChunks() {
+        return sequence;
+    }
+
+    /**
+     * @return random ID of this stream, sent as chunk 0
+     */
+    public byte[] getStreamId() {
+        return streamId.clone();
+    }
+
+    private void sendChunk() throws IOException {
+        if (sequence == 0)
+            send(streamId.clone());
+
+        final byte[] chunk = new byte[count];
+        System.arraycopy(buffer, 0, chunk, 0, count);
+        send(chunk);
+        count = 0;
+    }
+
+    private void send(final byte[] chunk) throws IOException {
+        final byte[] tag = new byte[mac.getMacLength()];
+        tag(mac, previousTag, sequence, sequenceBytes, chunk, tag);
+
+        try {
+            channel.put(new Frame(sequence, chunk, tag));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending chunk " + sequence);
+        }
+
+        previousTag = tag;
+        sequence++;
+    }
+
+    /**
+     * Computes the chained tag of a chunk into out.
+     */
+    static void tag(final Mac mac, final byte[] previousTag, final long sequence, final byte[] sequenceBytes,
+                    final byte[] chunk, final byte[] out) {
+        Frame.encodeSequence(sequence, sequenceBytes, 0);
+
+        try {
+            mac.update(previousTag);
+            mac.update(sequenceBytes);
+            mac.update(chunk);
+            mac.doFinal(out, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+}
@@ -0,0 +1,301 @@
+package isp.integrity;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Hashes all regular files in a directory tree and records them in a
+ * {@link Manifest}.
+ * <p/>
+ * One thread walks the tree while a pool of readers hashes the files with a
+ * {@link StreamingDigest} each. The walker stops when twice as many files as
+ * there are readers are waiting or being read. Only the in-flight reads and
+ * their buffers are bounded this way; the manifest itself holds an entry per
+ * file and grows with the size of the tree.
+ * <p/>
+ * Given the manifest of an earlier scan, a file whose size, modification time
+ * and file key (device and inode on Unix) are unchanged is not read again;
+ * its digest is taken from that manifest. As with git's index, a file
+ * modified shortly before the earlier scan started is hashed anyway: within
+ * the granularity of the file system's timestamps it could have been changed
+ * again without its modification time moving. Content that was changed while
+ * the modification time was deliberately reset is only caught by a full scan
+ * without an earlier manifest.
+ * <p/>
+ * Symbolic links are not followed. Files that cannot be read are logged,
+ * counted and left out of the manifest.
+ */
+public class IntegrityScanner {
+    private final static Logger LOG = Logger.getLogger(IntegrityScanner.class.getCanonicalName());
+
+    /**
+     * Files modified this long before the earlier scan started are still hashed again.
+     */
+    static final long RACY_MARGIN_MILLIS = 2000;
+
+    private final String algorithm;
+    private final int readers;
+
+    /**
+     * @param algorithm digest algorithm, e.g. SHA-256
+     * @param readers   number of files read at the same time
+     */
+    public IntegrityScanner(final String algorithm, final int readers) throws NoSuchAlgorithmException {
+        if (readers < 1)
+            throw new IllegalArgumentException("readers must be positive");
+
+        MessageDigest.getInstance(algorithm);
+        this.algorithm = algorithm;
+        this.readers = readers;
+    }
+
+    /**
+     * Hashes every file in the tree.
+     */
+    public Result scan(final Path root) throws IOException {
+        return scan(root, null);
+    }
+
+    /**
+     * Hashes the files in the tree that changed since the earlier scan.
+     *
+     * @param previous manifest of an earlier scan of the same tree, in either
+     *                 format, or null to hash every file
+     */
+    public Result scan(final Path root, final ManifestLookup previous) throws IOException {
+        final ManifestLookup reusable = previous == null || !previous.getAlgorithm().equals(algorithm)
+                ? null : previous;
+        final long started = System.currentTimeMillis();
+        final long start = System.nanoTime();
+
+        final Map<String, Manifest.Entry> entries = new ConcurrentHashMap<>();
+        final AtomicLong hashed = new AtomicLong(), reused = new AtomicLong(), failed = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final int permitCount = 2 * readers;
+        final Semaphore permits = new Semaphore(permitCount);
+        final ThreadLocal<StreamingDigest> streams = new ThreadLocal<StreamingDigest>() {
+            @Override
+            protected StreamingDigest initialValue() {
+                return new StreamingDigest(StreamingDigest.Mode.DIRECT);
+            }
+        };
+
+        final ExecutorService pool = newPool(readers);
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+                        throws IOException {
+                    if (!attrs.isRegularFile())
+                        return FileVisitResult.CONTINUE;
+
+                    final String path = relativePath(root, file);
+                    final long size = attrs.size();
+                    final long lastModified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+                    final String fileKey = attrs.fileKey() == null ? "-" : attrs.fileKey().toString();
+
+                    final Manifest.Entry earlier = reusable == null ? null : reusable.get(path);
+                    if (earlier != null && earlier.hasAttributes(size, lastModified, fileKey)
+                            && TimeUnit.NANOSECONDS.toMillis(lastModified)
+                            < reusable.getStarted() - RACY_MARGIN_MILLIS) {
+                        entries.put(path, earlier);
+                        reused.incrementAndGet();
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    try {
+                        permits.acquire();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Scan of " + root + " interrupted");
+                    }
+                    pool.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                // the attributes read before hashing: a file changed meanwhile is hashed next time
+                                final StreamingDigest.Result result = streams.get().digest(file,
+                                        CryptoEngineCache.getDefault().digest(algorithm));
+                                entries.put(path, new Manifest.Entry(result.getValue(), size, lastModified,
+                                        fileKey));
+                                hashed.incrementAndGet();
+                                bytes.addAndGet(result.getBytes());
+                            } catch (IOException | GeneralSecurityException e) {
+                                failed.incrementAndGet();
+                                LOG.warning("Cannot hash " + file + ": " + e);
+                            } finally {
+                                permits.release();
+                            }
+                        }
+                    });
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                    failed.incrementAndGet();
+                    LOG.warning("Cannot read " + file + ": " + e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            // all permits back: every submitted file is done
+            permits.acquire(permitCount);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Scan of " + root + " interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new Result(new Manifest(algorithm, started, entries), hashed.get(), reused.get(), failed.get(),
+                bytes.get(), System.nanoTime() - start);
+    }
+
+    private static String relativePath(final Path root, final Path file) {
+        final StringBuilder sb = new StringBuilder();
+        for (final Path name : root.relativize(file)) {
+            if (sb.length() > 0)
+                sb.append('/');
+            sb.append(name.toString());
+        }
+        return sb.toString();
+    }
+
+    private static ExecutorService newPool(final int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "scanner-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * The manifest produced by a scan and what it took to produce it.
+     */
+    public static class Result {
+        private final Manifest manifest;
+        private final long hashed, reused, failed, bytes, nanos;
+
+        Result(final Manifest manifest, final long hashed, final long reused, final long failed, final long bytes,
+               final long nanos) {
+            this.manifest = manifest;
+            this.hashed = hashed;
+            this.reused = reused;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public Manifest getManifest() {
+            return manifest;
+        }
+
+        /**
+         * @return number of files that were read and hashed
+         */
+        public long getHashed() {
+            return hashed;
+        }
+
+        /**
+         * @return number of files whose digest was taken from the earlier manifest
+         */
+        public long getReused() {
+            return reused;
+        }
+
+        /**
+         * @return number of files that could not be read
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return number of bytes hashed
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files: %d hashed (%.1f MB), %d reused, %d failed in %.1f s",
+                    manifest.size(), hashed, bytes / 1e6, reused, failed, nanos / 1e9);
+        }
+    }
+
+    /**
+     * Scans the directory given as the first argument and writes its manifest
+     * to the file given as the second; the manifest should live outside the
+     * tree, and is binary ({@link MappedManifest}) if its name ends in .bin. If
+     * that file already holds a manifest, only changed files are hashed and the
+     * differences to it are printed. The optional third and fourth arguments
+     * select the algorithm (default SHA-256) and the number of readers
+     * (default: number of cores).
+     */
+    public static void main(String[] args) throws IOException, GeneralSecurityException {
+        final Path root = Paths.get(args[0]);
+        final Path manifestFile = Paths.get(args[1]);
+        final String algorithm = args.length > 2 ? args[2] : "SHA-256";
+        final int readers = args.length > 3 ? Integer.parseInt(args[3])
+                : Runtime.getRuntime().availableProcessors();
+        final boolean binary = manifestFile.toString().endsWith(".bin");
+        final IntegrityScanner scanner = new IntegrityScanner(algorithm, readers);
+
+        final ManifestLookup previous = !Files.exists(manifestFile) ? null
+                : binary ? MappedManifest.open(manifestFile) : Manifest.read(manifestFile);
+        final Result result = scanner.scan(root, previous);
+        final Manifest.Changes changes = previous == null ? null : result.getManifest().compare(previous);
+        System.out.println(result);
+
+        if (changes != null) {
+            System.out.println(changes);
+            for (final String path : changes.getAdded())
+                System.out.println("added    " + path);
+            for (final String path : changes.getRemoved())
+                System.out.println("removed  " + path);
+            for (final String path : changes.getModified())
+                System.out.println("modified " + path);
+        }
+
+        final Path temp = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        if (binary)
+            MappedManifest.write(result.getManifest(), temp);
+        else
+            result.getManifest().write(temp);
+        // a mapped file cannot be replaced on Windows
+        if (previous instanceof MappedManifest)
+            ((MappedManifest) previous).close();
+        Files.move(temp, manifestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
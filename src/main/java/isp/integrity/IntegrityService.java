@@ -0,0 +1,227 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Computes digests, MACs and signatures on a pool of worker threads, so that
+ * an agent can keep receiving and sending while its crypto runs.
+ * <p/>
+ * Every operation returns a CompletableFuture. The workers take their engines
+ * from the {@link CryptoEngineCache}, which keeps them per thread, so the
+ * engines are initialized once per worker and key.
+ * <p/>
+ * At most maxInFlight operations are admitted at a time, queued or running.
+ * When the service is saturated a caller waits up to the admission timeout
+ * for a slot; if none frees up, the returned future fails with a
+ * {@link RejectedExecutionException}. Callers thus get backpressure instead
+ * of an ever-growing queue.
+ */
+public class IntegrityService implements AutoCloseable {
+    private static final IntegrityService DEFAULT = new IntegrityService(
+            Runtime.getRuntime().availableProcessors(), 64 * Runtime.getRuntime().availableProcessors(),
+            Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final long admissionTimeoutNanos;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param executor         executor that runs the operations
+     * @param maxInFlight      maximal number of admitted operations
+     * @param admissionTimeout how long a caller waits for a free slot, zero to reject at once
+     * @param unit             unit of the admission timeout
+     */
+    public IntegrityService(final ExecutorService executor, final int maxInFlight, final long admissionTimeout,
+                            final TimeUnit unit) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+        this.admissionTimeoutNanos = unit.toNanos(admissionTimeout);
+    }
+
+    /**
+     * Creates a service with its own pool of daemon worker threads.
+     *
+     * @param threads number of workers, usually the number of cores
+     */
+    public IntegrityService(final int threads, final int maxInFlight, final long admissionTimeout,
+                            final TimeUnit unit) {
+        this(newPool(threads), maxInFlight, admissionTimeout, unit);
+    }
+
+    /**
+     * @return a service with a worker per core that admits 64 operations per
+     * worker and makes callers wait while it is saturated
+     */
+    public static IntegrityService getDefault() {
+        return DEFAULT;
+    }
+
+    private static ExecutorService newPool(final int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "integrity-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return the digest of the concatenated data
+     */
+    public CompletableFuture<byte[]> digest(final String algorithm, final byte[]... data) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final MessageDigest digest = CryptoEngineCache.getDefault().digest(algorithm);
+                for (final byte[] part : data)
+                    digest.update(part);
+                return digest.digest();
+            }
+        });
+    }
+
+    /**
+     * @return the MAC of the concatenated data
+     */
+    public CompletableFuture<byte[]> mac(final String algorithm, final Key key, final byte[]... data) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final Mac mac = CryptoEngineCache.getDefault().mac(algorithm, key);
+                for (final byte[] part : data)
+                    mac.update(part);
+                return mac.doFinal();
+            }
+        });
+    }
+
+    /**
+     * @return the signature of the concatenated data
+     */
+    public CompletableFuture<byte[]> sign(final String algorithm, final PrivateKey key, final byte[]... data) {
+        return submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                final Signature signer = CryptoEngineCache.getDefault().signer(algorithm, key);
+                for (final byte[] part : data)
+                    signer.update(part);
+                return signer.sign();
+            }
+        });
+    }
+
+    /**
+     * @return whether the signature of the concatenated data is valid; a malformed
+     * signature fails the future with a SignatureException
+     */
+    public CompletableFuture<Boolean> verify(final String algorithm, final PublicKey key, final byte[] signature,
+                                             final byte[]... data) {
+        return submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                final Signature verifier = CryptoEngineCache.getDefault().verifier(algorithm, key);
+                for (final byte[] part : data)
+                    verifier.update(part);
+                return verifier.verify(signature);
+            }
+        });
+    }
+
+    /**
+     * @return number of operations admitted and not yet finished
+     */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * @return number of operations refused because the service was saturated
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Stops the workers after the admitted operations.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(final Callable<T> operation) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            if (!permits.tryAcquire(admissionTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                rejected.incrementAndGet();
+                future.completeExceptionally(new RejectedExecutionException(
+                        "Integrity service saturated with " + maxInFlight + " operations"));
+                return future;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    T result = null;
+                    Throwable failure = null;
+                    try {
+                        result = operation.call();
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+
+                    // free the slot first: dependent stages run on this thread and may submit more
+                    permits.release();
+                    completed.incrementAndGet();
+                    if (failure == null)
+                        future.complete(result);
+                    else
+                        future.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            rejected.incrementAndGet();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
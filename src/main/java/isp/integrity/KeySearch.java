@@ -0,0 +1,279 @@
+package isp.integrity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Exhaustive search for a weak HMAC key, given a message and its HMAC.
+ * <p/>
+ * The keyspace consists of all keys over a charset with a length in a given
+ * range, shorter keys first. Worker threads take blocks of consecutive keys
+ * from a shared counter, so all cores stay busy and shorter keys are tried
+ * before longer ones. The next key is produced by incrementing a key buffer
+ * like an odometer. The search stops as soon as a worker finds the key.
+ * <p/>
+ * A Mac would need a new SecretKeySpec, and with it a copy of the key, for
+ * every candidate. Instead every worker computes HMAC (RFC 2104) itself with
+ * two MessageDigests and reusable pad and hash buffers, as
+ * {@link PrecomputedHmac} does, so testing a key allocates nothing. The
+ * supported algorithms are those of PrecomputedHmac.
+ */
+public class KeySearch {
+    private final static Logger LOG = Logger.getLogger(KeySearch.class.getCanonicalName());
+
+    private static final int BLOCK_SIZE = 4096;
+
+    private final String algorithm;
+    private final byte[] charset;
+    private final int minLength, maxLength, workers;
+    private final long total;
+
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong tested = new AtomicLong();
+    private volatile long startNanos, endNanos;
+
+    /**
+     * @param algorithm HMAC algorithm, e.g. HmacMD5
+     * @param charset   characters a key may consist of
+     * @param minLength length of the shortest key tried
+     * @param maxLength length of the longest key tried
+     * @param workers   number of threads
+     */
+    public KeySearch(final String algorithm, final String charset, final int minLength, final int maxLength,
+                     final int workers) {
+        if (minLength < 1 || maxLength < minLength || workers < 1 || charset.isEmpty())
+            throw new IllegalArgumentException("Invalid keyspace or number of workers");
+
+        this.algorithm = algorithm;
+        this.charset = charset.getBytes(StandardCharsets.US_ASCII);
+        this.minLength = minLength;
+        this.maxLength = maxLength;
+        this.workers = workers;
+
+        long size = 0;
+        for (int length = minLength; length <= maxLength; length++)
+            size += power(this.charset.length, length);
+        this.total = size;
+    }
+
+    public KeySearch(final String algorithm, final String charset, final int minLength, final int maxLength) {
+        this(algorithm, charset, minLength, maxLength, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Searches for the key that produces the given HMAC of the message and logs
+     * the progress every few seconds. A KeySearch can be used for a single search.
+     *
+     * @return the key or null if it is not in the keyspace
+     */
+    public byte[] search(final byte[] message, final byte[] tag) throws InterruptedException, GeneralSecurityException {
+        MessageDigest.getInstance(PrecomputedHmac.digestAlgorithm(algorithm));
+
+        final AtomicReference<byte[]> found = new AtomicReference<>();
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(workers);
+
+        startNanos = System.nanoTime();
+        final Thread[] threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        work(message, tag, found);
+                    } catch (Exception e) {
+                        failure.compareAndSet(null, e);
+                        next.set(total);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "key-search-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        try {
+            while (!done.await(5, TimeUnit.SECONDS))
+                LOG.info(String.format("Tested %d of %d keys (%.1f %%), %.0f keys/s",
+                        getTested(), total, 100.0 * getTested() / total, getKeysPerSecond()));
+        } catch (InterruptedException e) {
+            next.set(total);
+            throw e;
+        } finally {
+            endNanos = System.nanoTime();
+        }
+
+        if (failure.get() != null)
+            throw new GeneralSecurityException("Key search failed", failure.get());
+        return found.get();
+    }
+
+    private void work(final byte[] message, final byte[] tag, final AtomicReference<byte[]> found)
+            throws GeneralSecurityException {
+        final Hmac hmac = new Hmac(algorithm, maxLength);
+        final byte[] key = new byte[maxLength];
+        final int[] digits = new int[maxLength];
+
+        long block;
+        while (found.get() == null && (block = next.getAndAdd(BLOCK_SIZE)) < total) {
+            final long end = Math.min(block + BLOCK_SIZE, total);
+            int length = decode(block, digits, key);
+
+            for (long index = block; index < end; index++) {
+                if (hmac.matches(key, length, message, tag)) {
+                    found.compareAndSet(null, Arrays.copyOf(key, length));
+                    next.set(total);
+                }
+                length = increment(digits, key, length);
+            }
+            tested.addAndGet(end - block);
+        }
+    }
+
+    /**
+     * Writes the key with the given index in the keyspace into the buffer.
+     *
+     * @return length of the key
+     */
+    private int decode(long index, final int[] digits, final byte[] key) {
+        int length = minLength;
+        long count;
+        while (index >= (count = power(charset.length, length))) {
+            index -= count;
+            length++;
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            digits[i] = (int) (index % charset.length);
+            key[i] = charset[digits[i]];
+            index /= charset.length;
+        }
+        return length;
+    }
+
+    /**
+     * Advances the buffer to the next key; after the last key of a length
+     * comes the first key of the next length.
+     *
+     * @return length of the next key
+     */
+    private int increment(final int[] digits, final byte[] key, final int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (++digits[i] < charset.length) {
+                key[i] = charset[digits[i]];
+                return length;
+            }
+            digits[i] = 0;
+            key[i] = charset[0];
+        }
+
+        if (length == maxLength)
+            return length;
+
+        digits[length] = 0;
+        key[length] = charset[0];
+        return length + 1;
+    }
+
+    /**
+     * HMAC of one worker, keyed anew for every candidate without allocating.
+     */
+    private static final class Hmac {
+        private static final byte IPAD = 0x36, OPAD = 0x5c;
+
+        private final MessageDigest inner, outer;
+        private final byte[] innerPad, outerPad, keyHash, innerHash, result;
+
+        Hmac(final String algorithm, final int maxLength) throws GeneralSecurityException {
+            final String digestAlgorithm = PrecomputedHmac.digestAlgorithm(algorithm);
+            this.inner = MessageDigest.getInstance(digestAlgorithm);
+            this.outer = MessageDigest.getInstance(digestAlgorithm);
+
+            final int blockSize = PrecomputedHmac.blockSize(algorithm);
+            this.innerPad = new byte[blockSize];
+            this.outerPad = new byte[blockSize];
+            Arrays.fill(innerPad, IPAD);
+            Arrays.fill(outerPad, OPAD);
+            this.keyHash = maxLength > blockSize ? new byte[inner.getDigestLength()] : null;
+            this.innerHash = new byte[inner.getDigestLength()];
+            this.result = new byte[outer.getDigestLength()];
+        }
+
+        boolean matches(final byte[] key, final int length, final byte[] message, final byte[] tag)
+                throws DigestException {
+            if (tag.length != result.length)
+                return false;
+
+            // keys longer than a block are replaced by their hash
+            byte[] secret = key;
+            int secretLength = length;
+            if (length > innerPad.length) {
+                inner.update(key, 0, length);
+                secretLength = inner.digest(keyHash, 0, keyHash.length);
+                secret = keyHash;
+            }
+
+            // only the first maxLength bytes of the pads ever hold key bytes
+            final int padded = Math.min(key.length, innerPad.length);
+            for (int i = 0; i < padded; i++) {
+                final byte b = i < secretLength ? secret[i] : 0;
+                innerPad[i] = (byte) (b ^ IPAD);
+                outerPad[i] = (byte) (b ^ OPAD);
+            }
+
+            inner.update(innerPad);
+            inner.update(message);
+            inner.digest(innerHash, 0, innerHash.length);
+            outer.update(outerPad);
+            outer.update(innerHash);
+            outer.digest(result, 0, result.length);
+            return TagVerifier.isEqual(result, 0, tag, 0, result.length);
+        }
+    }
+
+    private static long power(final long base, final int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            if (result > Long.MAX_VALUE / base)
+                throw new IllegalArgumentException("Keyspace too large");
+            result *= base;
+        }
+        return result;
+    }
+
+    /**
+     * @return size of the keyspace
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public long getTested() {
+        return tested.get();
+    }
+
+    /**
+     * @return fraction of the keyspace that has been tested
+     */
+    public double getProgress() {
+        return (double) tested.get() / total;
+    }
+
+    public double getKeysPerSecond() {
+        final long start = startNanos;
+        if (start == 0)
+            return 0;
+
+        final long end = endNanos == 0 ? System.nanoTime() : endNanos;
+        return end == start ? 0 : tested.get() * 1e9 / (end - start);
+    }
+}
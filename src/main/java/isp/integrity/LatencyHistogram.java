@@ -0,0 +1,181 @@
+package isp.integrity;
+
+import java.beans.ConstructorProperties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of durations in nanoseconds with log-linear buckets.
+ * <p/>
+ * Every power of two is divided into {@value #SUB_BUCKETS} buckets, so any
+ * reported percentile is within 12.5 % of the recorded value, from one
+ * nanosecond up to about a minute; longer durations fall into the last bucket.
+ * Recording is a few arithmetic operations and an atomic increment. The
+ * buckets are allocated on the first recorded value, so an unused histogram
+ * costs almost no memory.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private volatile AtomicLongArray buckets;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0);
+        AtomicLongArray b = buckets;
+        if (b == null)
+            b = allocate();
+
+        b.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // another thread raised the maximum meanwhile
+        }
+    }
+
+    private synchronized AtomicLongArray allocate() {
+        if (buckets == null)
+            buckets = new AtomicLongArray(BUCKETS);
+        return buckets;
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT)
+            return BUCKETS - 1;
+
+        final int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    static long upperBound(final int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+
+        final int exponent = index / SUB_BUCKETS + SUB_BITS - 1;
+        final long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the recorded values summarized; concurrent recording may be
+     * partially included
+     */
+    public Snapshot snapshot() {
+        final AtomicLongArray b = buckets;
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        if (b != null) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = b.get(i);
+                total += counts[i];
+            }
+        }
+
+        final long maximum = max.get();
+        return new Snapshot(total, total == 0 ? 0 : (double) sum.get() / count.get(),
+                percentile(counts, total, 0.5, maximum), percentile(counts, total, 0.9, maximum),
+                percentile(counts, total, 0.99, maximum), percentile(counts, total, 0.999, maximum), maximum);
+    }
+
+    private static long percentile(final long[] counts, final long total, final double quantile, final long max) {
+        if (total == 0)
+            return 0;
+
+        final long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        final AtomicLongArray b = buckets;
+        if (b != null) {
+            for (int i = 0; i < BUCKETS; i++)
+                b.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Summary of a histogram at one point in time; all durations in nanoseconds.
+     */
+    public static class Snapshot {
+        private final long count;
+        private final double mean;
+        private final long p50, p90, p99, p999, max;
+
+        @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+        public Snapshot(final long count, final double mean, final long p50, final long p90, final long p99,
+                        final long p999, final long max) {
+            this.count = count;
+            this.mean = mean;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0f p50=%d p90=%d p99=%d p99.9=%d max=%d [ns]",
+                    count, mean, p50, p90, p99, p999, max);
+        }
+    }
+}
@@ -8,29 +8,40 @@ package isp.integrity; /**
  * @version 1
  */
 
+import javax.crypto.Mac;
+import java.security.GeneralSecurityException;
 import java.security.Key;
-import java.util.concurrent.BlockingQueue;
+import java.security.MessageDigest;
+import java.security.Signature;
 
 /**
  * Represents an agent that can communicate with other agents using
- * ideal communication channel.
+ * ideal communication channel. Messages are exchanged as {@link Frame}s
+ * over {@link FrameChannel}s, or over just the end of a channel that it needs.
  * <p/>
  * Agent's behavior is implemented by extending Agents class and
  * overriding run(...) method.
  */
 public abstract class MITMAgent extends Thread {
-    protected final BlockingQueue<String> outgoingA, incomingA;
-    protected final BlockingQueue<String> outgoingB, incomingB;
+    protected final FrameSender outgoingA, outgoingB;
+    protected final FrameReceiver incomingA, incomingB;
 
     protected final Key macKey, cryptoKey;
     protected final String cryptoAlgorithm, macAlgorithm;
 
-    public MITMAgent(final BlockingQueue<String> outgoingA, final BlockingQueue<String> incomingA,final BlockingQueue<String> outgoingB, final BlockingQueue<String> incomingB, final Key cryptoKey,
+    /**
+     * Metrics of this agent; the channels above already report to them. They
+     * are published over JMX only on request, see {@link AgentMetrics#register(String)}.
+     */
+    protected final AgentMetrics metrics;
+
+    public MITMAgent(final FrameSender outgoingA, final FrameReceiver incomingA,final FrameSender outgoingB, final FrameReceiver incomingB, final Key cryptoKey,
                      final String cryptoAlgorithm, final Key macKey, final String macAlgorithm) {
-        this.outgoingA = outgoingA;
-        this.incomingA = incomingA;
-        this.outgoingB = outgoingB;
-        this.incomingB = incomingB;
+        this.metrics = new AgentMetrics();
+        this.outgoingA = metrics.meter(outgoingA);
+        this.incomingA = metrics.meter(incomingA);
+        this.outgoingB = metrics.meter(outgoingB);
+        this.incomingB = metrics.meter(incomingB);
 
         this.cryptoKey = cryptoKey;
         this.cryptoAlgorithm = cryptoAlgorithm;
@@ -38,5 +49,38 @@ public abstract class MITMAgent extends Thread {
         this.macAlgorithm = macAlgorithm;
     }
 
+    public AgentMetrics getMetrics() {
+        return metrics;
+    }
 
+    /**
+     * @return a Mac for macAlgorithm initialized with macKey; the instance
+     * is cached and reused by subsequent calls from the same thread
+     */
+    protected Mac mac() throws GeneralSecurityException {
+        return AgentEngines.mac(macAlgorithm, macKey);
+    }
+
+    /**
+     * @return a MessageDigest for macAlgorithm, cached per thread
+     */
+    protected MessageDigest digest() throws GeneralSecurityException {
+        return AgentEngines.digest(macAlgorithm);
+    }
+
+    /**
+     * @return a Signature for macAlgorithm initialized for signing with
+     * macKey, cached per thread
+     */
+    protected Signature signer() throws GeneralSecurityException {
+        return AgentEngines.signer(macAlgorithm, macKey);
+    }
+
+    /**
+     * @return a Signature for macAlgorithm initialized for verification with
+     * macKey, cached per thread
+     */
+    protected Signature verifier() throws GeneralSecurityException {
+        return AgentEngines.verifier(macAlgorithm, macKey);
+    }
 }
@@ -0,0 +1,233 @@
+package isp.integrity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * The digests of all files in a directory tree, as produced by
+ * {@link IntegrityScanner}, together with the size, modification time and
+ * file key (device and inode on Unix) each file had when it was hashed.
+ * <p/>
+ * A manifest is stored as UTF-8 text, one file per line, sorted by path:
+ * <pre>
+ *   # isp-integrity manifest &lt;algorithm&gt; &lt;scan start, ms since epoch&gt;
+ *   &lt;digest hex&gt; TAB &lt;size&gt; TAB &lt;mtime, ns&gt; TAB &lt;file key&gt; TAB &lt;path&gt;
+ * </pre>
+ * Paths are relative to the scanned root with '/' as the separator;
+ * backslashes, tabs and line breaks in them are escaped.
+ */
+public class Manifest implements ManifestLookup {
+    private static final String HEADER = "# isp-integrity manifest ";
+
+    private final String algorithm;
+    private final long started;
+    private final SortedMap<String, Entry> entries;
+
+    /**
+     * @param algorithm digest algorithm of the entries
+     * @param started   time the scan started, in ms since the epoch
+     * @param entries   entries by path
+     */
+    public Manifest(final String algorithm, final long started, final Map<String, Entry> entries) {
+        this.algorithm = algorithm;
+        this.started = started;
+        this.entries = Collections.unmodifiableSortedMap(new TreeMap<>(entries));
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return the entries sorted by path
+     */
+    public SortedMap<String, Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public Entry get(final String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * @return the paths sorted
+     */
+    @Override
+    public Iterable<String> paths() {
+        return entries.keySet();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return paths whose digest differs from the one in the older manifest,
+     * in either format, and paths that were added or removed since; each list
+     * is sorted
+     */
+    public Changes compare(final ManifestLookup older) {
+        final Changes changes = new Changes();
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            final Entry previous = older.get(entry.getKey());
+            if (previous == null)
+                changes.added.add(entry.getKey());
+            else if (!Arrays.equals(previous.digest, entry.getValue().digest))
+                changes.modified.add(entry.getKey());
+        }
+        for (final String path : older.paths()) {
+            if (!entries.containsKey(path))
+                changes.removed.add(path);
+        }
+        Collections.sort(changes.removed);
+        return changes;
+    }
+
+    public void write(final Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write(HEADER + algorithm + " " + started);
+            out.newLine();
+            for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                final Entry entry = e.getValue();
+                out.write(HexCodec.toHex(entry.digest) + '\t' + entry.size + '\t' + entry.lastModified + '\t'
+                        + entry.fileKey + '\t' + escape(e.getKey()));
+                out.newLine();
+            }
+        }
+    }
+
+    public static Manifest read(final Path file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            final String header = in.readLine();
+            if (header == null || !header.startsWith(HEADER))
+                throw new IOException(file + " is not a manifest");
+
+            final String[] fields = header.substring(HEADER.length()).split(" ");
+            final Map<String, Entry> entries = new TreeMap<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                final String[] columns = line.split("\t", 5);
+                if (columns.length != 5)
+                    throw new IOException("Malformed manifest line: " + line);
+                entries.put(unescape(columns[4]), new Entry(HexCodec.fromHex(columns[0]),
+                        Long.parseLong(columns[1]), Long.parseLong(columns[2]), columns[3]));
+            }
+            return new Manifest(fields[0], Long.parseLong(fields[1]), entries);
+        }
+    }
+
+    private static String escape(final String path) {
+        return path.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(final String path) {
+        final StringBuilder sb = new StringBuilder(path.length());
+        for (int i = 0; i < path.length(); i++) {
+            final char c = path.charAt(i);
+            if (c != '\\' || i + 1 == path.length()) {
+                sb.append(c);
+                continue;
+            }
+
+            final char next = path.charAt(++i);
+            sb.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The digest of one file and the attributes it had when it was hashed.
+     */
+    public static final class Entry {
+        private final byte[] digest;
+        private final long size, lastModified;
+        private final String fileKey;
+
+        /**
+         * @param digest       digest of the file's content
+         * @param size         size in bytes
+         * @param lastModified modification time in ns since the epoch
+         * @param fileKey      file key, e.g. device and inode, or "-" if unknown
+         */
+        public Entry(final byte[] digest, final long size, final long lastModified, final String fileKey) {
+            this.digest = digest;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.fileKey = fileKey;
+        }
+
+        /**
+         * @return a copy of the digest
+         */
+        public byte[] getDigest() {
+            return digest.clone();
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public String getFileKey() {
+            return fileKey;
+        }
+
+        /**
+         * @return whether the attributes are those of this entry
+         */
+        boolean hasAttributes(final long size, final long lastModified, final String fileKey) {
+            return this.size == size && this.lastModified == lastModified && this.fileKey.equals(fileKey);
+        }
+    }
+
+    /**
+     * Differences between two manifests.
+     */
+    public static final class Changes {
+        private final List<String> added = new ArrayList<>();
+        private final List<String> removed = new ArrayList<>();
+        private final List<String> modified = new ArrayList<>();
+
+        public List<String> getAdded() {
+            return added;
+        }
+
+        public List<String> getRemoved() {
+            return removed;
+        }
+
+        public List<String> getModified() {
+            return modified;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && modified.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return added.size() + " added, " + removed.size() + " removed, " + modified.size() + " modified";
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package isp.integrity;
+
+/**
+ * Read access to the entries of a manifest, whether it is held on the heap
+ * ({@link Manifest}) or mapped from a binary file ({@link MappedManifest}).
+ */
+public interface ManifestLookup {
+
+    String getAlgorithm();
+
+    /**
+     * @return time the scan that produced the manifest started, in ms since the epoch
+     */
+    long getStarted();
+
+    /**
+     * @return the entry of the path, or null if there is none
+     */
+    Manifest.Entry get(String path);
+
+    /**
+     * @return the paths of all entries, in the order of the manifest
+     */
+    Iterable<String> paths();
+}
@@ -0,0 +1,375 @@
+package isp.integrity;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link Manifest} in a compact binary file that is read through memory
+ * mappings instead of being parsed onto the heap.
+ * <p/>
+ * The file consists of a 64-byte header, an index of fixed-width records
+ * sorted by a 64-bit hash of the path, and the UTF-8 paths and file keys the
+ * records point to. A record holds the path hash, size, modification time,
+ * offset and lengths of the strings and the raw digest:
+ * <pre>
+ *   hash 8 | size 8 | mtime 8 | string offset 8 | path length 4 | key length 4 | digest
+ * </pre>
+ * A lookup is a binary search over the hashes followed by a comparison of
+ * the paths that share the hash, so it touches about log2(n) records and one
+ * path, a few microseconds even for tens of millions of entries.
+ * <p/>
+ * A MappedByteBuffer cannot exceed 2 GiB, so the file is mapped in 1 GiB
+ * segments. Every segment also maps the first 64 KiB of the next one; since no
+ * single read is longer than that, a read never has to be split between two
+ * segments.
+ * <p/>
+ * {@link #close()} releases the mappings at once, which is needed before the
+ * file can be replaced or deleted on Windows; where the JVM does not allow
+ * that, they are released when the instance is garbage collected.
+ * <p/>
+ * Instances only use absolute reads and are safe to share between threads,
+ * but must not be closed while another thread is still reading.
+ */
+public class MappedManifest implements ManifestLookup, Closeable {
+    private static final long MAGIC = 0x4953504D414E4931L; // "ISPMANI1"
+    private static final int HEADER_LENGTH = 64;
+    private static final int RECORD_FIXED_LENGTH = 40;
+    private static final int MAX_ALGORITHM_LENGTH = HEADER_LENGTH - 30;
+
+    static final int SEGMENT_SHIFT = 30;
+    /**
+     * Longest single read; a segment maps this much of the next one.
+     */
+    static final int OVERLAP = 64 * 1024;
+
+    private final MappedByteBuffer[] segments;
+    private final int segmentShift;
+    private final long segmentMask;
+
+    private final String algorithm;
+    private final long started;
+    private final int digestLength, recordLength;
+    private final long count;
+
+    private volatile boolean closed;
+
+    private MappedManifest(final Path file, final int segmentShift) throws IOException {
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+
+        final long length;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            length = channel.size();
+            if (length < HEADER_LENGTH)
+                throw new IOException(file + " is not a binary manifest");
+
+            segments = new MappedByteBuffer[(int) ((length + segmentMask) >>> segmentShift)];
+            for (int i = 0; i < segments.length; i++) {
+                final long position = (long) i << segmentShift;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(length - position, (1L << segmentShift) + OVERLAP));
+            }
+        }
+
+        if (getLong(0) != MAGIC)
+            throw new IOException(file + " is not a binary manifest");
+        digestLength = getInt(8);
+        count = getLong(12);
+        started = getLong(20);
+        algorithm = new String(getBytes(30, getShort(28)), StandardCharsets.UTF_8);
+        recordLength = RECORD_FIXED_LENGTH + digestLength;
+        if (count < 0 || HEADER_LENGTH + count * recordLength > length)
+            throw new IOException(file + " is truncated");
+    }
+
+    /**
+     * Maps the binary manifest in the file.
+     */
+    public static MappedManifest open(final Path file) throws IOException {
+        return new MappedManifest(file, SEGMENT_SHIFT);
+    }
+
+    /**
+     * Maps the file in segments of 2^segmentShift bytes.
+     */
+    static MappedManifest open(final Path file, final int segmentShift) throws IOException {
+        return new MappedManifest(file, segmentShift);
+    }
+
+    /**
+     * Unmaps the file; reading afterwards throws an IllegalStateException.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+
+        closed = true;
+        for (final MappedByteBuffer segment : segments)
+            unmap(segment);
+    }
+
+    /**
+     * Releases the mapping through the JDK's cleaner: Unsafe.invokeCleaner
+     * since Java 9, the buffer's own Cleaner on Java 8.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            } catch (NoSuchMethodException e) {
+                final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                final Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null)
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+
+    /**
+     * Writes the manifest to the file in the binary format.
+     *
+     * @throws IllegalArgumentException if the digests differ in length or a path is too long
+     */
+    public static void write(final Manifest manifest, final Path file) throws IOException {
+        final byte[] algorithmBytes = manifest.getAlgorithm().getBytes(StandardCharsets.UTF_8);
+        if (algorithmBytes.length > MAX_ALGORITHM_LENGTH)
+            throw new IllegalArgumentException("Algorithm name too long: " + manifest.getAlgorithm());
+
+        final int n = manifest.size();
+        final Record[] records = new Record[n];
+        int digestLength = -1, i = 0;
+        for (final Map.Entry<String, Manifest.Entry> e : manifest.getEntries().entrySet()) {
+            final Record record = new Record(e.getKey(), e.getValue());
+            if (record.path.length + record.key.length > OVERLAP)
+                throw new IllegalArgumentException("Path too long: " + e.getKey());
+            if (digestLength != -1 && record.digest.length != digestLength)
+                throw new IllegalArgumentException("Digests of different lengths");
+            digestLength = record.digest.length;
+            records[i++] = record;
+        }
+        Arrays.sort(records, new Comparator<Record>() {
+            @Override
+            public int compare(final Record a, final Record b) {
+                final int byHash = Long.compare(a.hash, b.hash);
+                return byHash != 0 ? byHash : a.name.compareTo(b.name);
+            }
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file), 1 << 16))) {
+            out.writeLong(MAGIC);
+            out.writeInt(Math.max(digestLength, 0));
+            out.writeLong(n);
+            out.writeLong(manifest.getStarted());
+            out.writeShort(algorithmBytes.length);
+            out.write(algorithmBytes);
+            out.write(new byte[MAX_ALGORITHM_LENGTH - algorithmBytes.length]);
+
+            long stringOffset = HEADER_LENGTH + (long) n * (RECORD_FIXED_LENGTH + Math.max(digestLength, 0));
+            for (final Record record : records) {
+                out.writeLong(record.hash);
+                out.writeLong(record.entry.getSize());
+                out.writeLong(record.entry.getLastModified());
+                out.writeLong(stringOffset);
+                out.writeInt(record.path.length);
+                out.writeInt(record.key.length);
+                out.write(record.digest);
+                stringOffset += record.path.length + record.key.length;
+            }
+            for (final Record record : records) {
+                out.write(record.path);
+                out.write(record.key);
+            }
+        }
+    }
+
+    @Override
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public long getStarted() {
+        return started;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    @Override
+    public Manifest.Entry get(final String path) {
+        final long index = indexOf(path);
+        return index < 0 ? null : getEntry(index);
+    }
+
+    /**
+     * @return the paths ordered by path hash, each decoded when it is reached
+     */
+    @Override
+    public Iterable<String> paths() {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private long next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < count;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next >= count)
+                            throw new NoSuchElementException();
+                        return getPath(next++);
+                    }
+                };
+            }
+        };
+    }
+
+    public boolean contains(final String path) {
+        return indexOf(path) >= 0;
+    }
+
+    /**
+     * @return path of the entry at the index; entries are ordered by path hash
+     */
+    public String getPath(final long index) {
+        final long record = record(index);
+        return new String(getBytes(getLong(record + 24), getInt(record + 32)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return entry at the index; entries are ordered by path hash
+     */
+    public Manifest.Entry getEntry(final long index) {
+        final long record = record(index);
+        final long strings = getLong(record + 24);
+        final String fileKey = new String(getBytes(strings + getInt(record + 32), getInt(record + 36)),
+                StandardCharsets.UTF_8);
+        return new Manifest.Entry(getBytes(record + RECORD_FIXED_LENGTH, digestLength), getLong(record + 8),
+                getLong(record + 16), fileKey);
+    }
+
+    private long indexOf(final String path) {
+        final byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(name);
+
+        // first record with the hash
+        long low = 0, high = count;
+        while (low < high) {
+            final long mid = (low + high) >>> 1;
+            if (getLong(record(mid)) < hash)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+
+        for (long i = low; i < count && getLong(record(i)) == hash; i++) {
+            final long record = record(i);
+            if (getInt(record + 32) == name.length && equals(getLong(record + 24), name))
+                return i;
+        }
+        return -1;
+    }
+
+    private long record(final long index) {
+        if (closed)
+            throw new IllegalStateException("Manifest closed");
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index " + index + " of " + count);
+        return HEADER_LENGTH + index * recordLength;
+    }
+
+    private boolean equals(final long position, final byte[] bytes) {
+        final MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+        final int offset = (int) (position & segmentMask);
+        for (int i = 0; i < bytes.length; i++) {
+            if (segment.get(offset + i) != bytes[i])
+                return false;
+        }
+        return true;
+    }
+
+    private long getLong(final long position) {
+        return segments[(int) (position >>> segmentShift)].getLong((int) (position & segmentMask));
+    }
+
+    private int getInt(final long position) {
+        return segments[(int) (position >>> segmentShift)].getInt((int) (position & segmentMask));
+    }
+
+    private short getShort(final long position) {
+        return segments[(int) (position >>> segmentShift)].getShort((int) (position & segmentMask));
+    }
+
+    private byte[] getBytes(final long position, final int length) {
+        final MappedByteBuffer segment = segments[(int) (position >>> segmentShift)];
+        final int offset = (int) (position & segmentMask);
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+            bytes[i] = segment.get(offset + i);
+        return bytes;
+    }
+
+    /**
+     * 64-bit FNV-1a of the UTF-8 path, finished with the MurmurHash3 mixer so
+     * that paths with a common prefix spread over the whole range.
+     */
+    static long hash(final byte[] path) {
+        long h = 0xcbf29ce484222325L;
+        for (final byte b : path) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Record {
+        private final String name;
+        private final Manifest.Entry entry;
+        private final byte[] path, key, digest;
+        private final long hash;
+
+        Record(final String name, final Manifest.Entry entry) {
+            this.name = name;
+            this.entry = entry;
+            this.path = name.getBytes(StandardCharsets.UTF_8);
+            this.key = entry.getFileKey().getBytes(StandardCharsets.UTF_8);
+            this.digest = entry.getDigest();
+            this.hash = hash(path);
+        }
+    }
+}
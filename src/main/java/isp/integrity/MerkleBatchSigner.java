@@ -0,0 +1,161 @@
+package isp.integrity;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A signing stage for a sending agent: collects messages into batches and
+ * signs each batch with a single private-key operation.
+ * <p/>
+ * The messages of a batch are the leaves of a Merkle tree with the shape of
+ * {@link MerkleTreeDigest}; a leaf covers the frame's sequence number,
+ * encoded as by {@link Frame#sequenceBytes(long)}, followed by its payload,
+ * and the signature covers the root and the number of leaves. Every message
+ * leaves the stage in its own frame, with its sequence number, whose tag holds
+ * <pre>
+ *   count (4 bytes) | index (4 bytes) | signature length (2 bytes) | signature | audit path
+ * </pre>
+ * where the audit path is the list of sibling hashes from the leaf up to the
+ * root. {@link MerkleBatchVerifier} checks the tags on the receiving side.
+ * <p/>
+ * A batch is closed when it holds maxBatchSize messages or when maxWait has
+ * elapsed since its first message arrived, whatever happens first.
+ */
+public class MerkleBatchSigner implements Runnable {
+    static final int HEADER_LENGTH = 10;
+
+    private final FrameReceiver incoming;
+    private final FrameSender outgoing;
+    private final String hashAlgorithm, signatureAlgorithm;
+    private final PrivateKey key;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    private volatile long batches, messages;
+
+    /**
+     * @param incoming           channel with the frames to sign; their tags are ignored
+     * @param outgoing           channel that receives the signed frames
+     * @param hashAlgorithm      message digest algorithm of the tree, e.g. SHA-256
+     * @param signatureAlgorithm signature algorithm of the root, e.g. SHA1withRSA
+     * @param key                private key of the signee
+     * @param maxBatchSize       maximal number of messages covered by one signature
+     * @param maxWait            maximal time the first message of a batch waits for others
+     * @param unit               unit of maxWait
+     */
+    public MerkleBatchSigner(final FrameReceiver incoming, final FrameSender outgoing, final String hashAlgorithm,
+                             final String signatureAlgorithm, final PrivateKey key, final int maxBatchSize,
+                             final long maxWait, final TimeUnit unit) {
+        if (maxBatchSize < 1 || maxWait < 0)
+            throw new IllegalArgumentException("maxBatchSize must be positive and maxWait not negative");
+
+        this.incoming = incoming;
+        this.outgoing = outgoing;
+        this.hashAlgorithm = hashAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.key = key;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Signs batches until the thread is interrupted.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted())
+                processBatch();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for a message, collects further messages until the batch is full
+     * or the maximal wait has elapsed, signs the batch and sends its frames.
+     *
+     * @return number of signed messages
+     */
+    public int processBatch() throws InterruptedException {
+        final List<Frame> batch = new ArrayList<>(maxBatchSize);
+        batch.add(incoming.take());
+
+        final long deadline = System.nanoTime() + maxWaitNanos;
+        while (batch.size() < maxBatchSize) {
+            final long remaining = deadline - System.nanoTime();
+            final Frame frame = incoming.poll(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+            if (frame == null)
+                break;
+            batch.add(frame);
+        }
+
+        for (final Frame frame : sign(batch))
+            outgoing.put(frame);
+        return batch.size();
+    }
+
+    /**
+     * Signs the messages as a single batch.
+     *
+     * @return frames with the same payloads, in the same order, carrying their batch tags
+     */
+    public List<Frame> sign(final List<Frame> batch) {
+        try {
+            final MessageDigest md = CryptoEngineCache.getDefault().digest(hashAlgorithm);
+            final byte[][] leaves = new byte[batch.size()][];
+            for (int i = 0; i < leaves.length; i++) {
+                leaves[i] = leafHash(md, batch.get(i));
+            }
+
+            final List<List<byte[]>> paths = new ArrayList<>(leaves.length);
+            final byte[] root = MerkleTreeDigest.root(md, leaves, paths);
+
+            final Signature signer = CryptoEngineCache.getDefault().signer(signatureAlgorithm, key);
+            signer.update(root);
+            signer.update(ByteBuffer.allocate(4).putInt(leaves.length).array());
+            final byte[] signature = signer.sign();
+
+            final List<Frame> signed = new ArrayList<>(leaves.length);
+            for (int i = 0; i < leaves.length; i++) {
+                final List<byte[]> path = paths.get(i);
+                final ByteBuffer tag = ByteBuffer.allocate(HEADER_LENGTH + signature.length
+                        + path.size() * md.getDigestLength());
+                tag.putInt(leaves.length).putInt(i).putShort((short) signature.length).put(signature);
+                for (final byte[] sibling : path)
+                    tag.put(sibling);
+                signed.add(new Frame(batch.get(i).getSequence(), batch.get(i).payloadArray(), tag.array()));
+            }
+
+            batches++;
+            messages += leaves.length;
+            return signed;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign with " + signatureAlgorithm, e);
+        }
+    }
+
+    /**
+     * @return leaf hash of the frame's sequence number and payload
+     */
+    static byte[] leafHash(final MessageDigest md, final Frame frame) {
+        md.update(MerkleTreeDigest.LEAF_PREFIX);
+        md.update(Frame.sequenceBytes(frame.getSequence()));
+        md.update(frame.payloadArray(), 0, frame.payloadLength());
+        return md.digest();
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+}
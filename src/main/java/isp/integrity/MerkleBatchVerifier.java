@@ -0,0 +1,128 @@
+package isp.integrity;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+
+/**
+ * Verifies frames signed by a {@link MerkleBatchSigner}.
+ * <p/>
+ * For every frame the root of its batch is recomputed from the payload and
+ * the audit path, which costs a few hash operations. The signature of the
+ * root is verified only for the first frame of a batch: the verifier keeps
+ * the last verified signature and root, and later frames whose tag carries
+ * the same signature and whose path leads to the same root are accepted
+ * without another public-key operation.
+ * <p/>
+ * The leaves cover the sequence numbers of the frames, so a frame cannot be
+ * moved to another position or replayed into a later batch; the verifier
+ * rejects sequence numbers its {@link ReplayWindow} has already seen and
+ * records those of frames that verify.
+ * <p/>
+ * A verifier must not be shared between threads.
+ */
+public class MerkleBatchVerifier {
+    private final String hashAlgorithm, signatureAlgorithm;
+    private final PublicKey key;
+    private final ReplayWindow window;
+
+    private byte[] verifiedSignature, verifiedRoot;
+    private int verifiedCount;
+    private long signatureVerifications, proofVerifications;
+
+    /**
+     * @param hashAlgorithm      message digest algorithm of the tree
+     * @param signatureAlgorithm signature algorithm of the root
+     * @param key                public key of the signee
+     * @param window             sequence numbers received from the signee
+     */
+    public MerkleBatchVerifier(final String hashAlgorithm, final String signatureAlgorithm, final PublicKey key,
+                               final ReplayWindow window) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.key = key;
+        this.window = window;
+    }
+
+    public MerkleBatchVerifier(final String hashAlgorithm, final String signatureAlgorithm, final PublicKey key) {
+        this(hashAlgorithm, signatureAlgorithm, key, new ReplayWindow());
+    }
+
+    /**
+     * @return true if the frame is fresh and its sequence number and payload
+     * belong to a batch with a valid signature
+     */
+    public boolean verify(final Frame frame) {
+        if (!window.isFresh(frame.getSequence()))
+            return false;
+        if (!verifyTag(frame))
+            return false;
+
+        window.mark(frame.getSequence());
+        return true;
+    }
+
+    private boolean verifyTag(final Frame frame) {
+        try {
+            final MessageDigest md = CryptoEngineCache.getDefault().digest(hashAlgorithm);
+            final ByteBuffer tag = ByteBuffer.wrap(frame.tagArray());
+            if (tag.remaining() < MerkleBatchSigner.HEADER_LENGTH)
+                return false;
+
+            final int count = tag.getInt();
+            final int index = tag.getInt();
+            final int signatureLength = tag.getShort() & 0xffff;
+            if (tag.remaining() < signatureLength
+                    || (tag.remaining() - signatureLength) % md.getDigestLength() != 0)
+                return false;
+
+            final byte[] signature = new byte[signatureLength];
+            tag.get(signature);
+            final byte[][] path = new byte[tag.remaining() / md.getDigestLength()][md.getDigestLength()];
+            for (final byte[] sibling : path)
+                tag.get(sibling);
+
+            proofVerifications++;
+            final byte[] leaf = MerkleBatchSigner.leafHash(md, frame);
+            final byte[] root = MerkleTreeDigest.rootFromPath(md, leaf, path, index, count);
+            if (root == null)
+                return false;
+
+            if (count == verifiedCount && Arrays.equals(signature, verifiedSignature)
+                    && MessageDigest.isEqual(root, verifiedRoot))
+                return true;
+
+            signatureVerifications++;
+            final Signature verifier = CryptoEngineCache.getDefault().verifier(signatureAlgorithm, key);
+            verifier.update(root);
+            verifier.update(ByteBuffer.allocate(4).putInt(count).array());
+            if (!verifier.verify(signature))
+                return false;
+
+            verifiedSignature = signature;
+            verifiedRoot = root;
+            verifiedCount = count;
+            return true;
+        } catch (GeneralSecurityException e) {
+            // a malformed signature
+            return false;
+        }
+    }
+
+    /**
+     * @return number of public-key operations performed
+     */
+    public long getSignatureVerifications() {
+        return signatureVerifications;
+    }
+
+    /**
+     * @return number of audit paths checked
+     */
+    public long getProofVerifications() {
+        return proofVerifications;
+    }
+}
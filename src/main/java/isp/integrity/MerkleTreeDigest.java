@@ -0,0 +1,301 @@
+package isp.integrity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes a Merkle tree hash of a payload, hashing its chunks in parallel.
+ * <p/>
+ * The payload is split into chunks of a fixed size, the leaves of the tree.
+ * The tree has the shape defined in RFC 6962: a leaf is hashed as
+ * H(0x00 || chunk), an inner node as H(0x01 || left || right), and the left
+ * subtree of n leaves always holds the largest power of two smaller than n.
+ * The root therefore depends only on the payload, the chunk size and the
+ * hash algorithm, never on the number of threads used to compute it.
+ * <p/>
+ * Subtrees are computed as tasks of a ForkJoinPool; each worker thread reuses
+ * its own MessageDigest from the {@link CryptoEngineCache}.
+ */
+public class MerkleTreeDigest {
+    static final byte LEAF_PREFIX = 0x00, NODE_PREFIX = 0x01;
+
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    private static final ForkJoinPool DEFAULT_POOL = new ForkJoinPool();
+
+    /**
+     * Subtrees with fewer bytes than this are hashed by a single task.
+     */
+    private static final long SEQUENTIAL_THRESHOLD = 1024 * 1024;
+
+    /**
+     * Upper bound on the size of a single mapped region of a file.
+     */
+    private static final long MAX_REGION_SIZE = 1L << 30;
+
+    private final String algorithm;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    public MerkleTreeDigest(final String algorithm) throws GeneralSecurityException {
+        this(algorithm, DEFAULT_CHUNK_SIZE, DEFAULT_POOL);
+    }
+
+    /**
+     * @param algorithm message digest algorithm used for leaves and nodes
+     * @param chunkSize size of a leaf in bytes
+     * @param pool      pool that computes the subtrees
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public MerkleTreeDigest(final String algorithm, final int chunkSize, final ForkJoinPool pool)
+            throws GeneralSecurityException {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        CryptoEngineCache.getDefault().digest(algorithm);
+        this.algorithm = algorithm;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return the root of the tree over the whole array
+     */
+    public byte[] digest(final byte[] data) {
+        return digest(new Source(data.length) {
+            @Override
+            void update(final MessageDigest md, final long offset, final int length) {
+                md.update(data, (int) offset, length);
+            }
+        });
+    }
+
+    /**
+     * @return the root of the tree over the remaining bytes of the buffer
+     */
+    public byte[] digest(final ByteBuffer data) {
+        final ByteBuffer base = data.slice();
+        return digest(new Source(base.remaining()) {
+            @Override
+            void update(final MessageDigest md, final long offset, final int length) {
+                final ByteBuffer chunk = base.duplicate();
+                chunk.position((int) offset).limit((int) offset + length);
+                md.update(chunk);
+            }
+        });
+    }
+
+    /**
+     * @return the root of the tree over the contents of the file, which is
+     * memory-mapped rather than read onto the heap
+     */
+    public byte[] digest(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final long regionSize = Math.max(chunkSize, MAX_REGION_SIZE / chunkSize * chunkSize);
+            final ByteBuffer[] regions = new ByteBuffer[(int) ((size + regionSize - 1) / regionSize)];
+            for (int i = 0; i < regions.length; i++) {
+                final long position = i * regionSize;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(regionSize, size - position));
+            }
+
+            return digest(new Source(size) {
+                @Override
+                void update(final MessageDigest md, final long offset, final int length) {
+                    final ByteBuffer chunk = regions[(int) (offset / regionSize)].duplicate();
+                    final int position = (int) (offset % regionSize);
+                    chunk.position(position).limit(position + length);
+                    md.update(chunk);
+                }
+            });
+        }
+    }
+
+    private byte[] digest(final Source source) {
+        final long leaves = (source.size + chunkSize - 1) / chunkSize;
+        if (leaves == 0)
+            return engine().digest();
+
+        return pool.invoke(new Subtree(source, 0, leaves));
+    }
+
+    private MessageDigest engine() {
+        try {
+            return CryptoEngineCache.getDefault().digest(algorithm);
+        } catch (GeneralSecurityException e) {
+            // the algorithm was checked in the constructor
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the largest power of two smaller than n, for n > 1
+     */
+    static long split(final long n) {
+        return Long.highestOneBit(n - 1);
+    }
+
+    static byte[] nodeHash(final MessageDigest md, final byte[] left, final byte[] right) {
+        md.update(NODE_PREFIX);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    static byte[] leafHash(final MessageDigest md, final byte[] data, final int offset, final int length) {
+        md.update(LEAF_PREFIX);
+        md.update(data, offset, length);
+        return md.digest();
+    }
+
+    /**
+     * Computes the root over the leaf hashes and the audit path of every leaf
+     * (RFC 6962, section 2.1.1): paths.get(i) receives the sibling hashes of leaf i,
+     * from the leaf up to the root.
+     */
+    static byte[] root(final MessageDigest md, final byte[][] leaves, final List<List<byte[]>> paths) {
+        for (int i = 0; i < leaves.length; i++)
+            paths.add(new ArrayList<byte[]>());
+        return root(md, leaves, 0, leaves.length, paths);
+    }
+
+    private static byte[] root(final MessageDigest md, final byte[][] leaves, final int from, final int to,
+                               final List<List<byte[]>> paths) {
+        if (to - from == 1)
+            return leaves[from];
+
+        final int middle = from + (int) split(to - from);
+        final byte[] left = root(md, leaves, from, middle, paths);
+        final byte[] right = root(md, leaves, middle, to, paths);
+        for (int i = from; i < middle; i++)
+            paths.get(i).add(right);
+        for (int i = middle; i < to; i++)
+            paths.get(i).add(left);
+        return nodeHash(md, left, right);
+    }
+
+    /**
+     * Recomputes the root from a leaf hash and its audit path (RFC 9162,
+     * section 2.1.3.2).
+     *
+     * @param path  sibling hashes of the leaf, from the leaf up
+     * @param index position of the leaf
+     * @param count number of leaves in the tree
+     * @return the root or null if the path does not fit the tree
+     */
+    static byte[] rootFromPath(final MessageDigest md, final byte[] leaf, final byte[][] path, final long index,
+                               final long count) {
+        if (index < 0 || index >= count)
+            return null;
+
+        long fn = index, sn = count - 1;
+        byte[] hash = leaf;
+        for (final byte[] sibling : path) {
+            if (sn == 0)
+                return null;
+
+            if ((fn & 1) == 1 || fn == sn) {
+                hash = nodeHash(md, sibling, hash);
+                while ((fn & 1) == 0 && fn != 0) {
+                    fn >>= 1;
+                    sn >>= 1;
+                }
+            } else {
+                hash = nodeHash(md, hash, sibling);
+            }
+            fn >>= 1;
+            sn >>= 1;
+        }
+        return sn == 0 ? hash : null;
+    }
+
+    /**
+     * Random access to the bytes of the payload.
+     */
+    private static abstract class Source {
+        final long size;
+
+        Source(final long size) {
+            this.size = size;
+        }
+
+        abstract void update(MessageDigest md, long offset, int length);
+    }
+
+    private class Subtree extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Source source;
+        private final long from, to;
+
+        Subtree(final Source source, final long from, final long to) {
+            this.source = source;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected byte[] compute() {
+            if ((to - from) * chunkSize <= SEQUENTIAL_THRESHOLD || to - from == 1)
+                return hash(from, to);
+
+            final long middle = from + split(to - from);
+            final Subtree left = new Subtree(source, from, middle);
+            left.fork();
+            final byte[] right = new Subtree(source, middle, to).compute();
+            final byte[] leftHash = left.join();
+            return nodeHash(engine(), leftHash, right);
+        }
+
+        private byte[] hash(final long first, final long last) {
+            if (last - first == 1) {
+                final long offset = first * chunkSize;
+                final MessageDigest md = engine();
+                md.update(LEAF_PREFIX);
+                source.update(md, offset, (int) Math.min(chunkSize, source.size - offset));
+                return md.digest();
+            }
+
+            final long middle = first + split(last - first);
+            final byte[] left = hash(first, middle);
+            final byte[] right = hash(middle, last);
+            return nodeHash(engine(), left, right);
+        }
+    }
+
+    /**
+     * Prints the tree hash of the file given as the first argument.
+     * The optional second and third arguments select the algorithm
+     * (default SHA-256) and the chunk size in bytes.
+     */
+    public static void main(String[] args) throws IOException, GeneralSecurityException {
+        final Path file = Paths.get(args[0]);
+        final String algorithm = args.length > 1 ? args[1] : "SHA-256";
+        final int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CHUNK_SIZE;
+
+        final long start = System.nanoTime();
+        final byte[] root = new MerkleTreeDigest(algorithm, chunkSize, DEFAULT_POOL).digest(file);
+        final long nanos = System.nanoTime() - start;
+
+        System.out.println(algorithm + " tree: " + HexCodec.toHex(root));
+        System.out.printf("%.1f ms on %d threads%n", nanos / 1e6, DEFAULT_POOL.getParallelism());
+    }
+}
@@ -1,6 +1,5 @@
 package isp.integrity;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -40,7 +39,8 @@ public class MessageDigestExample {
          * STEP 4: Print out hash. Note we have to convert a byte array into
          * hexadecimal string representation.
          */
-        final String hashAsHex = DatatypeConverter.printHexBinary(hashed);
+        final char[] hashAsHex = new char[HexCodec.encodedLength(hashed.length)];
+        HexCodec.encode(hashed, 0, hashed.length, hashAsHex, 0);
         System.out.println(hashAsHex);
     }
 }
@@ -0,0 +1,77 @@
+package isp.integrity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FrameChannel} that reports every frame it passes on, and the time
+ * the caller was blocked, to the {@link AgentMetrics} of an agent. The nested
+ * classes meter a channel of which only one end is at hand.
+ */
+class MeteredFrameChannel implements FrameChannel {
+    private final Sender sender;
+    private final Receiver receiver;
+
+    MeteredFrameChannel(final FrameChannel channel, final AgentMetrics metrics) {
+        this.sender = new Sender(channel, metrics);
+        this.receiver = new Receiver(channel, metrics);
+    }
+
+    @Override
+    public void put(final Frame frame) throws InterruptedException {
+        sender.put(frame);
+    }
+
+    @Override
+    public Frame take() throws InterruptedException {
+        return receiver.take();
+    }
+
+    @Override
+    public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return receiver.poll(timeout, unit);
+    }
+
+    static final class Sender implements FrameSender {
+        private final FrameSender channel;
+        private final AgentMetrics metrics;
+
+        Sender(final FrameSender channel, final AgentMetrics metrics) {
+            this.channel = channel;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void put(final Frame frame) throws InterruptedException {
+            final long start = System.nanoTime();
+            channel.put(frame);
+            metrics.sent(System.nanoTime() - start);
+        }
+    }
+
+    static final class Receiver implements FrameReceiver {
+        private final FrameReceiver channel;
+        private final AgentMetrics metrics;
+
+        Receiver(final FrameReceiver channel, final AgentMetrics metrics) {
+            this.channel = channel;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Frame take() throws InterruptedException {
+            final long start = System.nanoTime();
+            final Frame frame = channel.take();
+            metrics.received(System.nanoTime() - start);
+            return frame;
+        }
+
+        @Override
+        public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+            final long start = System.nanoTime();
+            final Frame frame = channel.poll(timeout, unit);
+            if (frame != null)
+                metrics.received(System.nanoTime() - start);
+            return frame;
+        }
+    }
+}
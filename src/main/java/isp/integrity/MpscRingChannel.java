@@ -0,0 +1,55 @@
+package isp.integrity;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A ring channel for many sending threads and a single receiving thread,
+ * e.g. several agents that report to one.
+ * <p/>
+ * Senders claim a slot by advancing the tail with compare-and-set and then
+ * publish the frame into it. The receiver consumes slots in order and treats
+ * a claimed but not yet published slot as empty.
+ */
+public class MpscRingChannel extends RingChannel {
+    private final AtomicReferenceArray<Frame> ring;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+    public MpscRingChannel(final int capacity) {
+        this(capacity, WaitStrategy.YIELD);
+    }
+
+    public MpscRingChannel(final int capacity, final WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+        this.ring = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    @Override
+    public boolean offer(final Frame frame) {
+        if (frame == null)
+            throw new NullPointerException();
+
+        long t;
+        do {
+            t = tail.get();
+            if (t - head.get() >= capacity)
+                return false;
+        } while (!tail.compareAndSet(t, t + 1));
+
+        ring.lazySet((int) t & mask, frame);
+        return true;
+    }
+
+    @Override
+    public Frame poll() {
+        final long h = head.get();
+        final int index = (int) h & mask;
+        final Frame frame = ring.get(index);
+        if (frame == null)
+            return null;
+
+        ring.lazySet(index, null);
+        head.lazySet(h + 1);
+        return frame;
+    }
+}
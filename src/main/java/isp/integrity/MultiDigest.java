@@ -0,0 +1,166 @@
+package isp.integrity;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the digests of several algorithms, e.g. MD5, SHA-1 and SHA-256,
+ * in a single pass over the data.
+ * <p/>
+ * Every buffer given to update() is fed to all the digests, so the data is
+ * read from its source, or converted from a String, only once. Given an
+ * executor, the digests of a buffer are computed in parallel: the calling
+ * thread runs the first one and the executor the others, and update()
+ * returns when all of them have consumed the buffer, so the caller may reuse
+ * it right away. The hand-off costs a few microseconds per update, so the
+ * parallel mode pays off with buffers of tens of kilobytes and more, such as
+ * the chunks of a {@link StreamingDigest}, and on a machine with a core per
+ * digest.
+ * <p/>
+ * Like MessageDigest, an instance must not be shared between threads.
+ */
+public class MultiDigest {
+    private final String[] algorithms;
+    private final MessageDigest[] digests;
+    private final ExecutorService executor;
+
+    /**
+     * Computes the digests one after the other on the calling thread.
+     */
+    public MultiDigest(final String... algorithms) throws NoSuchAlgorithmException {
+        this(null, algorithms);
+    }
+
+    /**
+     * @param executor   executor that computes all digests but the first, or null for none
+     * @param algorithms digest algorithms, e.g. MD5, SHA-1, SHA-256
+     */
+    public MultiDigest(final ExecutorService executor, final String... algorithms) throws NoSuchAlgorithmException {
+        if (algorithms.length == 0)
+            throw new IllegalArgumentException("No algorithm given");
+
+        this.algorithms = algorithms.clone();
+        this.digests = new MessageDigest[algorithms.length];
+        for (int i = 0; i < algorithms.length; i++)
+            digests[i] = MessageDigest.getInstance(algorithms[i]);
+        this.executor = executor;
+    }
+
+    public void update(final byte[] data) {
+        update(data, 0, data.length);
+    }
+
+    public void update(final byte[] data, final int offset, final int length) {
+        if (executor == null) {
+            for (final MessageDigest digest : digests)
+                digest.update(data, offset, length);
+            return;
+        }
+
+        final List<Future<?>> others = new ArrayList<>(digests.length - 1);
+        for (int i = 1; i < digests.length; i++) {
+            final MessageDigest digest = digests[i];
+            others.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    digest.update(data, offset, length);
+                }
+            }));
+        }
+        digests[0].update(data, offset, length);
+        await(others);
+    }
+
+    /**
+     * Feeds the remaining bytes of the buffer to all digests and advances
+     * its position to its limit.
+     */
+    public void update(final ByteBuffer data) {
+        if (executor == null) {
+            for (final MessageDigest digest : digests)
+                digest.update(data.duplicate());
+            data.position(data.limit());
+            return;
+        }
+
+        final List<Future<?>> others = new ArrayList<>(digests.length - 1);
+        for (int i = 1; i < digests.length; i++) {
+            final MessageDigest digest = digests[i];
+            final ByteBuffer view = data.duplicate();
+            others.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    digest.update(view);
+                }
+            }));
+        }
+        digests[0].update(data.duplicate());
+        await(others);
+        data.position(data.limit());
+    }
+
+    /**
+     * Completes all digests and resets them.
+     *
+     * @return the digests by algorithm, in the order the algorithms were given
+     */
+    public Map<String, byte[]> digest() {
+        final Map<String, byte[]> results = new LinkedHashMap<>();
+        for (int i = 0; i < digests.length; i++)
+            results.put(algorithms[i], digests[i].digest());
+        return results;
+    }
+
+    /**
+     * @return the digests of the data, in the order the algorithms were given
+     */
+    public Map<String, byte[]> digest(final byte[] data) {
+        update(data);
+        return digest();
+    }
+
+    public void reset() {
+        for (final MessageDigest digest : digests)
+            digest.reset();
+    }
+
+    private static void await(final List<Future<?>> futures) {
+        try {
+            for (final Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Prints the MD5, SHA-1 and SHA-256 digests of the file given as the first
+     * argument, or of the message of MessageDigestExample if there is none.
+     */
+    public static void main(String[] args) throws IOException, NoSuchAlgorithmException {
+        final MultiDigest multiDigest = new MultiDigest("MD5", "SHA-1", "SHA-256");
+
+        final Map<String, byte[]> digests;
+        if (args.length > 0)
+            digests = new StreamingDigest().digest(Paths.get(args[0]), multiDigest);
+        else
+            digests = multiDigest.digest("We would like to provide data integrity.".getBytes("UTF-8"));
+
+        for (final Map.Entry<String, byte[]> digest : digests.entrySet())
+            System.out.println(digest.getKey() + ": " + HexCodec.toHex(digest.getValue()));
+    }
+}
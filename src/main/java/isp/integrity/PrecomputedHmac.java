@@ -0,0 +1,163 @@
+package isp.integrity;
+
+import java.security.DigestException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * HMAC (RFC 2104) that processes the padded key only once.
+ * <p/>
+ * A Mac processes the ipad and opad blocks of the key again for every message,
+ * which for short messages is about half of the work. Here the key blocks are
+ * absorbed into two MessageDigests when the HMAC is created; every message
+ * starts from clones of these primed digests, so only the message itself and
+ * the inner hash are processed. The tags are exactly those of
+ * Mac.getInstance with the same algorithm and key.
+ * <p/>
+ * Supported algorithms are HmacMD5, HmacSHA1, HmacSHA224, HmacSHA256,
+ * HmacSHA384 and HmacSHA512. An instance must not be shared between threads.
+ */
+public class PrecomputedHmac {
+    private static final byte IPAD = 0x36, OPAD = 0x5c;
+
+    private final String algorithm;
+    private final MessageDigest inner, outer;
+    private final byte[] innerHash;
+
+    /**
+     * Inner digest of the message in progress, null between messages.
+     */
+    private MessageDigest current;
+
+    /**
+     * @param algorithm HMAC algorithm, e.g. HmacMD5
+     * @param key       secret key
+     */
+    public PrecomputedHmac(final String algorithm, final Key key) throws GeneralSecurityException {
+        final MessageDigest digest = MessageDigest.getInstance(digestAlgorithm(algorithm));
+        final int blockSize = blockSize(algorithm);
+
+        byte[] secret = key.getEncoded();
+        if (secret == null)
+            throw new InvalidKeyException("Key has no encoding");
+        if (secret.length > blockSize)
+            secret = digest.digest(secret);
+
+        final byte[] pad = Arrays.copyOf(secret, blockSize);
+        for (int i = 0; i < blockSize; i++)
+            pad[i] ^= IPAD;
+        digest.update(pad);
+        this.inner = copy(digest);
+
+        digest.reset();
+        for (int i = 0; i < blockSize; i++)
+            pad[i] ^= IPAD ^ OPAD;
+        digest.update(pad);
+        this.outer = copy(digest);
+
+        Arrays.fill(pad, (byte) 0);
+        Arrays.fill(secret, (byte) 0);
+
+        this.algorithm = algorithm;
+        this.innerHash = new byte[inner.getDigestLength()];
+    }
+
+    static String digestAlgorithm(final String algorithm) throws NoSuchAlgorithmException {
+        switch (algorithm.toUpperCase(Locale.ENGLISH)) {
+            case "HMACMD5":
+                return "MD5";
+            case "HMACSHA1":
+                return "SHA-1";
+            case "HMACSHA224":
+                return "SHA-224";
+            case "HMACSHA256":
+                return "SHA-256";
+            case "HMACSHA384":
+                return "SHA-384";
+            case "HMACSHA512":
+                return "SHA-512";
+            default:
+                throw new NoSuchAlgorithmException("Unsupported HMAC algorithm " + algorithm);
+        }
+    }
+
+    static int blockSize(final String algorithm) {
+        final String name = algorithm.toUpperCase(Locale.ENGLISH);
+        return name.equals("HMACSHA384") || name.equals("HMACSHA512") ? 128 : 64;
+    }
+
+    private static MessageDigest copy(final MessageDigest digest) throws NoSuchAlgorithmException {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new NoSuchAlgorithmException(digest.getAlgorithm() + " of provider "
+                    + digest.getProvider().getName() + " cannot be cloned", e);
+        }
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getMacLength() {
+        return outer.getDigestLength();
+    }
+
+    public byte[] doFinal(final byte[] message) {
+        final byte[] tag = new byte[getMacLength()];
+        doFinal(message, 0, message.length, tag, 0);
+        return tag;
+    }
+
+    /**
+     * Computes the HMAC of len bytes of message, starting at offset, into out.
+     *
+     * @return length of the HMAC
+     */
+    public int doFinal(final byte[] message, final int offset, final int len, final byte[] out, final int outOffset) {
+        update(message, offset, len);
+        return doFinal(out, outOffset);
+    }
+
+    /**
+     * Adds len bytes of the message in progress, starting at offset.
+     */
+    public void update(final byte[] message, final int offset, final int len) {
+        if (current == null)
+            current = clone(inner);
+        current.update(message, offset, len);
+    }
+
+    /**
+     * Completes the HMAC of the message in progress into out and starts a new message.
+     *
+     * @return length of the HMAC
+     */
+    public int doFinal(final byte[] out, final int outOffset) {
+        final MessageDigest innerDigest = current == null ? clone(inner) : current;
+        current = null;
+        try {
+            innerDigest.digest(innerHash, 0, innerHash.length);
+
+            final MessageDigest outerDigest = clone(outer);
+            outerDigest.update(innerHash);
+            return outerDigest.digest(out, outOffset, out.length - outOffset);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MessageDigest clone(final MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone();
+        } catch (CloneNotSupportedException e) {
+            // cloning was tried in the constructor
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package isp.integrity;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FrameChannel} backed by a thread-safe blocking queue.
+ */
+public class QueueFrameChannel implements FrameChannel {
+    private final BlockingQueue<Frame> queue;
+
+    /**
+     * Creates an unbounded channel backed by a linked-list queue.
+     */
+    public QueueFrameChannel() {
+        this(new LinkedBlockingQueue<Frame>());
+    }
+
+    public QueueFrameChannel(final BlockingQueue<Frame> queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public void put(final Frame frame) throws InterruptedException {
+        queue.put(frame);
+    }
+
+    @Override
+    public Frame take() throws InterruptedException {
+        return queue.take();
+    }
+
+    @Override
+    public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+}
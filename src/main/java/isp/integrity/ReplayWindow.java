@@ -0,0 +1,110 @@
+package isp.integrity;
+
+/**
+ * Detects replayed messages of a single sender by their sequence numbers,
+ * with the sliding-window bitmap of IPsec (RFC 4303, section 3.4.3, with
+ * the ring of words of RFC 6479).
+ * <p/>
+ * The window remembers which of the last size sequence numbers below the
+ * highest one seen have been received. A sequence number is fresh if it is
+ * higher than any seen so far, or within the window and not yet received;
+ * numbers that fell behind the window are rejected, since they can no longer
+ * be told apart from replays. Checks and updates take constant time and the
+ * window never allocates after construction.
+ * <p/>
+ * As in IPsec, a receiver checks a message with {@link #isFresh(long)}, then
+ * verifies its tag, which must cover the sequence number, and only then
+ * records it with {@link #mark(long)}, so that forged messages cannot move
+ * the window. A window must not be shared between threads.
+ */
+public class ReplayWindow {
+    public static final int DEFAULT_SIZE = 1024;
+
+    private final long size;
+    private final long[] bitmap;
+    private final int mask;
+
+    private long highest = -1;
+
+    /**
+     * @param size number of sequence numbers below the highest one that are
+     *             still accepted; rounded up to a multiple of 64
+     */
+    public ReplayWindow(final int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("size must be positive");
+
+        final int words = Integer.highestOneBit((size + 63) / 64) << 1;
+        this.size = (size + 63) / 64 * 64L;
+        this.bitmap = new long[words];
+        this.mask = words - 1;
+    }
+
+    public ReplayWindow() {
+        this(DEFAULT_SIZE);
+    }
+
+    /**
+     * @return whether a message with the sequence number may be accepted
+     */
+    public boolean isFresh(final long sequence) {
+        if (sequence < 0)
+            return false;
+        if (sequence > highest)
+            return true;
+        if (highest - sequence >= size)
+            return false;
+
+        return (bitmap[(int) (sequence >>> 6) & mask] & (1L << sequence)) == 0;
+    }
+
+    /**
+     * Records a message with the sequence number as received and slides the
+     * window if the number is the highest so far.
+     */
+    public void mark(final long sequence) {
+        if (sequence < 0)
+            throw new IllegalArgumentException("Negative sequence number");
+
+        if (sequence > highest) {
+            final long current = highest < 0 ? -1 : highest >>> 6;
+            final long next = sequence >>> 6;
+            final long cleared = Math.min(next - current, bitmap.length);
+            for (long i = 1; i <= cleared; i++)
+                bitmap[(int) (current + i) & mask] = 0;
+            highest = sequence;
+        } else if (highest - sequence >= size) {
+            return;
+        }
+
+        bitmap[(int) (sequence >>> 6) & mask] |= 1L << sequence;
+    }
+
+    /**
+     * Checks and records the sequence number in one step, for messages whose
+     * tag has already been verified.
+     *
+     * @return false if the message is a replay or too old
+     */
+    public boolean accept(final long sequence) {
+        if (!isFresh(sequence))
+            return false;
+
+        mark(sequence);
+        return true;
+    }
+
+    /**
+     * @return the highest sequence number received, or -1
+     */
+    public long getHighest() {
+        return highest;
+    }
+
+    /**
+     * @return the number of sequence numbers below the highest one that are tracked
+     */
+    public long getSize() {
+        return size;
+    }
+}
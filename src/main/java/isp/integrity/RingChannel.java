@@ -0,0 +1,83 @@
+package isp.integrity;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, lock-free {@link FrameChannel} built on a ring buffer.
+ * <p/>
+ * Frames are stored in a preallocated array, so sending does not allocate
+ * and neither side takes a lock. When the ring is full or empty the blocking
+ * operations wait according to the {@link WaitStrategy}.
+ */
+public abstract class RingChannel implements FrameChannel {
+    protected final int capacity, mask;
+    private final WaitStrategy waitStrategy;
+
+    /**
+     * @param capacity     number of frames the ring holds, rounded up to a power of two
+     * @param waitStrategy how to wait while the ring is full or empty
+     */
+    protected RingChannel(final int capacity, final WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be between 1 and 2^30");
+
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Sends the frame if there is space in the ring.
+     *
+     * @return false if the ring is full
+     */
+    public abstract boolean offer(Frame frame);
+
+    /**
+     * Receives the next frame if there is one.
+     *
+     * @return the frame or null if the ring is empty
+     */
+    public abstract Frame poll();
+
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public void put(final Frame frame) throws InterruptedException {
+        while (!offer(frame)) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            waitStrategy.idle();
+        }
+    }
+
+    @Override
+    public Frame take() throws InterruptedException {
+        Frame frame;
+        while ((frame = poll()) == null) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            waitStrategy.idle();
+        }
+        return frame;
+    }
+
+    @Override
+    public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        Frame frame = poll();
+        if (frame != null || timeout <= 0)
+            return frame;
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while ((frame = poll()) == null) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (System.nanoTime() - deadline >= 0)
+                return null;
+            waitStrategy.idle();
+        }
+        return frame;
+    }
+}
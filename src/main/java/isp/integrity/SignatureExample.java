@@ -1,13 +1,9 @@
 package isp.integrity;
 
-import javax.xml.bind.DatatypeConverter;
 import java.io.UnsupportedEncodingException;
-import java.security.InvalidKeyException;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.NoSuchAlgorithmException;
 import java.security.Signature;
-import java.security.SignatureException;
 
 /**
  * I0->I1->A1->B1->A2->B2->[A3]->B3
@@ -25,8 +21,7 @@ import java.security.SignatureException;
  * @date 12. 12. 2011
  */
 public class SignatureExample {
-    public static void main(String[] args)
-            throws NoSuchAlgorithmException, InvalidKeyException, SignatureException, UnsupportedEncodingException {
+    public static void main(String[] args) throws GeneralSecurityException, UnsupportedEncodingException {
 
         // The message we want to sign
         final String text = "We would like to provide data integrity.";
@@ -36,13 +31,15 @@ public class SignatureExample {
          * We create a public-private key pair.
          * Standard Algorithm Names
          * http://docs.oracle.com/javase/6/docs/technotes/guides/security/StandardNames.html
+         * The scheme is given as the first argument (rsa, ecdsa or ed25519).
          */
-        final KeyPair key = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final SignatureScheme scheme = args.length > 0 ? SignatureScheme.fromName(args[0]) : SignatureScheme.RSA;
+        final KeyPair key = scheme.generateKeyPair();
 
         /**
          * Alice creates Signature object defining Signature algorithm.
          */
-        final Signature signatureAlg = Signature.getInstance("SHA1withRSA");
+        final Signature signatureAlg = Signature.getInstance(scheme.getSignatureAlgorithm());
 
         /**
          * We initialize the signature object with
@@ -54,13 +51,13 @@ public class SignatureExample {
         // Finally, we load the message into the signature object and sign it
         signatureAlg.update(text.getBytes("UTF-8"));
         final byte[] signedText = signatureAlg.sign();
-        System.out.println("Signature: " + DatatypeConverter.printHexBinary(signedText));
+        System.out.println("Signature: " + HexCodec.toHex(signedText));
 
         /**
          * To verify the signature, we create another signature object
          * and specify its algorithm
          */
-        final Signature signatureAlg2 = Signature.getInstance("SHA1withRSA");
+        final Signature signatureAlg2 = Signature.getInstance(scheme.getSignatureAlgorithm());
 
         /**
          * We have to initialize it with the mode. But to verify the algorithm,
@@ -0,0 +1,91 @@
+package isp.integrity;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Locale;
+
+/**
+ * Signature schemes the agents can sign with: a key pair algorithm and the
+ * matching signature algorithm.
+ * <p/>
+ * An agent that signs or verifies is given the scheme's signature algorithm
+ * and key in place of its MAC algorithm and key, see {@link Agent#signer()}
+ * and {@link Agent#verifier()}.
+ */
+public enum SignatureScheme {
+    /**
+     * RSA with 2048-bit keys and SHA-1, as in the original exercises.
+     * Slow key generation and signing, 256-byte signatures.
+     */
+    RSA("RSA", "SHA1withRSA") {
+        @Override
+        void initialize(final KeyPairGenerator generator) {
+            generator.initialize(2048);
+        }
+    },
+    /**
+     * ECDSA over the NIST P-256 curve with SHA-256; DER-encoded signatures
+     * of about 70 bytes.
+     */
+    ECDSA("EC", "SHA256withECDSA") {
+        @Override
+        void initialize(final KeyPairGenerator generator) throws GeneralSecurityException {
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+        }
+    },
+    /**
+     * EdDSA over Curve25519 with 64-byte signatures; requires Java 15 or later.
+     */
+    ED25519("Ed25519", "Ed25519") {
+        @Override
+        void initialize(final KeyPairGenerator generator) {
+        }
+    };
+
+    private final String keyAlgorithm, signatureAlgorithm;
+
+    SignatureScheme(final String keyAlgorithm, final String signatureAlgorithm) {
+        this.keyAlgorithm = keyAlgorithm;
+        this.signatureAlgorithm = signatureAlgorithm;
+    }
+
+    abstract void initialize(KeyPairGenerator generator) throws GeneralSecurityException;
+
+    public String getKeyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public KeyPair generateKeyPair() throws GeneralSecurityException {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance(keyAlgorithm);
+        initialize(generator);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * @return whether the JVM provides the scheme
+     */
+    public boolean isAvailable() {
+        try {
+            KeyPairGenerator.getInstance(keyAlgorithm);
+            Signature.getInstance(signatureAlgorithm);
+            return true;
+        } catch (NoSuchAlgorithmException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @param name name of the scheme, in any case, e.g. ecdsa
+     */
+    public static SignatureScheme fromName(final String name) {
+        return valueOf(name.toUpperCase(Locale.ENGLISH));
+    }
+}
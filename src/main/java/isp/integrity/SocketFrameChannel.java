@@ -0,0 +1,329 @@
+package isp.integrity;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FrameChannel} over a socket, so that agents can run in separate
+ * processes: frames put into the channel are taken from the channel at the
+ * other end of the connection, and vice versa. An agent may therefore use the
+ * same channel as its outgoing and incoming channel.
+ * <p/>
+ * The socket is used in non-blocking mode, with a selector for each direction,
+ * so that a sending and a receiving thread can use the channel at the same time.
+ * A frame is sent as
+ * <pre>
+ *   sequence (8) | payload length (4) | tag length (4) | payload | tag
+ * </pre>
+ * It is copied chunk by chunk into a reusable direct buffer and written from
+ * there; written from heap arrays, the JDK would copy every frame into a
+ * temporary direct buffer of its own. Frames are received through a direct
+ * buffer as well.
+ * <p/>
+ * Both directions can be interrupted while no part of a frame has been
+ * transferred; the call then throws an InterruptedException and the stream
+ * stays intact. An interrupt that arrives once a frame has started is held
+ * back until the frame is complete and then re-asserted, since giving up
+ * halfway would leave the peer out of step. If the interrupt hits the socket
+ * in the middle of a system call, the JDK closes the socket; the call then
+ * throws an InterruptedException and the channel is unusable.
+ * <p/>
+ * Connections are made over TCP, with Nagle's algorithm disabled, or over Unix
+ * domain sockets when the JVM supports them (Java 16 or later), see
+ * {@link #unixAddress(String)}. I/O errors and a connection closed by the peer
+ * are reported as an {@link IllegalStateException}.
+ */
+public class SocketFrameChannel implements FrameChannel, Closeable {
+    public static final int HEADER_LENGTH = 16;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    private final SocketChannel socket;
+    private final Selector readSelector, writeSelector;
+    private final int maxFrameLength;
+
+    private final ByteBuffer writeBuffer, readBuffer;
+    /**
+     * Interrupt held back while the receiving thread reads the rest of a frame.
+     */
+    private boolean readInterrupted;
+
+    /**
+     * @param socket         connected socket, the channel takes ownership of it
+     * @param bufferSize     size of the send and the receive buffer
+     * @param maxFrameLength maximal length of payload and tag of a received frame
+     */
+    public SocketFrameChannel(final SocketChannel socket, final int bufferSize, final int maxFrameLength)
+            throws IOException {
+        if (bufferSize < HEADER_LENGTH || maxFrameLength < 0)
+            throw new IllegalArgumentException("Invalid buffer size or frame length");
+
+        this.socket = socket;
+        this.maxFrameLength = maxFrameLength;
+        this.writeBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.readBuffer.flip();
+
+        socket.configureBlocking(false);
+        if (socket.getLocalAddress() instanceof InetSocketAddress)
+            socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+        this.readSelector = Selector.open();
+        this.writeSelector = Selector.open();
+        socket.register(readSelector, SelectionKey.OP_READ);
+        socket.register(writeSelector, SelectionKey.OP_WRITE);
+    }
+
+    public SocketFrameChannel(final SocketChannel socket) throws IOException {
+        this(socket, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Opens a server socket, over TCP for an {@link InetSocketAddress} and over
+     * a Unix domain socket for an address from {@link #unixAddress(String)}.
+     */
+    public static ServerSocketChannel listen(final SocketAddress address) throws IOException {
+        final ServerSocketChannel server = address instanceof InetSocketAddress
+                ? ServerSocketChannel.open() : openUnixServer();
+        server.bind(address);
+        return server;
+    }
+
+    /**
+     * Waits for a connection to the server socket.
+     */
+    public static SocketFrameChannel accept(final ServerSocketChannel server) throws IOException {
+        return new SocketFrameChannel(server.accept());
+    }
+
+    /**
+     * Connects to a server socket opened with {@link #listen(SocketAddress)}.
+     */
+    public static SocketFrameChannel connect(final SocketAddress address) throws IOException {
+        return new SocketFrameChannel(SocketChannel.open(address));
+    }
+
+    /**
+     * @param path file of the socket; it must not exist when listening
+     * @return the address of a Unix domain socket
+     * @throws UnsupportedOperationException if the JVM does not support them
+     */
+    public static SocketAddress unixAddress(final String path) {
+        try {
+            return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                    .getMethod("of", String.class).invoke(null, path);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later", e);
+        }
+    }
+
+    /**
+     * @return whether the JVM supports Unix domain socket channels
+     */
+    public static boolean isUnixDomainSupported() {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    private static ServerSocketChannel openUnixServer() throws IOException {
+        try {
+            final ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            return (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                    .invoke(null, unix);
+        } catch (IllegalArgumentException | ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unix domain sockets require Java 16 or later", e);
+        }
+    }
+
+    @Override
+    public void put(final Frame frame) throws InterruptedException {
+        // nothing has been written yet, so the stream stays intact
+        checkInterrupted();
+
+        final byte[] payload = frame.payloadArray(), tag = frame.tagArray();
+        boolean interrupted = false;
+        try {
+            writeBuffer.clear();
+            writeBuffer.putLong(frame.getSequence()).putInt(payload.length).putInt(tag.length);
+            int payloadOffset = 0, tagOffset = 0;
+            while (true) {
+                payloadOffset += copy(payload, payloadOffset);
+                if (payloadOffset == payload.length)
+                    tagOffset += copy(tag, tagOffset);
+                writeBuffer.flip();
+                if (!writeBuffer.hasRemaining())
+                    break;
+
+                // a pending interrupt would close the socket in write()
+                interrupted |= Thread.interrupted();
+                final int written = socket.write(writeBuffer);
+                writeBuffer.compact();
+                if (written == 0) {
+                    interrupted |= Thread.interrupted();
+                    writeSelector.select();
+                    writeSelector.selectedKeys().clear();
+                }
+            }
+        } catch (ClosedByInterruptException e) {
+            throw interruptedBy(e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot send frame", e);
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copies as much of the rest of the array as fits into the write buffer.
+     *
+     * @return number of bytes copied
+     */
+    private int copy(final byte[] bytes, final int offset) {
+        final int n = Math.min(writeBuffer.remaining(), bytes.length - offset);
+        writeBuffer.put(bytes, offset, n);
+        return n;
+    }
+
+    @Override
+    public Frame take() throws InterruptedException {
+        return receive(false, 0);
+    }
+
+    /**
+     * Waits up to the timeout for the header of a frame; once it has arrived,
+     * the rest of the frame is awaited without a time limit.
+     */
+    @Override
+    public Frame poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return receive(true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Closes the connection; the peer receives an end of stream.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            socket.close();
+        } finally {
+            readSelector.close();
+            writeSelector.close();
+        }
+    }
+
+    /**
+     * @return the local address of the connection
+     */
+    public SocketAddress getLocalAddress() throws IOException {
+        return socket.getLocalAddress();
+    }
+
+    private Frame receive(final boolean timed, final long deadline) throws InterruptedException {
+        try {
+            if (!fill(HEADER_LENGTH, timed, deadline, true))
+                return null;
+
+            final long sequence = readBuffer.getLong();
+            final int payloadLength = readBuffer.getInt(), tagLength = readBuffer.getInt();
+            if (payloadLength < 0 || tagLength < 0 || (long) payloadLength + tagLength > maxFrameLength)
+                throw new IllegalStateException("Invalid frame of " + payloadLength + " + " + tagLength + " bytes");
+
+            final byte[] payload = readFully(payloadLength);
+            final byte[] tag = readFully(tagLength);
+            return new Frame(sequence, payload, tag);
+        } catch (ClosedByInterruptException e) {
+            throw interruptedBy(e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot receive frame", e);
+        } finally {
+            if (readInterrupted) {
+                readInterrupted = false;
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private byte[] readFully(final int length) throws IOException, InterruptedException {
+        final byte[] bytes = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            if (!readBuffer.hasRemaining())
+                fill(1, false, 0, false);
+            final int n = Math.min(readBuffer.remaining(), length - offset);
+            readBuffer.get(bytes, offset, n);
+            offset += n;
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads until at least count bytes are buffered.
+     *
+     * @param interruptible whether an interrupt ends the wait; the bytes read so
+     *                      far stay buffered, so this is safe until a header has
+     *                      been consumed. Otherwise the interrupt is held back.
+     * @return false if the deadline passed first
+     */
+    private boolean fill(final int count, final boolean timed, final long deadline, final boolean interruptible)
+            throws IOException, InterruptedException {
+        while (readBuffer.remaining() < count) {
+            // a pending interrupt would close the socket in read()
+            if (interruptible)
+                checkInterrupted();
+            else
+                readInterrupted |= Thread.interrupted();
+            readBuffer.compact();
+            final int read;
+            try {
+                read = socket.read(readBuffer);
+            } finally {
+                readBuffer.flip();
+            }
+
+            if (read < 0)
+                throw new IllegalStateException("Connection closed by peer");
+            if (read > 0)
+                continue;
+
+            if (!timed) {
+                readSelector.select();
+            } else {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                // select(0) would wait forever
+                readSelector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+            }
+            readSelector.selectedKeys().clear();
+        }
+        return true;
+    }
+
+    private static InterruptedException interruptedBy(final ClosedByInterruptException e) {
+        final InterruptedException interrupted = new InterruptedException("Interrupted during I/O, channel closed");
+        interrupted.initCause(e);
+        return interrupted;
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+}
@@ -0,0 +1,68 @@
+package isp.integrity;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A ring channel for a single sending and a single receiving thread.
+ * <p/>
+ * Each side owns one counter and publishes it with an ordered store; the
+ * other side's counter is cached and re-read only when the ring looks full
+ * or empty.
+ */
+public class SpscRingChannel extends RingChannel {
+    private final Frame[] ring;
+    private final AtomicLong head = new AtomicLong(), tail = new AtomicLong();
+
+    /**
+     * Owned by the sender: last value of head it has read.
+     */
+    private long headCache;
+    /**
+     * Owned by the receiver: last value of tail it has read.
+     */
+    private long tailCache;
+
+    public SpscRingChannel(final int capacity) {
+        this(capacity, WaitStrategy.YIELD);
+    }
+
+    public SpscRingChannel(final int capacity, final WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+        this.ring = new Frame[this.capacity];
+    }
+
+    @Override
+    public boolean offer(final Frame frame) {
+        if (frame == null)
+            throw new NullPointerException();
+
+        final long t = tail.get();
+        if (t - headCache >= capacity) {
+            headCache = head.get();
+            if (t - headCache >= capacity)
+                return false;
+        }
+
+        ring[(int) t & mask] = frame;
+        // publishes the slot to the receiver
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    @Override
+    public Frame poll() {
+        final long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache)
+                return null;
+        }
+
+        final int index = (int) h & mask;
+        final Frame frame = ring[index];
+        ring[index] = null;
+        // hands the slot back to the sender
+        head.lazySet(h + 1);
+        return frame;
+    }
+}
@@ -0,0 +1,194 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Map;
+
+/**
+ * Computes message digests and HMACs of files without loading them onto the heap.
+ * <p/>
+ * The file is either memory-mapped region by region ({@link Mode#MAPPED}) or read
+ * into a reusable direct buffer ({@link Mode#DIRECT}). In both cases the data is
+ * handed to the engine with update(ByteBuffer), so heap usage does not depend on
+ * the size of the file.
+ * <p/>
+ * An instance owns its read buffer and must not be shared between threads.
+ */
+public class StreamingDigest {
+
+    public enum Mode {
+        /**
+         * Map consecutive regions of the file into memory.
+         */
+        MAPPED,
+        /**
+         * Read consecutive chunks of the file into a direct buffer.
+         */
+        DIRECT
+    }
+
+    public static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final Mode mode;
+    private final int chunkSize;
+    private ByteBuffer buffer;
+
+    public StreamingDigest() {
+        this(Mode.MAPPED);
+    }
+
+    public StreamingDigest(final Mode mode) {
+        this(mode, mode == Mode.MAPPED ? DEFAULT_REGION_SIZE : DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param mode      how the file is read
+     * @param chunkSize size of a mapped region or of the direct read buffer
+     */
+    public StreamingDigest(final Mode mode, final int chunkSize) {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        this.mode = mode;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Computes the message digest of the file.
+     */
+    public Result digest(final Path file, final MessageDigest digest) throws IOException {
+        final long start = System.nanoTime();
+        final long size = read(file, new Sink() {
+            @Override
+            void update(final ByteBuffer data) {
+                digest.update(data);
+            }
+        });
+        return new Result(digest.digest(), size, System.nanoTime() - start);
+    }
+
+    /**
+     * Computes the digests of several algorithms in one read of the file.
+     *
+     * @return the digests by algorithm
+     */
+    public Map<String, byte[]> digest(final Path file, final MultiDigest digest) throws IOException {
+        read(file, new Sink() {
+            @Override
+            void update(final ByteBuffer data) {
+                digest.update(data);
+            }
+        });
+        return digest.digest();
+    }
+
+    /**
+     * Computes the HMAC of the file with an initialized Mac.
+     */
+    public Result mac(final Path file, final Mac mac) throws IOException {
+        final long start = System.nanoTime();
+        final long size = read(file, new Sink() {
+            @Override
+            void update(final ByteBuffer data) {
+                mac.update(data);
+            }
+        });
+        return new Result(mac.doFinal(), size, System.nanoTime() - start);
+    }
+
+    private long read(final Path file, final Sink sink) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (mode == Mode.MAPPED)
+                return readMapped(channel, sink);
+            else
+                return readDirect(channel, sink);
+        }
+    }
+
+    private long readMapped(final FileChannel channel, final Sink sink) throws IOException {
+        final long size = channel.size();
+        for (long position = 0; position < size; position += chunkSize) {
+            final long length = Math.min(chunkSize, size - position);
+            sink.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        }
+        return size;
+    }
+
+    private long readDirect(final FileChannel channel, final Sink sink) throws IOException {
+        if (buffer == null)
+            buffer = ByteBuffer.allocateDirect(chunkSize);
+
+        long size = 0;
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            size += buffer.remaining();
+            sink.update(buffer);
+            buffer.clear();
+        }
+        return size;
+    }
+
+    private static abstract class Sink {
+        abstract void update(ByteBuffer data);
+    }
+
+    /**
+     * The digest or HMAC of a file together with the time it took to compute it.
+     */
+    public static class Result {
+        private final byte[] value;
+        private final long bytes, nanos;
+
+        Result(final byte[] value, final long bytes, final long nanos) {
+            this.value = value;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public byte[] getValue() {
+            return value.clone();
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return processed megabytes (10^6 bytes) per second
+         */
+        public double getThroughput() {
+            return nanos == 0 ? 0 : bytes * 1e3 / nanos;
+        }
+    }
+
+    /**
+     * Prints the digest of the file given as the first argument.
+     * The optional second and third arguments select the algorithm
+     * (default SHA-256) and the mode (default MAPPED).
+     */
+    public static void main(String[] args) throws IOException, GeneralSecurityException {
+        final Path file = Paths.get(args[0]);
+        final String algorithm = args.length > 1 ? args[1] : "SHA-256";
+        final Mode mode = args.length > 2 ? Mode.valueOf(args[2]) : Mode.MAPPED;
+
+        final Result result = new StreamingDigest(mode)
+                .digest(file, MessageDigest.getInstance(algorithm));
+
+        System.out.println(algorithm + ": " + HexCodec.toHex(result.getValue()));
+        System.out.printf("%d bytes in %.1f ms, %.1f MB/s%n",
+                result.getBytes(), result.getNanos() / 1e6, result.getThroughput());
+    }
+}
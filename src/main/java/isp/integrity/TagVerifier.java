@@ -0,0 +1,147 @@
+package isp.integrity;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * Verifies message digests and HMACs without creating garbage and without
+ * leaking through timing how many leading bytes of a forged tag were correct.
+ * <p/>
+ * The expected tag is computed into a buffer owned by the verifier and compared
+ * with the received one in constant time, unlike Arrays.equals, which returns at
+ * the first difference. With a MessageDigest the verification path does not
+ * allocate at all. HMAC verification is not allocation-free: the SunJCE
+ * implementation of Mac.doFinal(byte[], int) allocates one short internal
+ * array, and a {@link PrecomputedHmac} clones its two primed digests for
+ * every message, which is still cheaper than reprocessing the key pads.
+ * <p/>
+ * A verifier wraps a single engine and must not be shared between threads.
+ */
+public abstract class TagVerifier {
+    private final byte[] expected;
+    private final byte[] sequence = new byte[8];
+
+    private TagVerifier(final int tagLength) {
+        if (tagLength < 1)
+            throw new IllegalArgumentException("Unknown tag length");
+
+        this.expected = new byte[tagLength];
+    }
+
+    /**
+     * @param mac an initialized Mac
+     * @return a verifier of HMACs computed with the Mac's algorithm and key
+     */
+    public static TagVerifier forMac(final Mac mac) {
+        return new TagVerifier(mac.getMacLength()) {
+            @Override
+            void update(final byte[] payload, final int offset, final int len) {
+                mac.update(payload, offset, len);
+            }
+
+            @Override
+            void finish(final byte[] out) {
+                try {
+                    mac.doFinal(out, 0);
+                } catch (ShortBufferException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return a verifier of HMACs computed with the precomputed key state
+     */
+    public static TagVerifier forHmac(final PrecomputedHmac hmac) {
+        return new TagVerifier(hmac.getMacLength()) {
+            @Override
+            void update(final byte[] payload, final int offset, final int len) {
+                hmac.update(payload, offset, len);
+            }
+
+            @Override
+            void finish(final byte[] out) {
+                hmac.doFinal(out, 0);
+            }
+        };
+    }
+
+    /**
+     * @return a verifier of message digests computed with the digest's algorithm
+     */
+    public static TagVerifier forDigest(final MessageDigest digest) {
+        return new TagVerifier(digest.getDigestLength()) {
+            @Override
+            void update(final byte[] payload, final int offset, final int len) {
+                digest.update(payload, offset, len);
+            }
+
+            @Override
+            void finish(final byte[] out) {
+                try {
+                    digest.digest(out, 0, out.length);
+                } catch (DigestException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    abstract void update(byte[] payload, int offset, int len);
+
+    abstract void finish(byte[] out);
+
+    public int getTagLength() {
+        return expected.length;
+    }
+
+    /**
+     * Checks whether tag, starting at tagOffset, is the correct tag of len bytes of
+     * payload starting at offset.
+     *
+     * @return true if the tag matches; false if it differs or is too short
+     */
+    public boolean verify(final byte[] payload, final int offset, final int len, final byte[] tag,
+                          final int tagOffset) {
+        update(payload, offset, len);
+        finish(expected);
+        if (tag.length - tagOffset < expected.length)
+            return false;
+
+        return isEqual(expected, 0, tag, tagOffset, expected.length);
+    }
+
+    /**
+     * Checks the tag of the frame, which must have exactly the expected length.
+     */
+    public boolean verify(final Frame frame) {
+        return frame.tagLength() == expected.length
+                && verify(frame.payloadArray(), 0, frame.payloadLength(), frame.tagArray(), 0);
+    }
+
+    /**
+     * Checks the tag of a frame whose tag covers its sequence number, encoded
+     * as by {@link Frame#sequenceBytes(long)}, followed by the payload.
+     */
+    public boolean verifySequenced(final Frame frame) {
+        if (frame.tagLength() != expected.length)
+            return false;
+
+        Frame.encodeSequence(frame.getSequence(), sequence, 0);
+        update(sequence, 0, sequence.length);
+        return verify(frame.payloadArray(), 0, frame.payloadLength(), frame.tagArray(), 0);
+    }
+
+    /**
+     * Compares two ranges in time that depends only on their length.
+     */
+    static boolean isEqual(final byte[] a, final int aOffset, final byte[] b, final int bOffset, final int len) {
+        int difference = 0;
+        for (int i = 0; i < len; i++)
+            difference |= a[aOffset + i] ^ b[bOffset + i];
+        return difference == 0;
+    }
+}
@@ -0,0 +1,228 @@
+package isp.integrity;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers signatures that verified, so that a copy of an already verified
+ * message, e.g. a retransmit or a broadcast received by several agents, is
+ * accepted without another public-key operation.
+ * <p/>
+ * An entry is keyed by the signature algorithm, the SHA-256 fingerprint of the
+ * signee's public key, the SHA-256 digest of the signed data and the signature
+ * itself, so a hit means that exactly this signature over exactly this data was
+ * verified with the same key before. Only positive results are cached: a forged
+ * message is verified, and rejected, every time. Entries expire a fixed time
+ * after the verification, so that a revoked key stops being trusted, and the
+ * least recently used entries are evicted beyond the capacity.
+ * <p/>
+ * The fingerprint of a key is computed the first time the key is seen and
+ * kept as long as the key is in use, so a lookup only digests the data.
+ * <p/>
+ * The cache is thread-safe and may be shared by the receiving agents.
+ */
+public class VerificationCache {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private final Map<CacheKey, Long> verified;
+    private final Map<PublicKey, byte[]> fingerprints = new WeakHashMap<>();
+
+    /**
+     * @param maxEntries maximal number of cached signatures
+     * @param ttl        time after which a verification must be repeated
+     * @param unit       unit of the ttl
+     */
+    public VerificationCache(final int maxEntries, final long ttl, final TimeUnit unit) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive");
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.verified = new LinkedHashMap<CacheKey, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<CacheKey, Long> eldest) {
+                if (size() > VerificationCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Verifies a signature over the concatenation of the data, unless the same
+     * signature over the same data has already been verified with the key.
+     *
+     * @param verifier  Signature initialized for verification with key
+     * @param key       public key of the signee
+     * @param signature the signature
+     * @param data      signed data, in the order in which it was signed
+     * @return whether the signature is valid
+     * @throws SignatureException if the signature cannot be processed
+     */
+    public boolean verify(final Signature verifier, final PublicKey key, final byte[] signature,
+                          final byte[]... data) throws SignatureException {
+        final CacheKey id = key(verifier.getAlgorithm(), key, signature, data);
+        if (lookup(id)) {
+            hits.incrementAndGet();
+            return true;
+        }
+
+        misses.incrementAndGet();
+        for (final byte[] part : data)
+            verifier.update(part);
+        if (!verifier.verify(signature))
+            return false;
+
+        synchronized (verified) {
+            verified.put(id, System.nanoTime() + ttlNanos);
+        }
+        return true;
+    }
+
+    /**
+     * Drops all cached verifications, e.g. when a key is revoked.
+     */
+    public void clear() {
+        synchronized (verified) {
+            verified.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (verified) {
+            return verified.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries evicted because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return number of entries dropped because their ttl had passed
+     */
+    public long getExpirations() {
+        return expirations.get();
+    }
+
+    /**
+     * @return fraction of the verifications answered from the cache
+     */
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d hits=%d misses=%d hitRate=%.3f evictions=%d expirations=%d",
+                size(), getHits(), getMisses(), getHitRate(), getEvictions(), getExpirations());
+    }
+
+    private boolean lookup(final CacheKey id) {
+        synchronized (verified) {
+            final Long expires = verified.get(id);
+            if (expires == null)
+                return false;
+            if (System.nanoTime() - expires < 0)
+                return true;
+
+            verified.remove(id);
+            expirations.incrementAndGet();
+            return false;
+        }
+    }
+
+    private CacheKey key(final String algorithm, final PublicKey key, final byte[] signature,
+                                final byte[][] data) {
+        final MessageDigest digest;
+        try {
+            digest = CryptoEngineCache.getDefault().digest(DIGEST_ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " is not available", e);
+        }
+
+        final byte[] fingerprint = fingerprint(key, digest);
+        for (final byte[] part : data)
+            digest.update(part);
+        return new CacheKey(algorithm, fingerprint, digest.digest(), signature.clone());
+    }
+
+    private byte[] fingerprint(final PublicKey key, final MessageDigest digest) {
+        synchronized (fingerprints) {
+            byte[] fingerprint = fingerprints.get(key);
+            if (fingerprint == null) {
+                fingerprint = digest.digest(key.getEncoded());
+                fingerprints.put(key, fingerprint);
+            }
+            return fingerprint;
+        }
+    }
+
+    private static final class CacheKey {
+        final String algorithm;
+        final byte[] fingerprint, dataDigest, signature;
+        final int hash;
+
+        CacheKey(final String algorithm, final byte[] fingerprint, final byte[] dataDigest, final byte[] signature) {
+            this.algorithm = algorithm;
+            this.fingerprint = fingerprint;
+            this.dataDigest = dataDigest;
+            this.signature = signature;
+
+            // the digests are uniformly distributed, a few of their bytes suffice
+            this.hash = ((dataDigest[0] & 0xff) << 24 | (dataDigest[1] & 0xff) << 16
+                    | (dataDigest[2] & 0xff) << 8 | (dataDigest[3] & 0xff)) ^ fingerprint[0];
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof CacheKey))
+                return false;
+
+            final CacheKey other = (CacheKey) o;
+            return hash == other.hash && algorithm.equals(other.algorithm)
+                    && Arrays.equals(dataDigest, other.dataDigest)
+                    && Arrays.equals(fingerprint, other.fingerprint)
+                    && Arrays.equals(signature, other.signature);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
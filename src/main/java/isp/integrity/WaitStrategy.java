@@ -0,0 +1,40 @@
+package isp.integrity;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link RingChannel} that is full (sender) or
+ * empty (receiver). The strategies trade CPU usage for latency.
+ */
+public enum WaitStrategy {
+    /**
+     * Busy-spin: the lowest latency, but a whole core is burnt while waiting.
+     */
+    SPIN {
+        @Override
+        void idle() {
+        }
+    },
+    /**
+     * Give up the rest of the time slice to other runnable threads.
+     */
+    YIELD {
+        @Override
+        void idle() {
+            Thread.yield();
+        }
+    },
+    /**
+     * Sleep for a short while; the cheapest on CPU, with the highest latency.
+     */
+    PARK {
+        @Override
+        void idle() {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    };
+
+    private static final long PARK_NANOS = 50000;
+
+    abstract void idle();
+}
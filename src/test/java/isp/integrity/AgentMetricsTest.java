@@ -0,0 +1,61 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Percentiles of {@link LatencyHistogram} and the metrics of an agent over JMX.
+ */
+public class AgentMetricsTest extends TestCase {
+
+    public void testPercentilesWithinBucketPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100000; nanos++)
+            histogram.record(nanos);
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100000, snapshot.getCount());
+        assertEquals(50000.5, snapshot.getMean(), 1e-6);
+        assertEquals(100000, snapshot.getMax());
+        assertEquals(50000, snapshot.getP50(), 50000 * 0.125);
+        assertEquals(99000, snapshot.getP99(), 99000 * 0.125);
+        assertEquals(99900, snapshot.getP999(), 99900 * 0.125);
+
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+    }
+
+    public void testAgentPublishesMetrics() throws Exception {
+        final QueueFrameChannel channel = new QueueFrameChannel();
+        final Agent agent = new Agent(channel, channel, null, null, null, null) {
+            @Override
+            public void run() {
+            }
+        };
+        agent.outgoing.put(new Frame(new byte[8]));
+        agent.incoming.take();
+        agent.getMetrics().record(AgentMetrics.Operation.MAC, 1000);
+        agent.getMetrics().verificationFailed();
+
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName("isp.integrity:type=AgentMetrics,name="
+                + ObjectName.quote(agent.getName()));
+        // publishing is opt-in, so agents nobody watches are not leaked
+        assertFalse(server.isRegistered(name));
+        assertSame(agent.getMetrics(), agent.getMetrics().register(agent.getName()));
+        try {
+            assertEquals(1L, server.getAttribute(name, "MessagesSent"));
+            assertEquals(1L, server.getAttribute(name, "MessagesReceived"));
+            assertEquals(1L, server.getAttribute(name, "VerificationFailures"));
+            assertEquals(1L, ((CompositeData) server.getAttribute(name, "MacTime")).get("count"));
+            assertEquals(2L, ((CompositeData) server.getAttribute(name, "QueueWait")).get("count"));
+        } finally {
+            agent.getMetrics().unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
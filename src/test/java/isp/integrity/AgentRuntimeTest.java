@@ -0,0 +1,108 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor selection of {@link AgentRuntime} and how it runs agents.
+ */
+public class AgentRuntimeTest extends TestCase {
+
+    /**
+     * Factory of an executor, looked up like newVirtualThreadPerTaskExecutor.
+     */
+    public static ExecutorService singleThread() {
+        return Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * Runs an agent that records the thread it ran on.
+     */
+    private static Thread run(final AgentRuntime runtime) throws Exception {
+        final QueueFrameChannel channel = new QueueFrameChannel();
+        final Thread[] ranOn = new Thread[1];
+        final Agent agent = new Agent(channel, channel, null, null, null, null) {
+            @Override
+            public void run() {
+                ranOn[0] = Thread.currentThread();
+            }
+        };
+        try {
+            assertNull(runtime.start(agent).get(10, TimeUnit.SECONDS));
+        } finally {
+            runtime.shutdown();
+            assertTrue(runtime.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        // the agent's run() is executed, but the agent's own thread is never started
+        assertNotNull(ranOn[0]);
+        assertNotSame(agent, ranOn[0]);
+        assertEquals(Thread.State.NEW, agent.getState());
+        return ranOn[0];
+    }
+
+    public void testPlatformThreads() throws Exception {
+        final AgentRuntime runtime = AgentRuntime.platformThreads();
+        assertFalse(runtime.isVirtualThreads());
+        assertNotSame(Thread.currentThread(), run(runtime));
+    }
+
+    public void testVirtualThreadsOnlyWhereSupported() throws Exception {
+        try {
+            final AgentRuntime runtime = AgentRuntime.virtualThreads();
+            assertTrue(AgentRuntime.isVirtualThreadSupported());
+            assertTrue(runtime.isVirtualThreads());
+            run(runtime);
+        } catch (UnsupportedOperationException e) {
+            assertFalse(AgentRuntime.isVirtualThreadSupported());
+        }
+    }
+
+    public void testPreferredRuntimeMatchesSupport() throws Exception {
+        final AgentRuntime runtime = AgentRuntime.preferVirtualThreads();
+        assertEquals(AgentRuntime.isVirtualThreadSupported(), runtime.isVirtualThreads());
+        run(runtime);
+    }
+
+    public void testFactoryIsSelectedReflectively() throws Exception {
+        // singleThread stands in for newVirtualThreadPerTaskExecutor
+        final AgentRuntime runtime = AgentRuntime.preferVirtualThreads(AgentRuntimeTest.class, "singleThread");
+        assertTrue(runtime.isVirtualThreads());
+        run(runtime);
+    }
+
+    public void testFallbackToPlatformThreads() throws Exception {
+        try {
+            AgentRuntime.virtualThreads(AgentRuntimeTest.class, "noSuchExecutor");
+            fail("missing factory not reported");
+        } catch (UnsupportedOperationException expected) {
+        }
+
+        final AgentRuntime runtime = AgentRuntime.preferVirtualThreads(AgentRuntimeTest.class, "noSuchExecutor");
+        assertFalse(runtime.isVirtualThreads());
+        run(runtime);
+    }
+
+    public void testFailureOfAgentCompletesFuture() throws Exception {
+        final AgentRuntime runtime = AgentRuntime.platformThreads();
+        final Future<?> result = runtime.start(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("agent failed");
+            }
+        });
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            runtime.shutdown();
+        }
+    }
+}
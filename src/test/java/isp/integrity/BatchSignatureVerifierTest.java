@@ -0,0 +1,106 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Order of the results and the counters of {@link BatchSignatureVerifier}.
+ */
+public class BatchSignatureVerifierTest extends TestCase {
+    private static final int FRAMES = 30;
+
+    private KeyPair keys;
+    private ExecutorService workers;
+
+    @Override
+    protected void setUp() throws Exception {
+        keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        workers = Executors.newFixedThreadPool(3);
+    }
+
+    @Override
+    protected void tearDown() {
+        workers.shutdown();
+    }
+
+    public void testMixedBatchesInArrivalOrder() throws Exception {
+        check(null);
+    }
+
+    public void testMixedBatchesWithCache() throws Exception {
+        final VerificationCache cache = new VerificationCache(64, 1, TimeUnit.MINUTES);
+        check(cache);
+        // only the valid signatures are cached
+        assertEquals(FRAMES - invalid(), cache.size());
+    }
+
+    private void check(final VerificationCache cache) throws Exception {
+        final FrameChannel channel = new QueueFrameChannel();
+        final Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keys.getPrivate());
+        for (int i = 0; i < FRAMES; i++) {
+            final byte[] payload = ("Message " + i).getBytes("UTF-8");
+            signer.update(Frame.sequenceBytes(i));
+            signer.update(payload);
+            byte[] tag = signer.sign();
+            if (i % 5 == 1)
+                tag[tag.length - 1] ^= 1;
+            else if (i % 5 == 3)
+                tag = new byte[3]; // malformed
+            channel.put(new Frame(i, payload, tag));
+        }
+
+        final List<Long> order = new ArrayList<>();
+        final List<Boolean> results = new ArrayList<>();
+        final BatchSignatureVerifier stage = new BatchSignatureVerifier(channel, "SHA256withRSA",
+                keys.getPublic(), workers, 3, 7, new BatchSignatureVerifier.Listener() {
+            @Override
+            public void verified(final Frame frame) {
+                order.add(frame.getSequence());
+                results.add(true);
+            }
+
+            @Override
+            public void rejected(final Frame frame) {
+                order.add(frame.getSequence());
+                results.add(false);
+            }
+        }, cache);
+
+        int processed = 0, batches = 0;
+        while (processed < FRAMES) {
+            final int n = stage.processBatch();
+            assertTrue(n <= 7);
+            processed += n;
+            batches++;
+        }
+        assertEquals(FRAMES, processed);
+        assertEquals(5, batches);
+
+        for (int i = 0; i < FRAMES; i++) {
+            assertEquals(i, order.get(i).longValue());
+            assertEquals("frame " + i, i % 5 != 1 && i % 5 != 3, results.get(i).booleanValue());
+        }
+        assertEquals(FRAMES - invalid(), stage.getVerified());
+        assertEquals(invalid(), stage.getRejected());
+        assertTrue(stage.getVerifiedThroughput() > 0);
+        assertTrue(stage.getRejectedThroughput() > 0);
+    }
+
+    private static int invalid() {
+        int invalid = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            if (i % 5 == 1 || i % 5 == 3)
+                invalid++;
+        }
+        return invalid;
+    }
+}
@@ -0,0 +1,154 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fan-out and the slow-subscriber policies of {@link BroadcastChannel}.
+ */
+public class BroadcastChannelTest extends TestCase {
+
+    public void testEverySubscriberReceivesTheSameFrame() throws Exception {
+        final BroadcastChannel channel = new BroadcastChannel();
+        final BroadcastChannel.Subscriber[] subscribers = new BroadcastChannel.Subscriber[100];
+        for (int i = 0; i < subscribers.length; i++)
+            subscribers[i] = channel.subscribe(4, BroadcastChannel.SlowSubscriberPolicy.BLOCK);
+
+        final Frame frame = new Frame(7, new byte[]{1, 2, 3}, new byte[]{4});
+        channel.put(frame);
+        for (final BroadcastChannel.Subscriber subscriber : subscribers) {
+            assertSame(frame, subscriber.take());
+            assertNull(subscriber.poll());
+        }
+
+        subscribers[0].unsubscribe();
+        channel.put(frame);
+        assertNull(subscribers[0].poll());
+        assertSame(frame, subscribers[1].poll());
+        assertEquals(99, channel.getSubscriberCount());
+        assertEquals(2, channel.getFramesSent());
+    }
+
+    public void testSlowSubscriberDoesNotAffectOthers() throws Exception {
+        final BroadcastChannel channel = new BroadcastChannel();
+        final BroadcastChannel.Subscriber fast = channel.subscribe(2, BroadcastChannel.SlowSubscriberPolicy.DROP);
+        final BroadcastChannel.Subscriber dropping = channel.subscribe(2, BroadcastChannel.SlowSubscriberPolicy.DROP);
+        final BroadcastChannel.Subscriber disconnected =
+                channel.subscribe(2, BroadcastChannel.SlowSubscriberPolicy.DISCONNECT);
+
+        for (int i = 0; i < 5; i++) {
+            channel.put(new Frame(i, new byte[0], new byte[0]));
+            assertEquals(i, fast.take().getSequence());
+        }
+
+        assertEquals(3, dropping.getDropped());
+        assertEquals(0, dropping.take().getSequence());
+        assertEquals(1, dropping.take().getSequence());
+        assertNull(dropping.poll(1, TimeUnit.MILLISECONDS));
+
+        assertTrue(disconnected.isDisconnected());
+        assertEquals(2, channel.getSubscriberCount());
+        assertEquals(0, disconnected.take().getSequence());
+        assertEquals(1, disconnected.take().getSequence());
+        try {
+            disconnected.take();
+            fail("disconnect not reported");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testBlockingSubscriberHoldsBackTheSender() throws Exception {
+        final BroadcastChannel channel = new BroadcastChannel();
+        final BroadcastChannel.Subscriber subscriber = channel.subscribe(1, BroadcastChannel.SlowSubscriberPolicy.BLOCK);
+        channel.put(new Frame(new byte[0]));
+
+        final Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    channel.put(new Frame(new byte[0]));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        sender.start();
+        sender.join(50);
+        assertTrue(sender.isAlive());
+
+        subscriber.take();
+        sender.join();
+        assertNotNull(subscriber.take());
+    }
+
+    /**
+     * Starts a sender that blocks on the full ring of a BLOCK subscriber and
+     * records how its put ended.
+     */
+    private static Thread blockedSender(final BroadcastChannel channel, final Throwable[] outcome)
+            throws InterruptedException {
+        final Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    channel.put(new Frame(new byte[0]));
+                } catch (InterruptedException | RuntimeException e) {
+                    outcome[0] = e;
+                }
+            }
+        };
+        sender.start();
+        sender.join(50);
+        assertTrue(sender.isAlive());
+        return sender;
+    }
+
+    public void testSenderIsReleasedWhenSubscriberLeaves() throws Exception {
+        final BroadcastChannel channel = new BroadcastChannel();
+        final BroadcastChannel.Subscriber stalled = channel.subscribe(1, BroadcastChannel.SlowSubscriberPolicy.BLOCK);
+        final BroadcastChannel.Subscriber other = channel.subscribe(4, BroadcastChannel.SlowSubscriberPolicy.BLOCK);
+        channel.put(new Frame(new byte[0]));
+
+        final Throwable[] outcome = new Throwable[1];
+        final Thread sender = blockedSender(channel, outcome);
+        stalled.unsubscribe();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertNull(outcome[0]);
+        assertNotNull(other.take());
+        assertNotNull(other.take());
+    }
+
+    public void testSenderIsReleasedOnCloseAndInterrupt() throws Exception {
+        final BroadcastChannel channel = new BroadcastChannel();
+        final BroadcastChannel.Subscriber subscriber = channel.subscribe(1, BroadcastChannel.SlowSubscriberPolicy.BLOCK);
+        channel.put(new Frame(7, new byte[0], new byte[0]));
+
+        final Throwable[] outcome = new Throwable[1];
+        Thread sender = blockedSender(channel, outcome);
+        sender.interrupt();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertTrue(outcome[0] instanceof InterruptedException);
+
+        sender = blockedSender(channel, outcome);
+        channel.close();
+        sender.join(5000);
+        assertFalse(sender.isAlive());
+        assertTrue(outcome[0] instanceof IllegalStateException);
+
+        // frames sent before the close are still received, then the end is reported
+        assertEquals(7, subscriber.take().getSequence());
+        try {
+            subscriber.poll(1, TimeUnit.SECONDS);
+            fail("closed broadcast not reported");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            channel.put(new Frame(new byte[0]));
+            fail("closed broadcast accepted a frame");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Test vectors and round trips of {@link HexCodec} and {@link Base64Codec}.
+ */
+public class CodecTest extends TestCase {
+
+    public void testHex() {
+        assertEquals("00FF7F80", HexCodec.toHex(new byte[]{0, -1, 127, -128}));
+        assertTrue(Arrays.equals(new byte[]{0, -1, 127, -128}, HexCodec.fromHex("00ff7F80")));
+        assertEquals(0, HexCodec.fromHex("").length);
+    }
+
+    public void testHexRejectsInvalidInput() {
+        try {
+            HexCodec.fromHex("ABC");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            HexCodec.fromHex("0G");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testBase64Rfc4648Vectors() throws Exception {
+        final String[][] vectors = {{"", ""}, {"f", "Zg=="}, {"fo", "Zm8="}, {"foo", "Zm9v"},
+                {"foob", "Zm9vYg=="}, {"fooba", "Zm9vYmE="}, {"foobar", "Zm9vYmFy"}};
+
+        for (final String[] vector : vectors) {
+            final byte[] data = vector[0].getBytes("US-ASCII");
+            assertEquals(vector[1], Base64Codec.toBase64(data));
+            assertTrue(Arrays.equals(data, Base64Codec.fromBase64(vector[1])));
+        }
+    }
+
+    public void testBase64RejectsInvalidInput() {
+        for (final String text : new String[]{"Zg=", "Zg==Zm9v", "Z*=="}) {
+            try {
+                Base64Codec.fromBase64(text);
+                fail(text);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    public void testRoundTripsThroughCallerBuffers() {
+        final Random random = new Random(3);
+        for (int length = 0; length < 40; length++) {
+            final byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            final byte[] hex = new byte[HexCodec.encodedLength(length) + 2];
+            assertEquals(hex.length - 2, HexCodec.encode(data, 0, length, hex, 1));
+            final ByteBuffer hexDecoded = ByteBuffer.allocate(length);
+            HexCodec.decode(ByteBuffer.wrap(hex, 1, hex.length - 2), hexDecoded);
+            assertTrue(Arrays.equals(data, hexDecoded.array()));
+
+            final char[] base64 = new char[Base64Codec.encodedLength(length)];
+            Base64Codec.encode(data, 0, length, base64, 0);
+            final byte[] decoded = new byte[Base64Codec.decodedLength(base64, 0, base64.length) + 1];
+            assertEquals(length, Base64Codec.decode(base64, 0, base64.length, decoded, 1));
+            assertTrue(Arrays.equals(data, Arrays.copyOfRange(decoded, 1, decoded.length)));
+
+            final ByteBuffer ascii = ByteBuffer.allocate(Base64Codec.encodedLength(length));
+            Base64Codec.encode(ByteBuffer.wrap(data), ascii);
+            ascii.flip();
+            final ByteBuffer asciiDecoded = ByteBuffer.allocate(length);
+            Base64Codec.decode(ascii, asciiDecoded);
+            assertTrue(Arrays.equals(data, asciiDecoded.array()));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hits, misses, evictions and reset engines of {@link CryptoEngineCache}.
+ */
+public class CryptoEngineCacheTest extends TestCase {
+    private final SecretKeySpec key1 = new SecretKeySpec(new byte[]{1, 2, 3, 4}, "HmacSHA256");
+    private final SecretKeySpec key2 = new SecretKeySpec(new byte[]{5, 6, 7, 8}, "HmacSHA256");
+
+    public void testHitsAndMissesPerKeyAndProvider() throws Exception {
+        final CryptoEngineCache cache = new CryptoEngineCache(8, 1, TimeUnit.MINUTES);
+        final Mac mac = cache.mac("HmacSHA256", key1);
+        assertSame(mac, cache.mac("HmacSHA256", key1));
+        // keys are compared by value
+        assertSame(mac, cache.mac("HmacSHA256", new SecretKeySpec(new byte[]{1, 2, 3, 4}, "HmacSHA256")));
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        assertNotSame(mac, cache.mac("HmacSHA256", key2));
+        assertNotSame(mac, cache.mac("HmacSHA256", "SunJCE", key1));
+        assertNotSame(mac, cache.mac("HmacMD5", key1));
+        assertNotSame(cache.digest("SHA-256"), cache.digest("SHA-256", "SUN"));
+        assertEquals(6, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    public void testEnginesAreResetAndPerThread() throws Exception {
+        final CryptoEngineCache cache = new CryptoEngineCache(8, 1, TimeUnit.MINUTES);
+        final byte[] message = "message".getBytes("UTF-8");
+
+        // an operation that was not completed does not leak into the next one
+        final MessageDigest digest = cache.digest("SHA-256");
+        digest.update(new byte[]{42});
+        assertTrue(MessageDigest.isEqual(MessageDigest.getInstance("SHA-256").digest(message),
+                cache.digest("SHA-256").digest(message)));
+
+        final Mac[] other = new Mac[1];
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    other[0] = cache.mac("HmacSHA256", key1);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(other[0]);
+        assertNotSame(other[0], cache.mac("HmacSHA256", key1));
+    }
+
+    public void testAbandonedSignatureOperationsDoNotLeak() throws Exception {
+        final CryptoEngineCache cache = new CryptoEngineCache(8, 1, TimeUnit.MINUTES);
+        final KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        final byte[] message = "message".getBytes("UTF-8");
+
+        final Signature signer = cache.signer("SHA256withRSA", keys.getPrivate());
+        signer.update(new byte[]{42});
+        final Signature reused = cache.signer("SHA256withRSA", keys.getPrivate());
+        assertSame(signer, reused);
+        reused.update(message);
+        final byte[] signature = reused.sign();
+
+        final Signature fresh = Signature.getInstance("SHA256withRSA");
+        fresh.initVerify(keys.getPublic());
+        fresh.update(message);
+        assertTrue(fresh.verify(signature));
+
+        final Signature verifier = cache.verifier("SHA256withRSA", keys.getPublic());
+        verifier.update(new byte[]{42});
+        assertSame(verifier, cache.verifier("SHA256withRSA", keys.getPublic()));
+        verifier.update(message);
+        assertTrue(verifier.verify(signature));
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        final CryptoEngineCache cache = new CryptoEngineCache(2, 1, TimeUnit.MINUTES);
+        final Mac mac1 = cache.mac("HmacSHA256", key1);
+        final Mac mac2 = cache.mac("HmacSHA256", key2);
+        // touching key1 makes key2 the eldest entry
+        assertSame(mac1, cache.mac("HmacSHA256", key1));
+        cache.digest("MD5");
+        assertEquals(1, cache.getEvictions());
+
+        assertSame(mac1, cache.mac("HmacSHA256", key1));
+        assertNotSame(mac2, cache.mac("HmacSHA256", key2));
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    public void testIdleEnginesExpire() throws Exception {
+        final CryptoEngineCache cache = new CryptoEngineCache(8, 50, TimeUnit.MILLISECONDS);
+        final Mac mac = cache.mac("HmacSHA256", key1);
+        final MessageDigest digest = cache.digest("SHA-1");
+        Thread.sleep(100);
+
+        assertNotSame(mac, cache.mac("HmacSHA256", key1));
+        // both idle engines expired on the first lookup
+        assertEquals(2, cache.getEvictions());
+        assertNotSame(digest, cache.digest("SHA-1"));
+        assertEquals(4, cache.getMisses());
+        assertEquals(0, cache.getHits());
+
+        cache.clear();
+        cache.mac("HmacSHA256", key1);
+        assertEquals(5, cache.getMisses());
+    }
+}
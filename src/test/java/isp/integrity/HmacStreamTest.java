@@ -0,0 +1,147 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.Key;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Round trips through {@link HmacOutputStream} and {@link HmacInputStream}
+ * and rejection of modified, reordered, dropped and spliced chunks.
+ */
+public class HmacStreamTest extends TestCase {
+    private static final int CHUNK_SIZE = 100;
+    /**
+     * Stream ID, 11 data chunks and the end-of-stream chunk.
+     */
+    private static final int CHUNKS = 13;
+
+    private Key key;
+    private byte[] data;
+
+    @Override
+    protected void setUp() throws Exception {
+        key = KeyGenerator.getInstance("HmacSHA256").generateKey();
+        data = new byte[1050];
+        new Random(15).nextBytes(data);
+    }
+
+    private Mac mac() throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return mac;
+    }
+
+    private QueueFrameChannel send() throws Exception {
+        final QueueFrameChannel channel = new QueueFrameChannel();
+        final HmacOutputStream out = new HmacOutputStream(channel, mac(), CHUNK_SIZE);
+        out.write(data, 0, 7);
+        out.write(data[7]);
+        out.write(data, 8, data.length - 8);
+        out.close();
+        assertEquals(CHUNKS, out.getChunks());
+        return channel;
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[33];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    public void testRoundTrip() throws Exception {
+        final HmacInputStream in = new HmacInputStream(send(), mac());
+        assertTrue(Arrays.equals(data, readAll(in)));
+        assertEquals(CHUNKS, in.getChunks());
+        assertEquals(HmacOutputStream.STREAM_ID_LENGTH, in.getStreamId().length);
+    }
+
+    public void testModifiedChunkIsRejected() throws Exception {
+        final QueueFrameChannel channel = send();
+        final QueueFrameChannel tampered = new QueueFrameChannel();
+        for (int i = 0; i < CHUNKS; i++) {
+            final Frame frame = channel.take();
+            final byte[] payload = frame.getPayload();
+            if (i == 4)
+                payload[0] ^= 1;
+            tampered.put(new Frame(frame.getSequence(), payload, frame.getTag()));
+        }
+
+        final HmacInputStream in = new HmacInputStream(tampered, mac());
+        final byte[] buffer = new byte[64];
+        int read = 0;
+        try {
+            int n;
+            while ((n = in.read(buffer)) != -1)
+                read += n;
+            fail();
+        } catch (IOException expected) {
+            assertEquals(3 * CHUNK_SIZE, read);
+        }
+    }
+
+    public void testDroppedChunkIsRejected() throws Exception {
+        final QueueFrameChannel channel = send();
+        final QueueFrameChannel shortened = new QueueFrameChannel();
+        for (int i = 0; i < CHUNKS; i++) {
+            final Frame frame = channel.take();
+            if (i == 5)
+                continue;
+            // the sequence numbers are renumbered, so only the chained tags reveal the gap
+            shortened.put(new Frame(i < 5 ? i : i - 1, frame.getPayload(), frame.getTag()));
+        }
+
+        try {
+            readAll(new HmacInputStream(shortened, mac()));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testChunksOfAnotherStreamAreRejected() throws Exception {
+        // same key and content, so only the stream IDs tell the streams apart
+        final QueueFrameChannel first = send(), second = send();
+        final QueueFrameChannel spliced = new QueueFrameChannel();
+        for (int i = 0; i < CHUNKS; i++) {
+            final Frame a = first.take(), b = second.take();
+            if (i == 0)
+                assertFalse(Arrays.equals(a.getPayload(), b.getPayload()));
+            spliced.put(i < 6 ? a : b);
+        }
+
+        final HmacInputStream in = new HmacInputStream(spliced, mac());
+        try {
+            readAll(in);
+            fail();
+        } catch (IOException expected) {
+            assertEquals(6, in.getChunks());
+        }
+    }
+
+    public void testMissingStreamIdIsRejected() throws Exception {
+        final QueueFrameChannel channel = send();
+        channel.take();
+        final QueueFrameChannel withoutId = new QueueFrameChannel();
+        final Frame frame = channel.take();
+        // a data chunk with a valid tag of its own, renumbered to chunk 0
+        final Mac mac = mac();
+        final byte[] tag = new byte[mac.getMacLength()];
+        HmacOutputStream.tag(mac, new byte[0], 0, new byte[8], frame.getPayload(), tag);
+        withoutId.put(new Frame(0, frame.getPayload(), tag));
+
+        try {
+            readAll(new HmacInputStream(withoutId, mac()));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full and incremental scans of {@link IntegrityScanner} and the manifest format.
+ */
+public class IntegrityScannerTest extends TestCase {
+    private Path root;
+
+    @Override
+    protected void setUp() throws IOException {
+        root = Files.createTempDirectory("scanner");
+        write("a.txt", "I love you Bob.");
+        write("dir/b.txt", "Kisses, Alice.");
+        write("dir/sub/c.bin", "");
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        delete(root);
+    }
+
+    public void testFullScan() throws Exception {
+        final IntegrityScanner.Result result = new IntegrityScanner("SHA-256", 2).scan(root);
+
+        assertEquals(3, result.getHashed());
+        assertEquals(0, result.getReused());
+        assertEquals(Arrays.asList("a.txt", "dir/b.txt", "dir/sub/c.bin"),
+                Arrays.asList(result.getManifest().getEntries().keySet().toArray()));
+        assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest("Kisses, Alice.".getBytes("UTF-8")),
+                result.getManifest().get("dir/b.txt").getDigest()));
+    }
+
+    public void testRescanHashesOnlyChangedFiles() throws Exception {
+        final IntegrityScanner scanner = new IntegrityScanner("SHA-256", 2);
+        final Manifest first = roundTrip(scanner.scan(root).getManifest());
+
+        write("dir/b.txt", "Kisses, Maloy.");
+        write("d.txt", "New file.");
+        Files.delete(root.resolve("a.txt"));
+
+        final IntegrityScanner.Result second = scanner.scan(root, first);
+        assertEquals(2, second.getHashed());
+        assertEquals(1, second.getReused());
+
+        final Manifest.Changes changes = second.getManifest().compare(first);
+        assertEquals(Collections.singletonList("d.txt"), changes.getAdded());
+        assertEquals(Collections.singletonList("a.txt"), changes.getRemoved());
+        assertEquals(Collections.singletonList("dir/b.txt"), changes.getModified());
+    }
+
+    public void testRecentlyModifiedFilesAreHashedAgain() throws Exception {
+        final IntegrityScanner scanner = new IntegrityScanner("SHA-256", 1);
+        Files.setLastModifiedTime(root.resolve("a.txt"), FileTime.fromMillis(System.currentTimeMillis()));
+        final Manifest first = scanner.scan(root).getManifest();
+
+        // a.txt could still have changed within the timestamp granularity of the first scan
+        final IntegrityScanner.Result second = scanner.scan(root, first);
+        assertEquals(1, second.getHashed());
+        assertEquals(2, second.getReused());
+        assertTrue(second.getManifest().compare(first).isEmpty());
+    }
+
+    public void testRescanAgainstBinaryManifest() throws Exception {
+        final IntegrityScanner scanner = new IntegrityScanner("SHA-256", 2);
+        final Manifest first = scanner.scan(root).getManifest();
+        final Path file = Files.createTempFile("manifest", ".bin");
+        try {
+            MappedManifest.write(first, file);
+            write("dir/b.txt", "Kisses, Maloy.");
+
+            final MappedManifest mapped = MappedManifest.open(file);
+            final IntegrityScanner.Result second = scanner.scan(root, mapped);
+            assertEquals(1, second.getHashed());
+            assertEquals(2, second.getReused());
+            assertEquals(Collections.singletonList("dir/b.txt"), second.getManifest().compare(mapped).getModified());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private Manifest roundTrip(final Manifest manifest) throws IOException {
+        final Path file = Files.createTempFile("manifest", ".txt");
+        try {
+            manifest.write(file);
+            return Manifest.read(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void write(final String path, final String content) throws IOException {
+        final Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes("UTF-8"));
+        // old enough to be reused by the next scan
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()
+                - TimeUnit.MINUTES.toMillis(1) + content.length()));
+    }
+
+    private static void delete(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                for (final Path child : children)
+                    delete(child);
+            }
+        }
+        Files.delete(path);
+    }
+}
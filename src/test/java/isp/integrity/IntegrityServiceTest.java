@@ -0,0 +1,93 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import java.security.Key;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results and admission control of {@link IntegrityService}.
+ */
+public class IntegrityServiceTest extends TestCase {
+
+    public void testResultsMatchTheEngines() throws Exception {
+        final byte[] head = "I love you Bob.".getBytes("UTF-8"), tail = " Kisses, Alice.".getBytes("UTF-8");
+        final byte[] message = "I love you Bob. Kisses, Alice.".getBytes("UTF-8");
+
+        try (IntegrityService service = new IntegrityService(2, 16, 1, TimeUnit.SECONDS)) {
+            assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(message),
+                    service.digest("SHA-256", head, tail).get()));
+
+            final Key key = KeyGenerator.getInstance("HmacSHA256").generateKey();
+            final Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            assertTrue(Arrays.equals(mac.doFinal(message), service.mac("HmacSHA256", key, message).get()));
+
+            final KeyPair keys = KeyPairGenerator.getInstance("RSA").generateKeyPair();
+            final byte[] signature = service.sign("SHA256withRSA", keys.getPrivate(), head, tail).get();
+            assertTrue(service.verify("SHA256withRSA", keys.getPublic(), signature, message).get());
+            assertFalse(service.verify("SHA256withRSA", keys.getPublic(), signature, head).get());
+            assertEquals(5, service.getCompleted());
+        }
+    }
+
+    public void testSaturatedServiceRejects() throws Exception {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        // occupies the only worker
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        try (IntegrityService service = new IntegrityService(executor, 2, 0, TimeUnit.MILLISECONDS)) {
+            final CompletableFuture<byte[]> first = service.digest("SHA-256", new byte[1]);
+            final CompletableFuture<byte[]> second = service.digest("SHA-256", new byte[2]);
+            final CompletableFuture<byte[]> third = service.digest("SHA-256", new byte[3]);
+            assertEquals(2, service.getInFlight());
+            assertEquals(1, service.getRejected());
+            try {
+                third.get();
+                fail("saturated service admitted an operation");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+
+            release.countDown();
+            assertEquals(32, first.get().length);
+            assertEquals(32, second.get().length);
+            assertEquals(32, service.digest("SHA-256", new byte[4]).get().length);
+        }
+    }
+
+    public void testFailuresCompleteTheFuture() throws Exception {
+        try (IntegrityService service = new IntegrityService(1, 4, 1, TimeUnit.SECONDS)) {
+            try {
+                service.digest("NO-SUCH-DIGEST", new byte[1]).get();
+                fail("unknown algorithm accepted");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof NoSuchAlgorithmException);
+            }
+            assertEquals(0, service.getInFlight());
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+
+/**
+ * {@link KeySearch} finds keys anywhere in the keyspace, stops early and
+ * counts the keys it tested.
+ */
+public class KeySearchTest extends TestCase {
+    private static final String HEX = "0123456789abcdef";
+
+    private final byte[] message = "I love you Bob. Kisses, Alice.".getBytes();
+
+    private byte[] hmac(final String algorithm, final String key) throws Exception {
+        final Mac mac = Mac.getInstance(algorithm);
+        mac.init(new SecretKeySpec(key.getBytes("US-ASCII"), algorithm));
+        return mac.doFinal(message);
+    }
+
+    private void assertFound(final KeySearch search, final String algorithm, final String key) throws Exception {
+        final byte[] found = search.search(message, hmac(algorithm, key));
+        assertNotNull(key, found);
+        assertTrue(key, Arrays.equals(key.getBytes("US-ASCII"), found));
+    }
+
+    public void testShortKeyOverSmallCharset() throws Exception {
+        final KeySearch search = new KeySearch("HmacSHA256", "abc", 1, 4, 1);
+        assertEquals(3 + 9 + 27 + 81, search.getTotal());
+        assertFound(search, "HmacSHA256", "cab");
+    }
+
+    public void testKeysAtBlockBoundary() throws Exception {
+        // lengths 1 and 2 hold 272 keys, so keys 4095 and 4096 are the last
+        // key of the first block of 4096 and the first key of the second
+        for (final String key : new String[]{"eef", "ef0", "fff", "0000"})
+            for (final int workers : new int[]{1, 3})
+                assertFound(new KeySearch("HmacMD5", HEX, 1, 4, workers), "HmacMD5", key);
+    }
+
+    public void testKeyLongerThanHashBlock() throws Exception {
+        final char[] key = new char[70];
+        Arrays.fill(key, 'x');
+        for (final String algorithm : new String[]{"HmacMD5", "HmacSHA512"})
+            assertFound(new KeySearch(algorithm, "x", 70, 70, 1), algorithm, new String(key));
+    }
+
+    public void testStopsWhenKeyIsFound() throws Exception {
+        final KeySearch search = new KeySearch("HmacMD5", HEX, 1, 6, 2);
+        assertFound(search, "HmacMD5", "a");
+        // each worker finishes at most the block of 4096 keys it was testing
+        assertTrue(search.getTested() > 0);
+        assertTrue(search.getTested() <= 2 * 4096);
+        assertTrue(search.getProgress() < 0.001);
+        assertTrue(search.getKeysPerSecond() > 0);
+    }
+
+    public void testWholeKeyspaceWithoutMatch() throws Exception {
+        final KeySearch search = new KeySearch("HmacSHA1", HEX, 1, 3, 2);
+        assertNull(search.search(message, hmac("HmacSHA1", "g")));
+        assertEquals(16 + 256 + 4096, search.getTotal());
+        assertEquals(search.getTotal(), search.getTested());
+        assertEquals(1.0, search.getProgress(), 0);
+
+        // a truncated tag never matches
+        final KeySearch truncated = new KeySearch("HmacSHA1", HEX, 1, 1, 1);
+        assertNull(truncated.search(message, Arrays.copyOf(hmac("HmacSHA1", "a"), 12)));
+    }
+}
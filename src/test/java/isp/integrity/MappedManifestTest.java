@@ -0,0 +1,99 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Round trips, lookups and closing of {@link MappedManifest}.
+ */
+public class MappedManifestTest extends TestCase {
+    private static final int ENTRIES = 10000;
+
+    private Path file;
+    private Manifest manifest;
+
+    @Override
+    protected void setUp() throws IOException {
+        file = Files.createTempFile("manifest", ".bin");
+        final Map<String, Manifest.Entry> entries = new TreeMap<>();
+        for (int i = 0; i < ENTRIES; i++) {
+            final byte[] digest = ByteBuffer.allocate(32).putInt(i).array();
+            entries.put("dir" + i % 10 + "/file " + i + (i % 7 == 0 ? "-žaba\t.txt" : ".bin"),
+                    new Manifest.Entry(digest, i, 1000L * i, "(dev=803,ino=" + i + ")"));
+        }
+        manifest = new Manifest("SHA-256", 1234567890L, entries);
+        MappedManifest.write(manifest, file);
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    public void testLookups() throws IOException {
+        // small segments, so records and paths span many of them
+        final MappedManifest mapped = MappedManifest.open(file, 12);
+        assertEquals(ENTRIES, mapped.size());
+        assertEquals("SHA-256", mapped.getAlgorithm());
+        assertEquals(1234567890L, mapped.getStarted());
+
+        for (final Map.Entry<String, Manifest.Entry> e : manifest.getEntries().entrySet()) {
+            final Manifest.Entry entry = mapped.get(e.getKey());
+            assertNotNull(e.getKey(), entry);
+            assertTrue(Arrays.equals(e.getValue().getDigest(), entry.getDigest()));
+            assertEquals(e.getValue().getSize(), entry.getSize());
+            assertEquals(e.getValue().getLastModified(), entry.getLastModified());
+            assertEquals(e.getValue().getFileKey(), entry.getFileKey());
+        }
+        assertNull(mapped.get("dir0/file 0.bin"));
+        assertFalse(mapped.contains("missing"));
+    }
+
+    public void testEntriesAreIndexed() throws IOException {
+        final MappedManifest mapped = MappedManifest.open(file);
+        final Set<String> paths = new HashSet<>();
+        for (long i = 0; i < mapped.size(); i++)
+            paths.add(mapped.getPath(i));
+        assertEquals(manifest.getEntries().keySet(), paths);
+        assertTrue(manifest.compare(mapped).isEmpty());
+    }
+
+    public void testTruncatedFileIsRejected() throws IOException {
+        final byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length / 2));
+        try {
+            MappedManifest.open(file);
+            fail("truncated manifest opened");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testClosedManifestCanBeReplaced() throws IOException {
+        final MappedManifest mapped = MappedManifest.open(file);
+        assertNotNull(mapped.getEntry(0));
+        mapped.close();
+        mapped.close();
+        try {
+            mapped.get("dir0/file0.bin");
+            fail("read from a closed manifest");
+        } catch (IllegalStateException expected) {
+        }
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        MappedManifest.write(manifest, temp);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (MappedManifest replaced = MappedManifest.open(file)) {
+            assertTrue(manifest.compare(replaced).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches signed by {@link MerkleBatchSigner} must verify with a single
+ * signature check, and modified, renumbered and replayed messages must be
+ * rejected.
+ */
+public class MerkleBatchSignerTest extends TestCase {
+    private static final KeyPair KEYS = generate();
+
+    private static KeyPair generate() {
+        try {
+            return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<Frame> messages(final int first, final int count) throws Exception {
+        final List<Frame> frames = new ArrayList<>(count);
+        for (int i = first; i < first + count; i++)
+            frames.add(new Frame(i, ("message " + i).getBytes("UTF-8"), new byte[0]));
+        return frames;
+    }
+
+    private static List<Frame> messages(final int count) throws Exception {
+        return messages(0, count);
+    }
+
+    public void testEveryBatchSizeVerifiesWithOneSignature() throws Exception {
+        final MerkleBatchSigner signer = new MerkleBatchSigner(null, null, "SHA-256", "SHA256withRSA",
+                KEYS.getPrivate(), 32, 0, TimeUnit.MILLISECONDS);
+
+        for (int count = 1; count <= 17; count++) {
+            final MerkleBatchVerifier verifier = new MerkleBatchVerifier("SHA-256", "SHA256withRSA", KEYS.getPublic());
+            for (final Frame frame : signer.sign(messages(count)))
+                assertTrue("batch of " + count, verifier.verify(frame));
+            assertEquals(1, verifier.getSignatureVerifications());
+            assertEquals(count, verifier.getProofVerifications());
+        }
+    }
+
+    public void testModifiedMessageIsRejected() throws Exception {
+        final MerkleBatchSigner signer = new MerkleBatchSigner(null, null, "SHA-256", "SHA256withRSA",
+                KEYS.getPrivate(), 32, 0, TimeUnit.MILLISECONDS);
+        final List<Frame> signed = signer.sign(messages(5));
+        final MerkleBatchVerifier verifier = new MerkleBatchVerifier("SHA-256", "SHA256withRSA", KEYS.getPublic());
+
+        assertTrue(verifier.verify(signed.get(0)));
+        assertFalse(verifier.verify(new Frame(1, "forged".getBytes("UTF-8"), signed.get(1).getTag())));
+
+        final byte[] tag = signed.get(2).getTag();
+        tag[tag.length - 1] ^= 1;
+        assertFalse(verifier.verify(new Frame(2, signed.get(2).getPayload(), tag)));
+        assertTrue(verifier.verify(signed.get(3)));
+    }
+
+    public void testRenumberedAndReplayedMessagesAreRejected() throws Exception {
+        final MerkleBatchSigner signer = new MerkleBatchSigner(null, null, "SHA-256", "SHA256withRSA",
+                KEYS.getPrivate(), 32, 0, TimeUnit.MILLISECONDS);
+        final List<Frame> first = signer.sign(messages(0, 4));
+        final List<Frame> second = signer.sign(messages(4, 4));
+        final MerkleBatchVerifier verifier = new MerkleBatchVerifier("SHA-256", "SHA256withRSA", KEYS.getPublic());
+
+        for (int i = 0; i < 3; i++)
+            assertEquals(i, first.get(i).getSequence());
+        assertTrue(verifier.verify(first.get(0)));
+        // replayed with its own sequence number
+        assertFalse(verifier.verify(first.get(0)));
+        // reordered within the batch: frame 2 presented as frame 1
+        assertFalse(verifier.verify(new Frame(1, first.get(2).getPayload(), first.get(2).getTag())));
+        assertTrue(verifier.verify(first.get(1)));
+
+        // a frame of the first batch replayed into the second one under a fresh number
+        assertFalse(verifier.verify(new Frame(8, first.get(3).getPayload(), first.get(3).getTag())));
+        for (final Frame frame : second)
+            assertTrue(verifier.verify(frame));
+        assertFalse(verifier.verify(second.get(1)));
+    }
+
+    public void testStageCollectsBatches() throws Exception {
+        final FrameChannel incoming = new QueueFrameChannel();
+        final FrameChannel outgoing = new QueueFrameChannel();
+        final MerkleBatchSigner signer = new MerkleBatchSigner(incoming, outgoing, "SHA-256", "SHA256withRSA",
+                KEYS.getPrivate(), 4, 10, TimeUnit.MILLISECONDS);
+
+        for (final Frame frame : messages(6))
+            incoming.put(frame);
+        assertEquals(4, signer.processBatch());
+        assertEquals(2, signer.processBatch());
+        assertEquals(2, signer.getBatches());
+
+        final MerkleBatchVerifier verifier = new MerkleBatchVerifier("SHA-256", "SHA256withRSA", KEYS.getPublic());
+        for (int i = 0; i < 6; i++)
+            assertTrue(verifier.verify(outgoing.take()));
+        assertEquals(2, verifier.getSignatureVerifications());
+    }
+}
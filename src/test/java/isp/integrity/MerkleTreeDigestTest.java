@@ -0,0 +1,67 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks the tree shape and that the root does not depend on parallelism.
+ */
+public class MerkleTreeDigestTest extends TestCase {
+
+    private static byte[] leaf(final MessageDigest md, final byte[] data, final int from, final int to) {
+        md.update((byte) 0x00);
+        md.update(data, from, to - from);
+        return md.digest();
+    }
+
+    private static byte[] node(final MessageDigest md, final byte[] left, final byte[] right) {
+        md.update((byte) 0x01);
+        md.update(left);
+        md.update(right);
+        return md.digest();
+    }
+
+    public void testEmptyPayload() throws Exception {
+        final byte[] root = new MerkleTreeDigest("SHA-256", 4, new ForkJoinPool(1)).digest(new byte[0]);
+        assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(), root));
+    }
+
+    public void testFiveLeaves() throws Exception {
+        final MessageDigest md = MessageDigest.getInstance("SHA-256");
+        final byte[] data = "abcdefghijklmnopqr".getBytes("UTF-8");
+
+        // 18 bytes in chunks of 4: the left subtree holds 4 leaves, the right one the last leaf
+        final byte[] expected = node(md,
+                node(md, node(md, leaf(md, data, 0, 4), leaf(md, data, 4, 8)),
+                        node(md, leaf(md, data, 8, 12), leaf(md, data, 12, 16))),
+                leaf(md, data, 16, 18));
+
+        final byte[] root = new MerkleTreeDigest("SHA-256", 4, new ForkJoinPool(2)).digest(data);
+        assertTrue(Arrays.equals(expected, root));
+    }
+
+    public void testRootIndependentOfParallelismAndSource() throws Exception {
+        final byte[] data = new byte[5 * 1024 * 1024 + 17];
+        new Random(7).nextBytes(data);
+
+        final byte[] sequential = new MerkleTreeDigest("MD5", 4096, new ForkJoinPool(1)).digest(data);
+        final MerkleTreeDigest parallel = new MerkleTreeDigest("MD5", 4096, new ForkJoinPool(4));
+        assertTrue(Arrays.equals(sequential, parallel.digest(data)));
+        assertTrue(Arrays.equals(sequential, parallel.digest(ByteBuffer.wrap(data))));
+
+        final Path file = Files.createTempFile("merkle", ".bin");
+        try {
+            Files.write(file, data);
+            assertTrue(Arrays.equals(sequential, parallel.digest(file)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link MultiDigest} agrees with separate MessageDigests in every mode.
+ */
+public class MultiDigestTest extends TestCase {
+    private static final String[] ALGORITHMS = {"MD5", "SHA-1", "SHA-256"};
+
+    private final byte[] data = new byte[300000];
+
+    @Override
+    protected void setUp() {
+        new Random(7).nextBytes(data);
+    }
+
+    public void testSequential() throws Exception {
+        final MultiDigest multiDigest = new MultiDigest(ALGORITHMS);
+        multiDigest.update(data, 0, 1000);
+        multiDigest.update(ByteBuffer.wrap(data, 1000, data.length - 1000));
+        assertDigests(multiDigest.digest());
+
+        // digest() resets
+        assertDigests(multiDigest.digest(data));
+    }
+
+    public void testParallel() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final MultiDigest multiDigest = new MultiDigest(executor, ALGORITHMS);
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+            buffer.put(data).flip();
+            multiDigest.update(buffer);
+            assertEquals(buffer.limit(), buffer.position());
+            assertDigests(multiDigest.digest());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testParallelByteArrays() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final MultiDigest multiDigest = new MultiDigest(executor, ALGORITHMS);
+            multiDigest.update(data, 0, 1);
+            multiDigest.update(data, 1, 65535);
+            multiDigest.update(data, 65536, data.length - 65536);
+            assertDigests(multiDigest.digest());
+
+            // digest() resets
+            assertDigests(multiDigest.digest(data));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testFileThroughStreamingDigest() throws Exception {
+        final Path file = Files.createTempFile("multidigest", ".bin");
+        try {
+            Files.write(file, data);
+            assertDigests(new StreamingDigest(StreamingDigest.Mode.DIRECT, 4096)
+                    .digest(file, new MultiDigest(ALGORITHMS)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void assertDigests(final Map<String, byte[]> digests) throws Exception {
+        assertEquals(Arrays.asList(ALGORITHMS), Arrays.asList(digests.keySet().toArray()));
+        for (final String algorithm : ALGORITHMS)
+            assertTrue(algorithm, Arrays.equals(MessageDigest.getInstance(algorithm).digest(data),
+                    digests.get(algorithm)));
+    }
+}
@@ -0,0 +1,48 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link PrecomputedHmac} must produce the same tags as the JCE Mac.
+ */
+public class PrecomputedHmacTest extends TestCase {
+
+    public void testSameTagsAsMac() throws Exception {
+        final Random random = new Random(12);
+        for (final String algorithm : new String[]{"HmacMD5", "HmacSHA1", "HmacSHA256", "HmacSHA512"}) {
+            for (final int keyLength : new int[]{1, 16, 64, 65, 128, 200}) {
+                final byte[] secret = new byte[keyLength];
+                random.nextBytes(secret);
+                final SecretKeySpec key = new SecretKeySpec(secret, algorithm);
+
+                final Mac mac = Mac.getInstance(algorithm);
+                mac.init(key);
+                final PrecomputedHmac hmac = new PrecomputedHmac(algorithm, key);
+                assertEquals(mac.getMacLength(), hmac.getMacLength());
+
+                for (final int length : new int[]{0, 1, 30, 55, 64, 129, 1000}) {
+                    final byte[] message = new byte[length];
+                    random.nextBytes(message);
+                    final String context = algorithm + ", key " + keyLength + ", message " + length;
+                    assertTrue(context, Arrays.equals(mac.doFinal(message), hmac.doFinal(message)));
+                }
+            }
+        }
+    }
+
+    public void testTagIntoCallerBuffer() throws Exception {
+        final SecretKeySpec key = new SecretKeySpec("key".getBytes("UTF-8"), "HmacMD5");
+        final byte[] message = "I love you Bob. Kisses, Alice.".getBytes("UTF-8");
+        final PrecomputedHmac hmac = new PrecomputedHmac("HmacMD5", key);
+
+        final byte[] out = new byte[hmac.getMacLength() + 3];
+        assertEquals(hmac.getMacLength(), hmac.doFinal(message, 0, message.length, out, 3));
+        assertTrue(Arrays.equals(hmac.doFinal(message), Arrays.copyOfRange(out, 3, out.length)));
+        assertTrue(TagVerifier.forHmac(hmac).verify(new Frame(message, hmac.doFinal(message))));
+    }
+}
@@ -0,0 +1,66 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+
+/**
+ * Replays, reordering and window movement of {@link ReplayWindow}.
+ */
+public class ReplayWindowTest extends TestCase {
+
+    public void testRejectsReplays() {
+        final ReplayWindow window = new ReplayWindow(64);
+        assertTrue(window.accept(0));
+        assertFalse(window.accept(0));
+        assertTrue(window.accept(5));
+        assertTrue(window.accept(3));
+        assertFalse(window.accept(3));
+        assertFalse(window.accept(5));
+        assertFalse(window.isFresh(-1));
+        assertEquals(5, window.getHighest());
+    }
+
+    public void testAcceptsReorderingWithinWindow() {
+        final ReplayWindow window = new ReplayWindow(128);
+        assertTrue(window.accept(1000));
+        assertTrue(window.accept(1000 - 127));
+        assertFalse(window.isFresh(1000 - 128));
+        assertTrue(window.accept(999));
+        assertFalse(window.accept(999));
+    }
+
+    public void testSlidingClearsOldBits() {
+        final ReplayWindow window = new ReplayWindow(64);
+        for (long sequence = 0; sequence < 10000; sequence += 3)
+            assertTrue(window.accept(sequence));
+
+        // after a jump far beyond the window, every number inside the new window is fresh
+        assertTrue(window.accept(1000000));
+        for (long sequence = 1000000 - 63; sequence < 1000000; sequence++)
+            assertTrue(window.isFresh(sequence));
+        assertFalse(window.isFresh(1000000 - 64));
+    }
+
+    public void testCheckDoesNotMoveWindow() {
+        final ReplayWindow window = new ReplayWindow(64);
+        window.mark(10);
+        assertTrue(window.isFresh(1 << 20));
+        assertTrue(window.isFresh(9));
+    }
+
+    public void testTagCoversSequenceNumber() throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(KeyGenerator.getInstance("HmacSHA256").generateKey());
+        final byte[] payload = "I love you Bob. Kisses, Alice.".getBytes("UTF-8");
+        mac.update(Frame.sequenceBytes(7));
+        final byte[] tag = mac.doFinal(payload);
+
+        final TagVerifier verifier = TagVerifier.forMac(mac);
+        assertTrue(verifier.verifySequenced(new Frame(7, payload, tag)));
+        assertFalse(verifier.verifySequenced(new Frame(8, payload, tag)));
+        assertFalse(verifier.verifySequenced(new Frame(7, payload, new byte[3])));
+        assertTrue(verifier.verifySequenced(new Frame(7, payload, tag)));
+    }
+}
@@ -0,0 +1,138 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrap-around, ordering under contention and timeouts of
+ * {@link SpscRingChannel} and {@link MpscRingChannel}.
+ */
+public class RingChannelTest extends TestCase {
+    private static final byte[] EMPTY = new byte[0];
+
+    private static Frame frame(final long sequence) {
+        return new Frame(sequence, EMPTY, EMPTY);
+    }
+
+    public void testWrapAroundAtCapacity() {
+        for (final RingChannel ring : new RingChannel[]{new SpscRingChannel(5), new MpscRingChannel(5)}) {
+            assertEquals(8, ring.capacity());
+
+            long sent = 0, received = 0;
+            for (int i = 0; i < 8; i++)
+                assertTrue(ring.offer(frame(sent++)));
+            assertFalse("full ring accepted a frame", ring.offer(frame(sent)));
+
+            // one in, one out, many times around the ring
+            for (int i = 0; i < 100; i++) {
+                assertEquals(received++, ring.poll().getSequence());
+                assertTrue(ring.offer(frame(sent++)));
+                assertFalse(ring.offer(frame(sent)));
+            }
+            while (received < sent)
+                assertEquals(received++, ring.poll().getSequence());
+            assertNull(ring.poll());
+        }
+    }
+
+    public void testSingleProducerOrder() throws Exception {
+        final SpscRingChannel ring = new SpscRingChannel(16, WaitStrategy.YIELD);
+        final int frames = 100000;
+        final Thread producer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < frames; i++)
+                        ring.put(frame(i));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        producer.start();
+        for (int i = 0; i < frames; i++)
+            assertEquals(i, ring.take().getSequence());
+        producer.join();
+        assertNull(ring.poll());
+    }
+
+    public void testManyProducersLoseAndDuplicateNothing() throws Exception {
+        final MpscRingChannel ring = new MpscRingChannel(64, WaitStrategy.YIELD);
+        final int producers = 4, frames = 50000;
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final long first = (long) p * frames;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < frames; i++)
+                            ring.put(frame(first + i));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            threads[p].start();
+        }
+
+        final BitSet seen = new BitSet(producers * frames);
+        final long[] last = new long[producers];
+        Arrays.fill(last, -1);
+        for (int i = 0; i < producers * frames; i++) {
+            final long sequence = ring.take().getSequence();
+            assertFalse("duplicate frame " + sequence, seen.get((int) sequence));
+            seen.set((int) sequence);
+
+            // frames of one producer arrive in the order it sent them
+            final int producer = (int) (sequence / frames);
+            assertTrue("frame " + sequence + " out of order", sequence > last[producer]);
+            last[producer] = sequence;
+        }
+        for (final Thread thread : threads)
+            thread.join();
+        assertEquals(producers * frames, seen.cardinality());
+        assertNull(ring.poll());
+    }
+
+    public void testPollTimesOutWithEveryWaitStrategy() throws Exception {
+        for (final WaitStrategy strategy : WaitStrategy.values()) {
+            for (final RingChannel ring : new RingChannel[]{new SpscRingChannel(4, strategy),
+                    new MpscRingChannel(4, strategy)}) {
+                assertNull(ring.poll(0, TimeUnit.MILLISECONDS));
+
+                final long start = System.nanoTime();
+                assertNull(strategy.name(), ring.poll(20, TimeUnit.MILLISECONDS));
+                assertTrue(strategy.name(), System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+
+                ring.put(frame(7));
+                assertEquals(7, ring.poll(20, TimeUnit.MILLISECONDS).getSequence());
+            }
+        }
+    }
+
+    public void testPollReturnsFrameSentWhileWaiting() throws Exception {
+        for (final WaitStrategy strategy : WaitStrategy.values()) {
+            final SpscRingChannel ring = new SpscRingChannel(4, strategy);
+            final Thread sender = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(10);
+                        ring.put(frame(1));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            sender.start();
+            final Frame frame = ring.poll(5, TimeUnit.SECONDS);
+            sender.join();
+            assertNotNull(strategy.name(), frame);
+            assertEquals(1, frame.getSequence());
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frames sent over {@link SocketFrameChannel} connections on localhost, over
+ * TCP and Unix domain sockets.
+ */
+public class SocketFrameChannelTest extends TestCase {
+
+    private static SocketFrameChannel[] connect(final SocketAddress address) throws Exception {
+        try (ServerSocketChannel server = SocketFrameChannel.listen(address)) {
+            final SocketFrameChannel client = SocketFrameChannel.connect(server.getLocalAddress());
+            return new SocketFrameChannel[]{client, SocketFrameChannel.accept(server)};
+        }
+    }
+
+    private static void exchange(final SocketFrameChannel[] ends) throws Exception {
+        final Random random = new Random(19);
+        // larger than the receive buffer and the socket buffers
+        for (final int size : new int[]{0, 1, 30, 70000, 3 * 1024 * 1024}) {
+            final byte[] payload = new byte[size];
+            random.nextBytes(payload);
+            final byte[] tag = new byte[size % 64];
+            random.nextBytes(tag);
+
+            final Frame[] received = new Frame[1];
+            final Thread receiver = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        received[0] = ends[1].take();
+                        ends[1].put(received[0]);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            receiver.start();
+            ends[0].put(new Frame(size, payload, tag));
+            final Frame echo = ends[0].take();
+            receiver.join();
+
+            assertEquals(size, received[0].getSequence());
+            assertTrue(Arrays.equals(payload, received[0].getPayload()));
+            assertTrue(Arrays.equals(tag, received[0].getTag()));
+            assertTrue(Arrays.equals(payload, echo.getPayload()));
+        }
+    }
+
+    public void testLoopbackTcp() throws Exception {
+        final SocketFrameChannel[] ends = connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            exchange(ends);
+        } finally {
+            ends[0].close();
+            ends[1].close();
+        }
+    }
+
+    public void testUnixDomainSocket() throws Exception {
+        if (!SocketFrameChannel.isUnixDomainSupported())
+            return;
+
+        final File path = File.createTempFile("frames", ".sock");
+        assertTrue(path.delete());
+        final SocketFrameChannel[] ends = connect(SocketFrameChannel.unixAddress(path.getPath()));
+        try {
+            exchange(ends);
+        } finally {
+            ends[0].close();
+            ends[1].close();
+            path.delete();
+        }
+    }
+
+    public void testInterruptDuringFrameKeepsStreamIntact() throws Exception {
+        final SocketFrameChannel[] ends = connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            final byte[] large = new byte[8 * 1024 * 1024];
+            new Random(24).nextBytes(large);
+            final boolean[] observed = new boolean[2];
+            final Thread sender = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        // blocks once the socket buffers are full
+                        ends[0].put(new Frame(1, large, new byte[]{7}));
+                        observed[0] = Thread.currentThread().isInterrupted();
+                        try {
+                            ends[0].put(new Frame(2, new byte[1], new byte[0]));
+                        } catch (InterruptedException e) {
+                            observed[1] = true;
+                        }
+                        ends[0].put(new Frame(3, new byte[]{3}, new byte[0]));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            sender.start();
+            Thread.sleep(200);
+            sender.interrupt();
+
+            final Frame first = ends[1].take();
+            assertEquals(1, first.getSequence());
+            assertTrue(Arrays.equals(large, first.getPayload()));
+            assertTrue(Arrays.equals(new byte[]{7}, first.getTag()));
+            assertEquals(3, ends[1].take().getSequence());
+            sender.join();
+            assertTrue("interrupt not re-asserted after the frame", observed[0]);
+            assertTrue("interrupted put started a frame", observed[1]);
+        } finally {
+            ends[0].close();
+            ends[1].close();
+        }
+    }
+
+    public void testPollTimesOutAndClosedPeerIsReported() throws Exception {
+        final SocketFrameChannel[] ends = connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            assertNull(ends[1].poll(0, TimeUnit.MILLISECONDS));
+            assertNull(ends[1].poll(20, TimeUnit.MILLISECONDS));
+
+            ends[0].put(new Frame(new byte[]{1, 2, 3}));
+            final Frame frame = ends[1].poll(1, TimeUnit.SECONDS);
+            assertEquals(3, frame.payloadLength());
+            assertEquals(0, frame.tagLength());
+
+            ends[0].close();
+            try {
+                ends[1].take();
+                fail("closed connection not reported");
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            ends[1].close();
+        }
+    }
+}
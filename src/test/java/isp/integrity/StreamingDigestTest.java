@@ -0,0 +1,54 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link StreamingDigest} agrees with MessageDigest and Mac over the whole
+ * array in both modes, whatever the file size relative to the chunk size.
+ */
+public class StreamingDigestTest extends TestCase {
+    private static final int CHUNK_SIZE = 4096;
+    /**
+     * Empty, smaller than one chunk, exactly one chunk and several chunks
+     * with a partial last one.
+     */
+    private static final int[] SIZES = {0, 1000, CHUNK_SIZE, 5 * CHUNK_SIZE + 17};
+
+    public void testSameDigestsAsMessageDigest() throws Exception {
+        final Random random = new Random(4);
+        final SecretKeySpec key = new SecretKeySpec(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, "HmacSHA256");
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+
+        for (final StreamingDigest.Mode mode : StreamingDigest.Mode.values()) {
+            // one instance for all files, so a reused buffer is covered too
+            final StreamingDigest streaming = new StreamingDigest(mode, CHUNK_SIZE);
+            for (final int size : SIZES) {
+                final byte[] data = new byte[size];
+                random.nextBytes(data);
+                final Path file = Files.createTempFile("streaming", ".bin");
+                try {
+                    Files.write(file, data);
+                    final String context = mode + ", " + size + " bytes";
+
+                    final StreamingDigest.Result result = streaming.digest(file, MessageDigest.getInstance("SHA-256"));
+                    assertEquals(context, size, result.getBytes());
+                    assertTrue(context, Arrays.equals(MessageDigest.getInstance("SHA-256").digest(data),
+                            result.getValue()));
+
+                    assertTrue(context, Arrays.equals(mac.doFinal(data), streaming.mac(file, mac).getValue()));
+                } finally {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
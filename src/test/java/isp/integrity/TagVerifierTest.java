@@ -0,0 +1,98 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * {@link TagVerifier} accepts exactly the correct tag, wherever it lies in
+ * the caller's arrays, with every kind of engine.
+ */
+public class TagVerifierTest extends TestCase {
+    private final byte[] message = new byte[100];
+    private SecretKeySpec key;
+
+    @Override
+    protected void setUp() {
+        final Random random = new Random(8);
+        random.nextBytes(message);
+        final byte[] secret = new byte[16];
+        random.nextBytes(secret);
+        key = new SecretKeySpec(secret, "HmacSHA256");
+    }
+
+    private Mac mac() throws Exception {
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(key);
+        return mac;
+    }
+
+    private TagVerifier[] verifiers() throws Exception {
+        return new TagVerifier[]{TagVerifier.forMac(mac()),
+                TagVerifier.forHmac(new PrecomputedHmac("HmacSHA256", key))};
+    }
+
+    public void testOffsetsIntoPayloadAndTag() throws Exception {
+        final Mac mac = mac();
+        mac.update(message, 10, 50);
+        final byte[] tag = mac.doFinal();
+        final byte[] padded = new byte[tag.length + 7];
+        System.arraycopy(tag, 0, padded, 5, tag.length);
+
+        for (final TagVerifier verifier : verifiers()) {
+            assertTrue(verifier.verify(message, 10, 50, padded, 5));
+            assertFalse(verifier.verify(message, 0, 50, padded, 5));
+            assertFalse(verifier.verify(message, 10, 50, padded, 4));
+            assertTrue("state left over from a failure", verifier.verify(message, 10, 50, padded, 5));
+        }
+
+        final byte[] digest = MessageDigest.getInstance("SHA-1").digest(Arrays.copyOfRange(message, 3, 80));
+        final byte[] paddedDigest = new byte[digest.length + 2];
+        System.arraycopy(digest, 0, paddedDigest, 2, digest.length);
+        final TagVerifier verifier = TagVerifier.forDigest(MessageDigest.getInstance("SHA-1"));
+        assertTrue(verifier.verify(message, 3, 77, paddedDigest, 2));
+        assertFalse(verifier.verify(message, 3, 76, paddedDigest, 2));
+    }
+
+    public void testWrongLengthAndLastBitMismatch() throws Exception {
+        final byte[] tag = mac().doFinal(message);
+        for (final TagVerifier verifier : verifiers()) {
+            assertEquals(tag.length, verifier.getTagLength());
+            assertTrue(verifier.verify(new Frame(message, tag)));
+
+            // too short, both directly and behind an offset
+            final byte[] truncated = Arrays.copyOf(tag, tag.length - 1);
+            assertFalse(verifier.verify(message, 0, message.length, truncated, 0));
+            assertFalse(verifier.verify(message, 0, message.length, tag, 1));
+            assertFalse(verifier.verify(new Frame(message, truncated)));
+            // a frame tag must not carry extra bytes
+            assertFalse(verifier.verify(new Frame(message, Arrays.copyOf(tag, tag.length + 1))));
+
+            final byte[] flipped = tag.clone();
+            flipped[flipped.length - 1] ^= 0x01;
+            assertFalse(verifier.verify(message, 0, message.length, flipped, 0));
+            assertFalse(verifier.verify(new Frame(message, flipped)));
+
+            assertTrue(verifier.verify(message, 0, message.length, tag, 0));
+        }
+    }
+
+    public void testSequencedTagCoversSequence() throws Exception {
+        final Mac mac = mac();
+        mac.update(Frame.sequenceBytes(42));
+        final byte[] tag = mac.doFinal(message);
+
+        for (final TagVerifier verifier : verifiers()) {
+            assertTrue(verifier.verifySequenced(new Frame(42, message, tag)));
+            assertFalse(verifier.verifySequenced(new Frame(43, message, tag)));
+            assertFalse(verifier.verifySequenced(new Frame(42L << 32, message, tag)));
+            // without the sequence the tag is not that of the payload alone
+            assertFalse(verifier.verify(new Frame(42, message, tag)));
+            assertTrue(verifier.verifySequenced(new Frame(42, message, tag)));
+        }
+    }
+}
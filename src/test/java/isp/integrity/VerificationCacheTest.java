@@ -0,0 +1,140 @@
+package isp.integrity;
+
+import junit.framework.TestCase;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hits, rejected forgeries, eviction, expiry and key fingerprints of {@link VerificationCache}.
+ */
+public class VerificationCacheTest extends TestCase {
+    private static final String ALGORITHM = "SHA256withRSA";
+    private static final KeyPair KEYS = generate();
+
+    private static KeyPair generate() {
+        try {
+            return KeyPairGenerator.getInstance("RSA").generateKeyPair();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sign(final byte[] message) throws Exception {
+        final Signature signer = Signature.getInstance(ALGORITHM);
+        signer.initSign(KEYS.getPrivate());
+        signer.update(message);
+        return signer.sign();
+    }
+
+    private static Signature verifier() throws Exception {
+        final Signature verifier = Signature.getInstance(ALGORITHM);
+        verifier.initVerify(KEYS.getPublic());
+        return verifier;
+    }
+
+    public void testRepeatedSignatureIsServedFromCache() throws Exception {
+        final VerificationCache cache = new VerificationCache(16, 1, TimeUnit.MINUTES);
+        final byte[] message = "I love you Bob. Kisses, Alice.".getBytes("UTF-8");
+        final byte[] signature = sign(message);
+
+        for (int i = 0; i < 5; i++)
+            assertTrue(cache.verify(verifier(), KEYS.getPublic(), signature, message));
+        assertEquals(1, cache.getMisses());
+        assertEquals(4, cache.getHits());
+        assertEquals(0.8, cache.getHitRate(), 1e-9);
+
+        // the data may be split differently, as long as it is the same data
+        assertTrue(cache.verify(verifier(), KEYS.getPublic(), signature,
+                "I love you Bob.".getBytes("UTF-8"), " Kisses, Alice.".getBytes("UTF-8")));
+        assertEquals(5, cache.getHits());
+    }
+
+    public void testForgeriesAreNeverCached() throws Exception {
+        final VerificationCache cache = new VerificationCache(16, 1, TimeUnit.MINUTES);
+        final byte[] message = "original".getBytes("UTF-8");
+        final byte[] signature = sign(message);
+        assertTrue(cache.verify(verifier(), KEYS.getPublic(), signature, message));
+
+        for (int i = 0; i < 3; i++)
+            assertFalse(cache.verify(verifier(), KEYS.getPublic(), signature, "forged".getBytes("UTF-8")));
+
+        final byte[] modified = signature.clone();
+        modified[modified.length - 1] ^= 1;
+        assertFalse(cache.verify(verifier(), KEYS.getPublic(), modified, message));
+
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(5, cache.getMisses());
+    }
+
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        final VerificationCache cache = new VerificationCache(2, 1, TimeUnit.MINUTES);
+        final byte[][] messages = new byte[3][];
+        final byte[][] signatures = new byte[3][];
+        for (int i = 0; i < 3; i++) {
+            messages[i] = ("message " + i).getBytes("UTF-8");
+            signatures[i] = sign(messages[i]);
+        }
+
+        cache.verify(verifier(), KEYS.getPublic(), signatures[0], messages[0]);
+        cache.verify(verifier(), KEYS.getPublic(), signatures[1], messages[1]);
+        cache.verify(verifier(), KEYS.getPublic(), signatures[0], messages[0]);
+        cache.verify(verifier(), KEYS.getPublic(), signatures[2], messages[2]);
+        assertEquals(1, cache.getEvictions());
+        assertEquals(1, cache.getHits());
+
+        // message 1 was the least recently used
+        cache.verify(verifier(), KEYS.getPublic(), signatures[0], messages[0]);
+        assertEquals(2, cache.getHits());
+        cache.verify(verifier(), KEYS.getPublic(), signatures[1], messages[1]);
+        assertEquals(2, cache.getHits());
+    }
+
+    public void testEntriesExpire() throws Exception {
+        final VerificationCache cache = new VerificationCache(16, 1, TimeUnit.MILLISECONDS);
+        final byte[] message = "short-lived".getBytes("UTF-8");
+        final byte[] signature = sign(message);
+
+        assertTrue(cache.verify(verifier(), KEYS.getPublic(), signature, message));
+        Thread.sleep(5);
+        assertTrue(cache.verify(verifier(), KEYS.getPublic(), signature, message));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getExpirations());
+    }
+
+    public void testKeyIsFingerprintedOnce() throws Exception {
+        final AtomicInteger encodings = new AtomicInteger();
+        final PublicKey key = new PublicKey() {
+            @Override
+            public String getAlgorithm() {
+                return KEYS.getPublic().getAlgorithm();
+            }
+
+            @Override
+            public String getFormat() {
+                return KEYS.getPublic().getFormat();
+            }
+
+            @Override
+            public byte[] getEncoded() {
+                encodings.incrementAndGet();
+                return KEYS.getPublic().getEncoded();
+            }
+        };
+
+        final VerificationCache cache = new VerificationCache(16, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 5; i++) {
+            final byte[] message = ("message " + i).getBytes("UTF-8");
+            final byte[] signature = sign(message);
+            assertTrue(cache.verify(verifier(), key, signature, message));
+            assertTrue(cache.verify(verifier(), key, signature, message));
+        }
+        assertEquals(5, cache.getHits());
+        assertEquals(1, encodings.get());
+    }
+}